@@ -0,0 +1,179 @@
+package com.robwettach.webdiplomacy.diff;
+
+import static java.util.stream.Collectors.toCollection;
+
+import com.google.common.collect.ImmutableList;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.GameState;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Which of the fields {@link DiffChecker}s look at differ between two {@link Snapshot}s.
+ *
+ * <p>Worked out with a field-by-field comparison that stops early wherever it can: identical states, and identical
+ * countries within them (which {@link com.robwettach.webdiplomacy.model.ValueInterner interned} ones usually are), are
+ * skipped without comparing anything inside them.  Country-level changes are only looked for country by country when
+ * both states list the same countries in the same order; otherwise every country-level field counts as changed.
+ */
+public final class ChangeMask {
+    /**
+     * A field, or group of fields, that a {@link DiffChecker} can depend on.
+     */
+    public enum Field {
+        /**
+         * The game's date or phase.
+         */
+        Phase,
+        /**
+         * Whether the game is paused.
+         */
+        Paused,
+        /**
+         * Whether the game is finished.
+         */
+        Finished,
+        /**
+         * The status of any country, or which countries there are.
+         */
+        Statuses,
+        /**
+         * The votes of any country, or which countries there are.
+         */
+        Votes,
+        /**
+         * When the next turn is due.
+         */
+        NextTurnAt,
+        /**
+         * The time of the {@link Snapshot} itself, i.e. time passing.
+         */
+        Time;
+
+        private int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    private static final int COUNTRY_FIELDS = Field.Statuses.bit() | Field.Votes.bit();
+
+    private final int bits;
+
+    private ChangeMask(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Compare two {@link Snapshot}s.
+     *
+     * @param previous The previous {@link Snapshot}
+     * @param current The latest {@link Snapshot}
+     * @return The {@link ChangeMask} of the fields that differ between them
+     */
+    public static ChangeMask between(Snapshot previous, Snapshot current) {
+        int bits = previous.getTime().isEqual(current.getTime()) ? 0 : Field.Time.bit();
+        GameState previousState = previous.getState();
+        GameState currentState = current.getState();
+        if (previousState == currentState) {
+            return new ChangeMask(bits);
+        }
+        if (previousState.getPhase() != currentState.getPhase()
+                || !previousState.getDate().equals(currentState.getDate())) {
+            bits |= Field.Phase.bit();
+        }
+        if (previousState.isPaused() != currentState.isPaused()) {
+            bits |= Field.Paused.bit();
+        }
+        if (previousState.isFinished() != currentState.isFinished()) {
+            bits |= Field.Finished.bit();
+        }
+        if (!previousState.getNextTurnAt().equals(currentState.getNextTurnAt())) {
+            bits |= Field.NextTurnAt.bit();
+        }
+        return new ChangeMask(bits | countryChanges(
+                previousState.getCountries().asList(),
+                currentState.getCountries().asList()));
+    }
+
+    /**
+     * Create a {@link ChangeMask} with just the given fields changed.
+     *
+     * @param changed The fields to mark as changed
+     * @return The new {@link ChangeMask}
+     */
+    public static ChangeMask of(Field... changed) {
+        return new ChangeMask(Arrays.stream(changed).mapToInt(Field::bit).reduce(0, (a, b) -> a | b));
+    }
+
+    /**
+     * Check whether a field changed.
+     *
+     * @param field The field to check
+     * @return {@code true} if {@code field} changed, else {@code false}
+     */
+    public boolean has(Field field) {
+        return (bits & field.bit()) != 0;
+    }
+
+    /**
+     * Check whether any of a set of fields changed, e.g. those a {@link DiffChecker} depends on.
+     *
+     * @param fields The fields to check
+     * @return {@code true} if any of {@code fields} changed, else {@code false}
+     */
+    public boolean hasAny(Set<Field> fields) {
+        for (Field field : fields) {
+            if (has(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChangeMask && ((ChangeMask) o).bits == bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(Field.values())
+                .filter(this::has)
+                .collect(toCollection(() -> EnumSet.noneOf(Field.class)))
+                .toString();
+    }
+
+    private static int countryChanges(ImmutableList<CountryState> previous, ImmutableList<CountryState> current) {
+        if (previous.size() != current.size()) {
+            return COUNTRY_FIELDS;
+        }
+        int bits = 0;
+        for (int i = 0; i < previous.size() && bits != COUNTRY_FIELDS; i++) {
+            CountryState previousCountry = previous.get(i);
+            CountryState currentCountry = current.get(i);
+            if (previousCountry == currentCountry) {
+                continue;
+            }
+            if (!previousCountry.getCountryName().equals(currentCountry.getCountryName())) {
+                return COUNTRY_FIELDS;
+            }
+            if (previousCountry.getStatus() != currentCountry.getStatus()) {
+                bits |= Field.Statuses.bit();
+            }
+            if (!previousCountry.getVotes().equals(currentCountry.getVotes())) {
+                bits |= Field.Votes.bit();
+            }
+        }
+        return bits;
+    }
+}
@@ -1,12 +1,9 @@
 package com.robwettach.webdiplomacy.diff;
 
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 
 import com.google.common.collect.Sets;
-import com.robwettach.webdiplomacy.model.CountryState;
 import com.robwettach.webdiplomacy.model.CountryStatus;
-import com.robwettach.webdiplomacy.model.GameState;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -15,11 +12,23 @@ import java.util.Set;
  * {@link DiffChecker} that reports when a country has been defeated.
  */
 public class DefeatedChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(ChangeMask.Field.Statuses);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
-        Set<String> previousDefeatedCountries = getDefeatedCountries(previous.getState());
-        Set<String> currentDefeatedCountries = getDefeatedCountries(current.getState());
-        Set<String> newDefeatedCountries = Sets.difference(currentDefeatedCountries, previousDefeatedCountries);
+        return check(SnapshotIndex.of(previous), SnapshotIndex.of(current));
+    }
+
+    @Override
+    public List<Diff> check(SnapshotIndex previous, SnapshotIndex current) {
+        Set<String> newDefeatedCountries = Sets.difference(
+                current.getCountries(CountryStatus.Defeated),
+                previous.getCountries(CountryStatus.Defeated));
         if (!newDefeatedCountries.isEmpty()) {
             return newDefeatedCountries.stream()
                     .map(c -> Diff.global("%s has been defeated", c))
@@ -28,12 +37,4 @@ public class DefeatedChecker implements DiffChecker {
             return Collections.emptyList();
         }
     }
-
-    private Set<String> getDefeatedCountries(GameState state) {
-        return state.getCountries()
-                .stream()
-                .filter(c -> c.getStatus().equals(CountryStatus.Defeated))
-                .map(CountryState::getCountryName)
-                .collect(toSet());
-    }
 }
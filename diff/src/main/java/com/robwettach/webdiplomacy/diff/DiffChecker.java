@@ -1,6 +1,8 @@
 package com.robwettach.webdiplomacy.diff;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Simple interface for checking for {@link Diff}s related to the most recent game state.
@@ -9,6 +11,17 @@ import java.util.List;
  * {@code previous} and {@code current} {@link Snapshot}s.
  */
 public interface DiffChecker {
+    /**
+     * Get the fields this checker reads, so that {@link DiffCheckers} can skip it when none of them have changed.
+     *
+     * <p>Defaults to every field, so a checker that doesn't say is always run.
+     *
+     * @return The {@link ChangeMask.Field}s that {@link #check(Snapshot, Snapshot)} depends on
+     */
+    default Set<ChangeMask.Field> getDependencies() {
+        return EnumSet.allOf(ChangeMask.Field.class);
+    }
+
     /**
      * Check the latest {@link Snapshot} against the previous to determine if there are any new {@link Diff}s to report.
      *
@@ -18,4 +31,19 @@ public interface DiffChecker {
      *         If no {@link Diff}s are found, an empty {@link List} is returned.
      */
     List<Diff> check(Snapshot previous, Snapshot current);
+
+    /**
+     * Check the latest {@link Snapshot} against the previous, given both already {@link SnapshotIndex indexed}.
+     *
+     * <p>Checkers that look countries up by status or vote should override this to use the indexes, and implement
+     * {@link #check(Snapshot, Snapshot)} by indexing the snapshots and calling it.
+     *
+     * @param previous The {@link SnapshotIndex} of the previous {@link Snapshot}
+     * @param current The {@link SnapshotIndex} of the latest {@link Snapshot}
+     * @return A list of {@link Diff}s between the previous and latest {@code state}.  Not-{@code null}.
+     *         If no {@link Diff}s are found, an empty {@link List} is returned.
+     */
+    default List<Diff> check(SnapshotIndex previous, SnapshotIndex current) {
+        return check(previous.getSnapshot(), current.getSnapshot());
+    }
 }
@@ -3,6 +3,7 @@ package com.robwettach.webdiplomacy.diff;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.collect.ImmutableList;
+import java.time.ZonedDateTime;
 import java.util.List;
 
 /**
@@ -16,7 +17,12 @@ import java.util.List;
  *     <li>{@link OrderChecker}</li>
  *     <li>{@link DefeatedChecker}</li>
  *     <li>{@link VoteChecker}</li>
+ *     <li>{@link FinishedChecker}</li>
  * </ul>
+ *
+ * <p>Each {@link Snapshot} is {@link SnapshotIndex indexed} once, and the index shared by every checker.  A checker is
+ * only run if one of the fields it {@link DiffChecker#getDependencies() depends on} has changed, according to the
+ * {@link ChangeMask} between the two snapshots.
  */
 public class DiffCheckers {
     private static final List<DiffChecker> CHECKERS = ImmutableList.of(
@@ -27,6 +33,8 @@ public class DiffCheckers {
             new DefeatedChecker(),
             new VoteChecker(),
             new FinishedChecker());
+    // All that changes when the game state hasn't
+    private static final ChangeMask TIME_PASSED = ChangeMask.of(ChangeMask.Field.Time);
 
     /**
      * Check all of the available {@link DiffChecker}s.
@@ -36,7 +44,42 @@ public class DiffCheckers {
      * @return The list of {@link Diff}s generated by all of the checkers
      */
     public static List<Diff> check(Snapshot previous, Snapshot current) {
+        return check(SnapshotIndex.of(previous), SnapshotIndex.of(current));
+    }
+
+    /**
+     * Check all of the available {@link DiffChecker}s, against snapshots that have already been indexed.
+     *
+     * <p>Lets a caller that checks each {@link Snapshot} against both the one before and the one after it, like a
+     * poller does, index each one only once.
+     *
+     * @param previous The {@link SnapshotIndex} of the previous game state
+     * @param current The {@link SnapshotIndex} of the latest game state
+     * @return The list of {@link Diff}s generated by all of the checkers
+     */
+    public static List<Diff> check(SnapshotIndex previous, SnapshotIndex current) {
+        ChangeMask changes = ChangeMask.between(previous.getSnapshot(), current.getSnapshot());
+        return CHECKERS.stream()
+                .filter(c -> changes.hasAny(c.getDependencies()))
+                .flatMap(c -> c.check(previous, current).stream())
+                .collect(toList());
+    }
+
+    /**
+     * Check only the {@link DiffChecker}s that depend on time passing, for a game whose state is known not to have
+     * changed since {@code previous}.
+     *
+     * <p>Equivalent to {@link #check(Snapshot, Snapshot)} with a {@link Snapshot} of {@code previous}'s state at
+     * {@code now}, but skips every checker that only compares states.
+     *
+     * @param previous The previous game state, which is still current
+     * @param now The time the game state was found to be unchanged
+     * @return The list of {@link Diff}s generated by the time-based checkers
+     */
+    public static List<Diff> checkUnchanged(Snapshot previous, ZonedDateTime now) {
+        Snapshot current = Snapshot.create(now, previous.getState());
         return CHECKERS.stream()
+                .filter(c -> TIME_PASSED.hasAny(c.getDependencies()))
                 .flatMap(c -> c.check(previous, current).stream())
                 .collect(toList());
     }
@@ -2,30 +2,37 @@ package com.robwettach.webdiplomacy.diff;
 
 import static java.util.stream.Collectors.joining;
 
-import com.robwettach.webdiplomacy.model.CountryState;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.robwettach.webdiplomacy.model.CountryStatus;
-import com.robwettach.webdiplomacy.model.GameState;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * {@link DiffChecker} that reports when the game is finished, and who won or drew.
  */
 public class FinishedChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(ChangeMask.Field.Finished);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
-        GameState state = current.getState();
-        if (!previous.getState().isFinished() && state.isFinished()) {
-            Optional<String> winner = state.getCountries()
-                    .stream()
-                    .filter(c -> c.getStatus().equals(CountryStatus.Won))
-                    .map(CountryState::getCountryName)
-                    .findFirst();
-            String draws = state.getCountries()
+        return check(SnapshotIndex.of(previous), SnapshotIndex.of(current));
+    }
+
+    @Override
+    public List<Diff> check(SnapshotIndex previous, SnapshotIndex current) {
+        if (!previous.getState().isFinished() && current.getState().isFinished()) {
+            Optional<String> winner = Optional.ofNullable(
+                    Iterables.getFirst(current.getCountries(CountryStatus.Won), null));
+            String draws = current.getCountries(CountryStatus.Drawn)
                     .stream()
-                    .filter(c -> c.getStatus().equals(CountryStatus.Drawn))
-                    .map(CountryState::getCountryName)
                     // Mostly just for deterministic tests
                     .sorted()
                     .collect(joining(", "));
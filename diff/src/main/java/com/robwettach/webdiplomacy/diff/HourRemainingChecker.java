@@ -1,14 +1,24 @@
 package com.robwettach.webdiplomacy.diff;
 
+import com.google.common.collect.Sets;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * {@link DiffChecker} that reports when there is an hour or less remaining before the next turn.
  */
 public class HourRemainingChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(
+            ChangeMask.Field.NextTurnAt, ChangeMask.Field.Time);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
         Optional<ZonedDateTime> oneHourRemaining = current.getState().getNextTurnAt().map(d -> d.minusHours(1));
@@ -1,12 +1,8 @@
 package com.robwettach.webdiplomacy.diff;
 
-import static java.util.stream.Collectors.toSet;
-
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.robwettach.webdiplomacy.model.CountryState;
+import com.google.common.collect.Sets;
 import com.robwettach.webdiplomacy.model.CountryStatus;
-import com.robwettach.webdiplomacy.model.GameState;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -18,19 +14,31 @@ import java.util.function.Function;
  * submitted orders or marked themselves as {@link CountryStatus#Ready}.
  */
 public class OrderChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(ChangeMask.Field.Statuses);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
+        return check(SnapshotIndex.of(previous), SnapshotIndex.of(current));
+    }
+
+    @Override
+    public List<Diff> check(SnapshotIndex previous, SnapshotIndex current) {
         List<Diff> diffs = new ArrayList<>();
 
         Optional<String> notYetSubmitted = getSingleCountryMatching(
-                previous.getState(),
-                current.getState(),
+                previous,
+                current,
                 this::getNotSubmittedCountries);
         notYetSubmitted.map(c -> Diff.global("Only %s has not yet submitted orders", c))
                 .ifPresent(diffs::add);
         Optional<String> notYetReady = getSingleCountryMatching(
-                previous.getState(),
-                current.getState(),
+                previous,
+                current,
                 this::getNotReadyCountries);
         // Don't report both:
         // - Only Russia has not yet submitted orders
@@ -43,17 +51,17 @@ public class OrderChecker implements DiffChecker {
     }
 
     private Optional<String> getSingleCountryMatching(
-            GameState previous,
-            GameState current,
-            Function<GameState, Set<String>> getMatching) {
+            SnapshotIndex previous,
+            SnapshotIndex current,
+            Function<SnapshotIndex, Set<String>> getMatching) {
         Optional<String> previousMatchingCountry = getOnlyCountry(previous, getMatching);
         Optional<String> currentMatchingCountry = getOnlyCountry(current, getMatching);
         return currentMatchingCountry.isPresent() && currentMatchingCountry != previousMatchingCountry
                 ? currentMatchingCountry : Optional.empty();
     }
 
-    private Optional<String> getOnlyCountry(GameState state, Function<GameState, Set<String>> getMatching) {
-        Set<String> countries = getMatching.apply(state);
+    private Optional<String> getOnlyCountry(SnapshotIndex index, Function<SnapshotIndex, Set<String>> getMatching) {
+        Set<String> countries = getMatching.apply(index);
         if (countries.size() == 1) {
             return Optional.of(Iterables.getOnlyElement(countries));
         } else {
@@ -61,23 +69,14 @@ public class OrderChecker implements DiffChecker {
         }
     }
 
-    private Set<String> getNotSubmittedCountries(GameState state) {
-        return state.getActiveCountries()
-                .stream()
-                .filter(c -> c.getStatus().equals(CountryStatus.NotReceived))
-                .map(CountryState::getCountryName)
-                .collect(toSet());
+    private Set<String> getNotSubmittedCountries(SnapshotIndex index) {
+        // Only active countries can be waiting for orders
+        return index.getCountries(CountryStatus.NotReceived);
     }
 
-    private static final Set<CountryStatus> EFFECTIVELY_READY_STATUSES = ImmutableSet.of(
-            CountryStatus.Ready,
-            CountryStatus.NoOrders);
-
-    private Set<String> getNotReadyCountries(GameState state) {
-        return state.getActiveCountries()
-                .stream()
-                .filter(c -> !EFFECTIVELY_READY_STATUSES.contains(c.getStatus()))
-                .map(CountryState::getCountryName)
-                .collect(toSet());
+    private Set<String> getNotReadyCountries(SnapshotIndex index) {
+        return Sets.difference(
+                index.getActiveCountries(),
+                Sets.union(index.getCountries(CountryStatus.Ready), index.getCountries(CountryStatus.NoOrders)));
     }
 }
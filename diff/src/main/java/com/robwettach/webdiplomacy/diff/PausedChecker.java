@@ -1,12 +1,21 @@
 package com.robwettach.webdiplomacy.diff;
 
+import com.google.common.collect.Sets;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link DiffChecker} that reports when the game is paused or unpaused.
  */
 public class PausedChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(ChangeMask.Field.Paused);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
         if (current.getState().isPaused() != previous.getState().isPaused()) {
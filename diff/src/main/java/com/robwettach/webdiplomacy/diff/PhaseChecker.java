@@ -1,14 +1,23 @@
 package com.robwettach.webdiplomacy.diff;
 
+import com.google.common.collect.Sets;
 import com.robwettach.webdiplomacy.model.DatePhase;
 import com.robwettach.webdiplomacy.model.GamePhase;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link DiffChecker} that reports when the game proceeds to a new phase.
  */
 public class PhaseChecker implements DiffChecker {
+    private static final Set<ChangeMask.Field> DEPENDENCIES = Sets.immutableEnumSet(ChangeMask.Field.Phase);
+
+    @Override
+    public Set<ChangeMask.Field> getDependencies() {
+        return DEPENDENCIES;
+    }
+
     @Override
     public List<Diff> check(Snapshot previous, Snapshot current) {
         DatePhase currentPhase = current.getState().getDatePhase();
@@ -0,0 +1,100 @@
+package com.robwettach.webdiplomacy.diff;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Vote;
+
+/**
+ * The views of a {@link Snapshot} that {@link DiffChecker}s look countries up by, worked out once up front.
+ *
+ * <p>{@link DiffCheckers#check(Snapshot, Snapshot)} builds one of these for each {@link Snapshot} and hands the same
+ * ones to every checker, rather than each checker grouping the countries all over again.  Every set keeps the order
+ * the countries appear in the {@link GameState}.
+ */
+public final class SnapshotIndex {
+    private final Snapshot snapshot;
+    private final ImmutableSet<String> activeCountries;
+    private final ImmutableSetMultimap<CountryStatus, String> countriesByStatus;
+    private final ImmutableSetMultimap<Vote, String> votersByVote;
+
+    private SnapshotIndex(Snapshot snapshot) {
+        this.snapshot = snapshot;
+        ImmutableSet.Builder<String> active = ImmutableSet.builder();
+        ImmutableSetMultimap.Builder<CountryStatus, String> byStatus = ImmutableSetMultimap.builder();
+        ImmutableSetMultimap.Builder<Vote, String> byVote = ImmutableSetMultimap.builder();
+        for (CountryState country : snapshot.getState().getCountries()) {
+            String name = country.getCountryName();
+            byStatus.put(country.getStatus(), name);
+            // Defeated countries can't vote, even if a vote of theirs is still shown
+            if (country.getStatus() != CountryStatus.Defeated) {
+                active.add(name);
+                country.getVotes().forEach(v -> byVote.put(v, name));
+            }
+        }
+        this.activeCountries = active.build();
+        this.countriesByStatus = byStatus.build();
+        this.votersByVote = byVote.build();
+    }
+
+    /**
+     * Index a {@link Snapshot}.
+     *
+     * @param snapshot The {@link Snapshot} to index
+     * @return The new {@link SnapshotIndex}
+     */
+    public static SnapshotIndex of(Snapshot snapshot) {
+        checkNotNull(snapshot, "snapshot must not be null");
+        return new SnapshotIndex(snapshot);
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public GameState getState() {
+        return snapshot.getState();
+    }
+
+    /**
+     * Get the names of every country that is not {@link CountryStatus#Defeated Defeated}.
+     *
+     * @return The names of the active countries
+     */
+    public ImmutableSet<String> getActiveCountries() {
+        return activeCountries;
+    }
+
+    /**
+     * Get the names of every country with a given {@link CountryStatus}.
+     *
+     * @param status The {@link CountryStatus} to look up
+     * @return The names of the countries with {@code status}, which may be empty
+     */
+    public ImmutableSet<String> getCountries(CountryStatus status) {
+        return countriesByStatus.get(status);
+    }
+
+    /**
+     * Get the names of every active country voting for a given {@link Vote}.
+     *
+     * @param vote The {@link Vote} to look up
+     * @return The names of the countries voting for {@code vote}, which may be empty
+     */
+    public ImmutableSet<String> getVoters(Vote vote) {
+        return votersByVote.get(vote);
+    }
+
+    /**
+     * Get every {@link Vote} that at least one active country is voting for.
+     *
+     * @return The {@link Vote}s cast
+     */
+    public ImmutableSet<Vote> getVotes() {
+        return votersByVote.keySet();
+    }
+}
@@ -0,0 +1,111 @@
+package com.robwettach.webdiplomacy.diff;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.model.Vote;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class ChangeMaskTest {
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+    private static final CountryState ENGLAND = makeCountry("England", CountryStatus.NotReceived, Set.of());
+    private static final CountryState FRANCE = makeCountry("France", CountryStatus.NotReceived, Set.of());
+    private static final GameState STATE = makeState().country(ENGLAND).country(FRANCE).build();
+
+    @Test
+    void shouldOnlyMarkTimeWhenStateUnchanged() {
+        Snapshot later = Snapshot.create(NOW.plusMinutes(1), STATE);
+        assertThat("Unexpected changes", ChangeMask.between(at(STATE), later),
+                is(ChangeMask.of(ChangeMask.Field.Time)));
+    }
+
+    @Test
+    void shouldMarkNothingWhenEqual() {
+        GameState copy = makeState().country(ENGLAND).country(FRANCE).build();
+        assertThat("Unexpected changes", ChangeMask.between(at(STATE), at(copy)).isEmpty(), is(true));
+    }
+
+    @Test
+    void shouldMarkStatusChanges() {
+        GameState current = makeState()
+                .country(makeCountry("England", CountryStatus.Completed, Set.of()))
+                .country(FRANCE)
+                .build();
+        assertThat("Unexpected changes", ChangeMask.between(at(STATE), at(current)),
+                is(ChangeMask.of(ChangeMask.Field.Statuses)));
+    }
+
+    @Test
+    void shouldMarkVoteChanges() {
+        GameState current = makeState()
+                .country(ENGLAND)
+                .country(makeCountry("France", CountryStatus.NotReceived, Set.of(Vote.Draw)))
+                .build();
+        assertThat("Unexpected changes", ChangeMask.between(at(STATE), at(current)),
+                is(ChangeMask.of(ChangeMask.Field.Votes)));
+    }
+
+    @Test
+    void shouldMarkAllCountryFieldsWhenCountriesDiffer() {
+        GameState reordered = makeState().country(FRANCE).country(ENGLAND).build();
+        GameState fewer = makeState().country(ENGLAND).build();
+        ChangeMask expected = ChangeMask.of(ChangeMask.Field.Statuses, ChangeMask.Field.Votes);
+
+        assertThat("Unexpected changes when reordered", ChangeMask.between(at(STATE), at(reordered)), is(expected));
+        assertThat("Unexpected changes when removed", ChangeMask.between(at(STATE), at(fewer)), is(expected));
+    }
+
+    @Test
+    void shouldMarkGameFieldChanges() {
+        GameState current = STATE.toBuilder()
+                .date(GameDate.create(Season.Autumn, 1901))
+                .paused(true)
+                .finished(true)
+                .nextTurnAt(NOW.plusDays(1))
+                .build();
+        ChangeMask changes = ChangeMask.between(at(STATE), at(current));
+
+        assertThat("Unexpected changes", changes, is(ChangeMask.of(
+                ChangeMask.Field.Phase,
+                ChangeMask.Field.Paused,
+                ChangeMask.Field.Finished,
+                ChangeMask.Field.NextTurnAt)));
+        assertThat("Changes should match dependencies", changes.hasAny(Set.of(ChangeMask.Field.Paused)), is(true));
+        assertThat("Changes should not match dependencies",
+                changes.hasAny(Set.of(ChangeMask.Field.Statuses, ChangeMask.Field.Time)), is(false));
+    }
+
+    private static Snapshot at(GameState state) {
+        return Snapshot.create(NOW, state);
+    }
+
+    private static GameState.Builder makeState() {
+        return GameState.builder()
+                .name("test")
+                .id(1)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .nextTurnAt(NOW.plusHours(12));
+    }
+
+    private static CountryState makeCountry(String name, CountryStatus status, Set<Vote> votes) {
+        return CountryState.builder()
+                .countryName(name)
+                .user(UserInfo.create("test", 1))
+                .status(status)
+                .supplyCenterCount(3)
+                .unitCount(3)
+                .votes(votes)
+                .build();
+    }
+}
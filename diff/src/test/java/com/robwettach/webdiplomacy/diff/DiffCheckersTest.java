@@ -0,0 +1,80 @@
+package com.robwettach.webdiplomacy.diff;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DiffCheckersTest {
+    @Test
+    void shouldNotifyCrossingOneHourWhenUnchanged() {
+        ZonedDateTime nextTurn = ZonedDateTime.now();
+        Snapshot previous = makeSnapshot(nextTurn.minusHours(1).minusNanos(1), nextTurn);
+
+        List<Diff> diffs = DiffCheckers.checkUnchanged(previous, nextTurn.minusHours(1).plusNanos(1));
+        assertThat("Unexpected diffs", diffs, hasSize(1));
+        assertThat("Unexpected message", diffs.get(0).getMessage(), is("One more hour to submit moves!"));
+    }
+
+    @Test
+    void shouldNotNotifyWhenUnchanged() {
+        ZonedDateTime nextTurn = ZonedDateTime.now();
+        Snapshot previous = makeSnapshot(nextTurn.minusHours(3), nextTurn);
+
+        List<Diff> diffs = DiffCheckers.checkUnchanged(previous, nextTurn.minusHours(2));
+        assertThat("Unexpected diffs", diffs, is(empty()));
+    }
+
+    @Test
+    void shouldMatchFullCheckWhenUnchanged() {
+        ZonedDateTime nextTurn = ZonedDateTime.now();
+        Snapshot previous = makeSnapshot(nextTurn.minusHours(2), nextTurn);
+        ZonedDateTime now = nextTurn.minusMinutes(30);
+
+        List<Diff> expected = DiffCheckers.check(previous, Snapshot.create(now, previous.getState()));
+        assertThat("Unexpected diffs", DiffCheckers.checkUnchanged(previous, now), is(equalTo(expected)));
+    }
+
+    @Test
+    void shouldOnlyRunCheckersWhoseInputsChanged() {
+        ZonedDateTime nextTurn = ZonedDateTime.now();
+        GameState state = makeSnapshot(nextTurn.minusHours(2), nextTurn).getState().toBuilder()
+                .country(CountryState.builder()
+                        .countryName("England")
+                        .user(UserInfo.create("test", 1))
+                        .status(CountryStatus.NotReceived)
+                        .supplyCenterCount(3)
+                        .unitCount(3)
+                        .build())
+                .build();
+        Snapshot previous = Snapshot.create(nextTurn.minusHours(2), state);
+        Snapshot current = Snapshot.create(nextTurn.minusHours(2), state.toBuilder().paused(true).build());
+
+        // Orders still haven't been received, but that was already known
+        List<Diff> diffs = DiffCheckers.check(previous, current);
+        assertThat("Unexpected diffs", diffs, hasSize(1));
+        assertThat("Unexpected message", diffs.get(0).getMessage(), is("The game is now paused"));
+    }
+
+    private Snapshot makeSnapshot(ZonedDateTime snapshotTime, ZonedDateTime nextTurnTime) {
+        return Snapshot.create(snapshotTime, GameState.builder()
+                .name("test")
+                .id(1)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .nextTurnAt(nextTurnTime)
+                .build());
+    }
+}
@@ -0,0 +1,65 @@
+package com.robwettach.webdiplomacy.diff;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.model.Vote;
+import java.time.ZonedDateTime;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class SnapshotIndexTest {
+    private final SnapshotIndex index = SnapshotIndex.of(Snapshot.create(ZonedDateTime.now(), GameState.builder()
+            .name("test")
+            .id(1)
+            .date(GameDate.create(Season.Spring, 1901))
+            .phase(GamePhase.Diplomacy)
+            .country(makeCountry("England", CountryStatus.Ready, Set.of(Vote.Draw)))
+            .country(makeCountry("France", CountryStatus.NotReceived, Set.of(Vote.Draw, Vote.Pause)))
+            .country(makeCountry("Germany", CountryStatus.Ready, Set.of()))
+            .country(makeCountry("Italy", CountryStatus.Defeated, Set.of(Vote.Pause)))
+            .build()));
+
+    @Test
+    void shouldGroupCountriesByStatus() {
+        assertThat("Unexpected ready countries", index.getCountries(CountryStatus.Ready),
+                contains("England", "Germany"));
+        assertThat("Unexpected defeated countries", index.getCountries(CountryStatus.Defeated), contains("Italy"));
+        assertThat("Unexpected completed countries", index.getCountries(CountryStatus.Completed), is(empty()));
+    }
+
+    @Test
+    void shouldOnlyCountActiveCountries() {
+        assertThat("Unexpected active countries", index.getActiveCountries(),
+                contains("England", "France", "Germany"));
+    }
+
+    @Test
+    void shouldGroupActiveVotersByVote() {
+        assertThat("Unexpected votes", index.getVotes(), contains(Vote.Draw, Vote.Pause));
+        assertThat("Unexpected draw voters", index.getVoters(Vote.Draw), contains("England", "France"));
+        // Italy's vote doesn't count once it's defeated
+        assertThat("Unexpected pause voters", index.getVoters(Vote.Pause), contains("France"));
+        assertThat("Unexpected unpause voters", index.getVoters(Vote.Unpause), is(empty()));
+    }
+
+    private static CountryState makeCountry(String name, CountryStatus status, Set<Vote> votes) {
+        return CountryState.builder()
+                .countryName(name)
+                .user(UserInfo.create("test", 1))
+                .status(status)
+                .supplyCenterCount(3)
+                .unitCount(3)
+                .votes(votes)
+                .build();
+    }
+}
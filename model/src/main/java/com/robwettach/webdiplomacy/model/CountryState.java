@@ -6,6 +6,7 @@ import static java.util.stream.Collectors.joining;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import com.google.auto.value.AutoValue;
 import java.util.Collections;
 import java.util.Set;
@@ -53,6 +54,7 @@ public abstract class CountryState {
      * Builder class for {@link CountryState}.
      */
     @AutoValue.Builder
+    @JsonPOJOBuilder(buildMethodName = "buildInterned")
     public interface Builder {
         @JsonCreator
         static CountryState.Builder builder() {
@@ -77,5 +79,15 @@ public abstract class CountryState {
         @JsonProperty
         Builder votes(Set<Vote> votes);
         CountryState build();
+
+        /**
+         * Build the {@link CountryState}, and swap it for the shared instance of it, as Jackson does.
+         *
+         * @return The shared {@link CountryState} instance
+         * @see ValueInterner
+         */
+        default CountryState buildInterned() {
+            return ValueInterner.intern(build());
+        }
     }
 }
@@ -10,6 +10,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.collect.ImmutableSet;
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -34,8 +35,11 @@ public abstract class GameState {
     /**
      * Get the set of all countries that are not {@link CountryStatus#Defeated Defeated}.
      *
+     * <p>Worked out the first time it's asked for, then remembered.
+     *
      * @return The countries that are not {@link CountryStatus#Defeated Defeated}
      */
+    @Memoized
     @JsonIgnore
     public ImmutableSet<CountryState> getActiveCountries() {
         return getCountries()
@@ -44,6 +48,7 @@ public abstract class GameState {
                 .collect(toImmutableSet());
     }
 
+    @Memoized
     @JsonIgnore
     public DatePhase getDatePhase() {
         return DatePhase.create(getDate(), getPhase());
@@ -14,8 +14,12 @@ public abstract class UserInfo {
     public abstract String getName();
     public abstract int getId();
 
-    @JsonCreator
-    public static UserInfo create(@JsonProperty String name, @JsonProperty int id) {
+    public static UserInfo create(String name, int id) {
         return new AutoValue_UserInfo(name, id);
     }
+
+    @JsonCreator
+    static UserInfo fromJson(@JsonProperty String name, @JsonProperty int id) {
+        return ValueInterner.intern(create(ValueInterner.intern(name), id));
+    }
 }
@@ -0,0 +1,64 @@
+package com.robwettach.webdiplomacy.model;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
+import java.util.Set;
+
+/**
+ * Shared pools of the model's value objects, so that equal values read back from stored history share one instance.
+ *
+ * <p>A game's history is mostly the same countries, users and votes over and over, so interning them as they're
+ * deserialized cuts the memory a loaded history takes by several times, and lets most equality checks between states
+ * stop at an identity comparison.  The pools are weak: a value is only kept for as long as something else refers to it.
+ *
+ * <p>Safe to use from any thread.
+ */
+public final class ValueInterner {
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Interner<UserInfo> USERS = Interners.newWeakInterner();
+    private static final Interner<Set<Vote>> VOTES = Interners.newWeakInterner();
+    private static final Interner<CountryState> COUNTRIES = Interners.newWeakInterner();
+
+    private ValueInterner() {}
+
+    /**
+     * Get the shared instance of a {@link String}, e.g. a country or user name.
+     *
+     * @param value The {@link String} to intern
+     * @return The shared instance equal to {@code value}
+     */
+    public static String intern(String value) {
+        return STRINGS.intern(value);
+    }
+
+    /**
+     * Get the shared instance of a {@link UserInfo}.
+     *
+     * @param user The {@link UserInfo} to intern
+     * @return The shared instance equal to {@code user}
+     */
+    public static UserInfo intern(UserInfo user) {
+        return USERS.intern(user);
+    }
+
+    /**
+     * Get the shared instance of a {@link CountryState}.
+     *
+     * @param country The {@link CountryState} to intern
+     * @return The shared instance equal to {@code country}
+     */
+    public static CountryState intern(CountryState country) {
+        return COUNTRIES.intern(country);
+    }
+
+    /**
+     * Get a shared, immutable instance of a set of {@link Vote}s.
+     *
+     * @param votes The {@link Vote}s to intern, which may be mutable
+     * @return The shared, immutable instance equal to {@code votes}
+     */
+    public static Set<Vote> internVotes(Set<Vote> votes) {
+        return VOTES.intern(Sets.immutableEnumSet(votes));
+    }
+}
@@ -20,9 +20,12 @@ public class StdOutNotifier implements Notifier {
     @Override
     public void notify(List<Diff> diffs) {
         if (!diffs.isEmpty()) {
-            System.out.println();
-            System.out.println(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
-            diffs.forEach(d -> System.out.printf("- %s%n", d));
+            // Keep each batch of diffs together when several games are notifying at once
+            synchronized (System.out) {
+                System.out.println();
+                System.out.println(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+                diffs.forEach(d -> System.out.printf("- %s%n", d));
+            }
         }
     }
 
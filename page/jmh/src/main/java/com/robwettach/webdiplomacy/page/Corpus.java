@@ -0,0 +1,43 @@
+package com.robwettach.webdiplomacy.page;
+
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * The recorded <em>webDiplomacy</em> pages that the benchmarks parse, shared with the {@code page} tests.
+ */
+final class Corpus {
+    private Corpus() { }
+
+    /**
+     * Load the bytes of a recorded page.
+     *
+     * @param page The name of the page, e.g. {@code board-diplomacy}
+     * @return The bytes of the page, as served
+     */
+    static byte[] load(String page) {
+        try {
+            return Resources.toByteArray(Resources.getResource("pages/" + page + ".html"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load recorded page: " + page, e);
+        }
+    }
+
+    /**
+     * Parse the bytes of a recorded page into an HTML {@link Document}, as {@link PageFetcher} does.
+     *
+     * @param bytes The bytes of the page
+     * @return The HTML {@link Document}
+     */
+    static Document parse(byte[] bytes) {
+        try {
+            return Jsoup.parse(new ByteArrayInputStream(bytes), "UTF-8", "");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse recorded page", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.robwettach.webdiplomacy.page;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks each way of reading a {@link GameBoardPage} from a recorded {@code board.php} page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameBoardPageBenchmark {
+    @Param({
+            "board-pre-game",
+            "board-diplomacy",
+            "board-paused",
+            "board-finished",
+            "board-defeated",
+            "board-voting"})
+    public String page;
+
+    private byte[] bytes;
+    private Document document;
+    private PageValidators unchanged;
+
+    /**
+     * Load the page, and parse it ahead of time for the benchmarks that start from a DOM.
+     *
+     * @throws IOException if the page can't be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        bytes = Corpus.load(page);
+        document = Corpus.parse(bytes);
+        unchanged = new PageValidators();
+        GameBoardPage.fromStreamIfChanged(new ByteArrayInputStream(bytes), UTF_8, unchanged);
+    }
+
+    @Benchmark
+    public GameBoardPage parseDocument() {
+        return GameBoardPage.fromDocument(Corpus.parse(bytes));
+    }
+
+    @Benchmark
+    public GameBoardPage fromDocument() {
+        return GameBoardPage.fromDocument(document);
+    }
+
+    @Benchmark
+    public GameBoardPage fromStream() throws IOException {
+        return GameBoardPage.fromStream(new ByteArrayInputStream(bytes), UTF_8);
+    }
+
+    @Benchmark
+    public Optional<GameBoardPage> fromStreamUnchanged() throws IOException {
+        return GameBoardPage.fromStreamIfChanged(new ByteArrayInputStream(bytes), UTF_8, unchanged);
+    }
+}
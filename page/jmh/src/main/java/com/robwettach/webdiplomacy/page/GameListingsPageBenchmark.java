@@ -0,0 +1,69 @@
+package com.robwettach.webdiplomacy.page;
+
+import java.util.concurrent.TimeUnit;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks reading a {@link GameListingsPage}, and each of its {@link GamePanel}s, from a recorded
+ * {@code gamelistings.php} page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameListingsPageBenchmark {
+    @Param({"gamelistings-my-games", "gamelistings-many-games"})
+    public String page;
+
+    private byte[] bytes;
+    private Document document;
+    private Elements panels;
+
+    /**
+     * Load the page, and parse it ahead of time for the benchmarks that start from a DOM.
+     */
+    @Setup
+    public void setUp() {
+        bytes = Corpus.load(page);
+        document = Corpus.parse(bytes);
+        panels = document.select(".gamesList .gamePanel");
+    }
+
+    @Benchmark
+    public GameListingsPage parseDocument() {
+        return GameListingsPage.fromDocument(Corpus.parse(bytes));
+    }
+
+    @Benchmark
+    public GameListingsPage fromDocument() {
+        return GameListingsPage.fromDocument(document);
+    }
+
+    /**
+     * Extract every {@link GamePanel} from its already-selected {@link Element}.
+     *
+     * @param blackhole The {@link Blackhole} to consume each {@link GamePanel}
+     */
+    @Benchmark
+    public void gamePanels(Blackhole blackhole) {
+        for (Element panel : panels) {
+            blackhole.consume(GamePanel.fromElement(panel));
+        }
+    }
+}
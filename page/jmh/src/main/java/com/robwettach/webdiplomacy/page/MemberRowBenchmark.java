@@ -0,0 +1,73 @@
+package com.robwettach.webdiplomacy.page;
+
+import java.util.concurrent.TimeUnit;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks extracting the {@link MemberRow}s and {@link CountryUserLink}s of a recorded {@code board.php} page's
+ * members table, from their already-selected {@link Element}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberRowBenchmark {
+    @Param({"board-diplomacy", "board-paused", "board-finished", "board-defeated", "board-voting"})
+    public String page;
+
+    private Elements rows;
+    private Elements memberNames;
+
+    /**
+     * Load and parse the page, and select the elements of its members table.
+     */
+    @Setup
+    public void setUp() {
+        Document document = Corpus.parse(Corpus.load(page));
+        rows = document.select(MembersTable.SELECTOR).first().select(".member");
+        memberNames = new Elements();
+        for (Element row : rows) {
+            memberNames.add(row.select(".memberName").first());
+        }
+    }
+
+    /**
+     * Extract every {@link MemberRow} of the members table.
+     *
+     * @param blackhole The {@link Blackhole} to consume each {@link MemberRow}
+     */
+    @Benchmark
+    public void memberRows(Blackhole blackhole) {
+        for (Element row : rows) {
+            blackhole.consume(MemberRow.fromElement(row));
+        }
+    }
+
+    /**
+     * Extract every {@link CountryUserLink} of the members table.
+     *
+     * @param blackhole The {@link Blackhole} to consume each {@link CountryUserLink}
+     */
+    @Benchmark
+    public void countryUserLinks(Blackhole blackhole) {
+        for (Element memberName : memberNames) {
+            blackhole.consume(CountryUserLink.fromElement(memberName));
+        }
+    }
+}
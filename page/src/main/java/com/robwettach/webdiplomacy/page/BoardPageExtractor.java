@@ -0,0 +1,893 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.google.common.base.Verify.verify;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import javax.annotation.Nullable;
+import org.jsoup.parser.Parser;
+
+/**
+ * Extracts a {@link GameBoardPage} straight from the bytes of a <em>webDiplomacy</em> game board, without building a
+ * DOM.
+ *
+ * <p>The page is tokenized only far enough to know which elements are open, and reading stops as soon as the members
+ * table has closed (or the title bar, for pre-game boards), so the map, chat and scripts that follow it are never
+ * read.  Fields are recorded as byte ranges into the buffered prefix of the page, and only decoded once extraction has
+ * finished, with the same whitespace normalization as Jsoup's {@link org.jsoup.nodes.Element#text()}.
+ *
+ * <p>Relies on the well-formed XHTML that <em>webDiplomacy</em> serves: unlike a full HTML parser, elements are only
+ * ever closed by their own end tag (or by an end tag of one of their ancestors), never implicitly.
+ */
+final class BoardPageExtractor {
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final int MIN_READ_SIZE = 4 * 1024;
+    private static final long UNSET = -1L;
+    private static final long CLAIMED = -2L;
+    private static final long EMPTY = 0L;
+
+    // Title bar fields
+    private static final int TITLE_NAME = 0;
+    private static final int TITLE_DATE = 1;
+    private static final int TITLE_PHASE = 2;
+    private static final int TITLE_TIME_REMAINING = 3;
+    private static final int TITLE_NEXT_TURN = 4;
+    private static final int TITLE_COUNTDOWN = 5;
+    private static final int TITLE_FIELDS = 6;
+
+    // Member row fields, offset by ROW_BASE when used as a slot
+    private static final int ROW_BASE = 16;
+    private static final int ROW_COUNTRY_NAME = 0;
+    private static final int ROW_STATUS_ICON = 1;
+    private static final int ROW_USER_NAME = 2;
+    private static final int ROW_USER_LINK = 3;
+    private static final int ROW_POINTS = 4;
+    private static final int ROW_MEMBER_STATUS = 5;
+    private static final int ROW_SC_UNITS = 6;
+    private static final int ROW_VOTES = 7;
+    private static final int ROW_MEMBER_NAME = 8;
+    private static final int ROW_FIELDS = 9;
+    private static final int NO_SLOT = -1;
+
+    // Scopes, inherited by every descendant
+    private static final int IN_TITLE_BAR = 1;
+    private static final int IN_MEMBERS_TABLE = 1 << 1;
+    private static final int IN_ROW = 1 << 2;
+    private static final int IN_MEMBER_NAME = 1 << 3;
+    private static final int SCOPES = IN_TITLE_BAR | IN_MEMBERS_TABLE | IN_ROW | IN_MEMBER_NAME;
+    // Element roles, only visible to direct children
+    private static final int TITLE_BAR = 1 << 4;
+    private static final int MEMBERS_TABLE = 1 << 5;
+    private static final int ROW = 1 << 6;
+    private static final int COUNTRY_NAME_PARENT = 1 << 7;
+    private static final int STATUS_ICON_PARENT = 1 << 8;
+    private static final int MEMBER_STATUS_PARENT = 1 << 9;
+
+    // Per https://html.spec.whatwg.org/#void-elements
+    private static final ImmutableSet<String> VOID_TAGS = ImmutableSet.of(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source",
+            "track", "wbr");
+    // Elements whose content is never markup
+    private static final ImmutableSet<String> RAW_TEXT_TAGS = ImmutableSet.of(
+            "script", "style", "textarea", "title");
+    // Matches Jsoup's block tags, which it separates with spaces in Element#text()
+    private static final ImmutableSet<String> BLOCK_TAGS = ImmutableSet.of(
+            "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title", "frame",
+            "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2", "h3", "h4", "h5",
+            "h6", "ul", "ol", "pre", "div", "blockquote", "hr", "address", "figure", "figcaption", "form", "fieldset",
+            "ins", "del", "dl", "dt", "dd", "li", "table", "caption", "thead", "tfoot", "tbody", "colgroup", "col",
+            "tr", "th", "td", "video", "audio", "canvas", "details", "menu", "plaintext", "template", "article",
+            "main", "svg", "math", "center");
+
+    private final InputStream in;
+    private final Charset charset;
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private int limit = 0;
+    private boolean eof = false;
+
+    // Stack of open elements
+    private int depth = 0;
+    private int[] nameStarts = new int[32];
+    private int[] nameEnds = new int[32];
+    private int[] flags = new int[32];
+    private int[] contentStarts = new int[32];
+    private int[] slots = new int[32];
+
+    private final long[] title = newFields(TITLE_FIELDS);
+    private final List<long[]> rows = new ArrayList<>();
+    private long[] row = null;
+    private boolean titleBarSeen = false;
+    private boolean membersTableSeen = false;
+    private boolean done = false;
+
+    private BoardPageExtractor(InputStream in, Charset charset) {
+        this.in = in;
+        this.charset = charset;
+    }
+
+    /**
+     * Extract a {@link GameBoardPage} from the bytes of an HTML game board.
+     *
+     * @param in The {@link InputStream} to read the game board from.  Only read as far as the end of the members table.
+     * @param charset The {@link Charset} of the game board
+     * @return A {@link GameBoardPage} instance
+     * @throws IOException if there is an error reading from {@code in}
+     */
+    static GameBoardPage extract(InputStream in, Charset charset) throws IOException {
+        BoardPageExtractor extractor = new BoardPageExtractor(in, charset);
+        extractor.scan();
+        return extractor.toPage();
+    }
+
+    /**
+     * Extract a {@link GameBoardPage} from the bytes of an HTML game board, unless its fingerprint matches the one in
+     * {@code validators}.
+     *
+     * <p>The fingerprint covers the raw bytes of every field that is extracted, except the countdown to the next turn,
+     * which ticks along on every request.  When it matches, none of the fields are decoded.
+     *
+     * @param in The {@link InputStream} to read the game board from.  Only read as far as the end of the members table.
+     * @param charset The {@link Charset} of the game board
+     * @param validators The {@link PageValidators} holding the fingerprint of the game board last extracted, updated if
+     *                   it has changed
+     * @return An {@link Optional} containing a {@link GameBoardPage} instance if the fingerprint has changed.
+     *         Else, {@link Optional#empty()}.
+     * @throws IOException if there is an error reading from {@code in}
+     */
+    static Optional<GameBoardPage> extractIfChanged(InputStream in, Charset charset, PageValidators validators)
+            throws IOException {
+        BoardPageExtractor extractor = new BoardPageExtractor(in, charset);
+        extractor.scan();
+        long fingerprint = extractor.fingerprint();
+        if (validators.getFingerprint().equals(OptionalLong.of(fingerprint))) {
+            return Optional.empty();
+        }
+        GameBoardPage page = extractor.toPage();
+        validators.updateFingerprint(fingerprint);
+        return Optional.of(page);
+    }
+
+    private void scan() throws IOException {
+        int pos = 0;
+        while (!done && pos >= 0) {
+            int lt = indexOf('<', pos);
+            if (lt < 0 || !fill(lt + 1)) {
+                break;
+            }
+            byte next = buf[lt + 1];
+            if (isLetter(next)) {
+                pos = startTag(lt);
+            } else if (next == '/' && fill(lt + 2) && isLetter(buf[lt + 2])) {
+                pos = endTag(lt);
+            } else if (next == '!' && startsWith(lt, "<!--")) {
+                pos = skipPast(lt + 4, "-->");
+            } else if (next == '!' || next == '?' || next == '/') {
+                pos = skipPast(lt + 2, ">");
+            } else {
+                pos = lt + 1;
+            }
+        }
+        // Anything still open when we stop is closed by the end of what we've read
+        while (depth > 0) {
+            close(limit);
+        }
+    }
+
+    private int startTag(int lt) throws IOException {
+        int nameStart = lt + 1;
+        int nameEnd = nameStart;
+        while (fill(nameEnd) && isNameChar(buf[nameEnd])) {
+            nameEnd++;
+        }
+        int gt = tagEnd(nameEnd);
+        if (gt < 0) {
+            return -1;
+        }
+        boolean selfClosing = buf[gt - 1] == '/';
+        int attributesEnd = selfClosing ? gt - 1 : gt;
+
+        int parentFlags = depth > 0 ? flags[depth - 1] : 0;
+        int elementFlags = parentFlags & SCOPES;
+        int slot = NO_SLOT;
+        int contentStart = gt + 1;
+        long classes = attribute(nameEnd, attributesEnd, "class");
+
+        if ((parentFlags & IN_TITLE_BAR) != 0) {
+            if (claim(title, TITLE_NAME, hasClass(classes, "gameName"))) {
+                slot = TITLE_NAME;
+            } else if (claim(title, TITLE_DATE, hasClass(classes, "gameDate"))) {
+                slot = TITLE_DATE;
+            } else if (claim(title, TITLE_PHASE, hasClass(classes, "gamePhase"))) {
+                slot = TITLE_PHASE;
+            } else if (claim(title, TITLE_TIME_REMAINING, hasClass(classes, "gameTimeRemaining"))) {
+                slot = TITLE_TIME_REMAINING;
+            }
+            if (title[TITLE_NEXT_TURN] == UNSET
+                    && isTag(nameStart, nameEnd, "span")
+                    && hasClass(classes, "timeremaining")) {
+                title[TITLE_NEXT_TURN] = orEmpty(attribute(nameEnd, attributesEnd, "unixtime"));
+                if (slot == NO_SLOT) {
+                    // Take in the start tag too, since its attributes tick along with the countdown
+                    title[TITLE_COUNTDOWN] = CLAIMED;
+                    slot = TITLE_COUNTDOWN;
+                    contentStart = lt;
+                }
+            }
+        } else if (!titleBarSeen && hasClass(classes, "titleBar")) {
+            titleBarSeen = true;
+            elementFlags |= IN_TITLE_BAR | TITLE_BAR;
+        }
+
+        if ((parentFlags & IN_ROW) != 0) {
+            if (claim(row, ROW_COUNTRY_NAME, (parentFlags & COUNTRY_NAME_PARENT) != 0
+                    && isTag(nameStart, nameEnd, "span")
+                    && hasCountryClass(classes))) {
+                slot = ROW_BASE + ROW_COUNTRY_NAME;
+            } else if (claim(row, ROW_MEMBER_STATUS, (parentFlags & MEMBER_STATUS_PARENT) != 0
+                    && isTag(nameStart, nameEnd, "em"))) {
+                slot = ROW_BASE + ROW_MEMBER_STATUS;
+            } else if (claim(row, ROW_USER_NAME, (parentFlags & IN_MEMBER_NAME) != 0
+                    && isTag(nameStart, nameEnd, "a"))) {
+                slot = ROW_BASE + ROW_USER_NAME;
+                row[ROW_USER_LINK] = orEmpty(attribute(nameEnd, attributesEnd, "href"));
+            } else if (claim(row, ROW_POINTS, (parentFlags & IN_MEMBER_NAME) != 0
+                    && isTag(nameStart, nameEnd, "span")
+                    && hasClass(classes, "points"))) {
+                slot = ROW_BASE + ROW_POINTS;
+            } else if (claim(row, ROW_SC_UNITS, hasClass(classes, "memberSCCount"))) {
+                slot = ROW_BASE + ROW_SC_UNITS;
+            } else if (claim(row, ROW_VOTES, hasClass(classes, "memberVotes"))) {
+                slot = ROW_BASE + ROW_VOTES;
+            }
+            if (row[ROW_STATUS_ICON] == UNSET
+                    && (parentFlags & STATUS_ICON_PARENT) != 0
+                    && isTag(nameStart, nameEnd, "img")) {
+                row[ROW_STATUS_ICON] = orEmpty(attribute(nameEnd, attributesEnd, "alt"));
+            }
+            if (row[ROW_MEMBER_NAME] == UNSET && hasClass(classes, "memberName")) {
+                // Only the first memberName holds the user's details
+                row[ROW_MEMBER_NAME] = CLAIMED;
+                elementFlags |= IN_MEMBER_NAME;
+            }
+            if (hasClass(classes, "memberCountryName")) {
+                elementFlags |= COUNTRY_NAME_PARENT;
+            }
+            if (hasClass(classes, "memberStatus")) {
+                elementFlags |= MEMBER_STATUS_PARENT;
+            }
+            if (isTag(nameStart, nameEnd, "span") && classContains(classes, "statusicon")) {
+                elementFlags |= STATUS_ICON_PARENT;
+            }
+        } else if ((parentFlags & IN_MEMBERS_TABLE) != 0) {
+            if (hasClass(classes, "member")) {
+                row = newFields(ROW_FIELDS);
+                rows.add(row);
+                elementFlags |= IN_ROW | ROW;
+            }
+        } else if (!membersTableSeen && hasClass(classes, "membersList") && hasClass(classes, "membersFullTable")) {
+            membersTableSeen = true;
+            elementFlags |= IN_MEMBERS_TABLE | MEMBERS_TABLE;
+        }
+
+        push(nameStart, nameEnd, elementFlags, contentStart, slot);
+        if (selfClosing || isTagIn(nameStart, nameEnd, VOID_TAGS)) {
+            close(gt + 1);
+        } else if (isTagIn(nameStart, nameEnd, RAW_TEXT_TAGS)) {
+            // Skip straight to the end tag, so that markup-like text isn't mistaken for elements
+            return indexOfEndTag(gt + 1, nameStart, nameEnd);
+        }
+        return gt + 1;
+    }
+
+    private int endTag(int lt) throws IOException {
+        int nameStart = lt + 2;
+        int nameEnd = nameStart;
+        while (fill(nameEnd) && isNameChar(buf[nameEnd])) {
+            nameEnd++;
+        }
+        int gt = indexOf('>', nameEnd);
+        if (gt < 0) {
+            return -1;
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            if (regionEqualsIgnoreCase(nameStarts[i], nameEnds[i], nameStart, nameEnd)) {
+                while (depth > i) {
+                    close(lt);
+                }
+                break;
+            }
+        }
+        return gt + 1;
+    }
+
+    private void push(int nameStart, int nameEnd, int elementFlags, int contentStart, int slot) {
+        if (depth == flags.length) {
+            int size = depth * 2;
+            nameStarts = Arrays.copyOf(nameStarts, size);
+            nameEnds = Arrays.copyOf(nameEnds, size);
+            flags = Arrays.copyOf(flags, size);
+            contentStarts = Arrays.copyOf(contentStarts, size);
+            slots = Arrays.copyOf(slots, size);
+        }
+        nameStarts[depth] = nameStart;
+        nameEnds[depth] = nameEnd;
+        flags[depth] = elementFlags;
+        contentStarts[depth] = contentStart;
+        slots[depth] = slot;
+        depth++;
+    }
+
+    private void close(int contentEnd) {
+        depth--;
+        int slot = slots[depth];
+        long range = range(contentStarts[depth], contentEnd);
+        if (slot >= ROW_BASE) {
+            row[slot - ROW_BASE] = range;
+        } else if (slot != NO_SLOT) {
+            title[slot] = range;
+        }
+
+        int elementFlags = flags[depth];
+        if ((elementFlags & ROW) != 0) {
+            row = null;
+        } else if ((elementFlags & MEMBERS_TABLE) != 0) {
+            done = true;
+        } else if ((elementFlags & TITLE_BAR) != 0) {
+            // Pre-game boards have no countries to read, so there's no need to look for the members table
+            done = title[TITLE_PHASE] >= 0 && Constants.PRE_GAME.equals(text(title[TITLE_PHASE]));
+        }
+    }
+
+    private GameBoardPage toPage() {
+        verify(titleBarSeen, "Failed to find title bar");
+        GameTitleBar titleBar = GameTitleBar.create(
+                requiredText(title, TITLE_NAME, "game name"),
+                requiredText(title, TITLE_DATE, "game date"),
+                requiredText(title, TITLE_PHASE, "game phase"),
+                requiredText(title, TITLE_TIME_REMAINING, "time remaining"),
+                attributeValue(title[TITLE_NEXT_TURN]));
+
+        Optional<MembersTable> membersTable = Optional.empty();
+        if (!Constants.PRE_GAME.equals(titleBar.getPhase())) {
+            verify(membersTableSeen, "Failed to find members table");
+            ImmutableSet.Builder<MemberRow> memberRows = ImmutableSet.builder();
+            for (long[] fields : rows) {
+                memberRows.add(toMemberRow(fields));
+            }
+            membersTable = Optional.of(MembersTable.create(memberRows.build()));
+        }
+        return GameBoardPage.create(titleBar, membersTable);
+    }
+
+    private long fingerprint() {
+        Hasher hasher = Hashing.farmHashFingerprint64().newHasher();
+        for (int field = 0; field < TITLE_FIELDS; field++) {
+            if (field == TITLE_TIME_REMAINING) {
+                putRange(hasher, title[field], title[TITLE_COUNTDOWN]);
+            } else if (field != TITLE_COUNTDOWN) {
+                putRange(hasher, title[field], UNSET);
+            }
+        }
+        hasher.putInt(rows.size());
+        for (long[] fields : rows) {
+            for (long range : fields) {
+                putRange(hasher, range, UNSET);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Add the bytes in {@code range} to {@code hasher}, leaving out any that are also in {@code excluded}.
+     */
+    private void putRange(Hasher hasher, long range, long excluded) {
+        if (range < 0) {
+            hasher.putLong(range);
+            return;
+        }
+        int start = start(range);
+        int end = end(range);
+        if (excluded >= 0 && start(excluded) >= start && end(excluded) <= end) {
+            putBytes(hasher, start, start(excluded));
+            putBytes(hasher, end(excluded), end);
+        } else {
+            putBytes(hasher, start, end);
+        }
+    }
+
+    private void putBytes(Hasher hasher, int start, int end) {
+        // Length-prefixed, so that bytes can't shift from one field to the next without changing the fingerprint
+        hasher.putInt(end - start);
+        hasher.putBytes(buf, start, end - start);
+    }
+
+    private MemberRow toMemberRow(long[] fields) {
+        String countryName = requiredText(fields, ROW_COUNTRY_NAME, "country name");
+        CountryUserLink user = CountryUserLink.create(
+                requiredText(fields, ROW_USER_NAME, "user name"),
+                attributeValue(fields[ROW_USER_LINK]),
+                requiredText(fields, ROW_POINTS, "points"));
+        return MemberRow.create(
+                countryName,
+                attributeValue(fields[ROW_STATUS_ICON]),
+                user,
+                optionalText(fields[ROW_MEMBER_STATUS]),
+                optionalText(fields[ROW_SC_UNITS]),
+                optionalText(fields[ROW_VOTES]));
+    }
+
+    private String requiredText(long[] fields, int field, String description) {
+        verify(fields[field] >= 0, "Failed to find %s", description);
+        return text(fields[field]);
+    }
+
+    @Nullable
+    private String optionalText(long range) {
+        return range >= 0 ? text(range) : null;
+    }
+
+    @Nullable
+    private String attributeValue(long range) {
+        if (range < 0) {
+            return null;
+        }
+        String value = decode(start(range), end(range));
+        return value.indexOf('&') >= 0 ? Parser.unescapeEntities(value, true) : value;
+    }
+
+    /**
+     * Decode the text of the markup in {@code range} as Jsoup's {@link org.jsoup.nodes.Element#text()} would.
+     */
+    private String text(long range) {
+        StringBuilder text = new StringBuilder();
+        int end = end(range);
+        int pos = start(range);
+        boolean afterBlock = false;
+        while (pos < end) {
+            int lt = indexOf('<', pos, end);
+            int textEnd = lt < 0 ? end : lt;
+            if (textEnd > pos) {
+                if (afterBlock && !endsWithSpace(text)) {
+                    text.append(' ');
+                }
+                appendText(text, pos, textEnd);
+            }
+            afterBlock = false;
+            if (lt < 0) {
+                break;
+            }
+
+            byte next = lt + 1 < end ? buf[lt + 1] : 0;
+            if (isLetter(next)) {
+                int nameEnd = lt + 1;
+                while (nameEnd < end && isNameChar(buf[nameEnd])) {
+                    nameEnd++;
+                }
+                int gt = tagEnd(nameEnd, end);
+                boolean block = isTagIn(lt + 1, nameEnd, BLOCK_TAGS);
+                if ((block || isTag(lt + 1, nameEnd, "br")) && text.length() > 0 && !endsWithSpace(text)) {
+                    text.append(' ');
+                }
+                if (gt < 0) {
+                    break;
+                }
+                pos = gt + 1;
+                if (buf[gt - 1] == '/' || isTagIn(lt + 1, nameEnd, VOID_TAGS)) {
+                    afterBlock = block;
+                } else if (isTagIn(lt + 1, nameEnd, RAW_TEXT_TAGS)) {
+                    // Script and style content isn't text, so skip past it (and its end tag)
+                    int endTag = indexOfEndTag(pos, end, lt + 1, nameEnd);
+                    int endTagEnd = endTag < 0 ? -1 : indexOf('>', endTag, end);
+                    pos = endTagEnd < 0 ? end : endTagEnd + 1;
+                    afterBlock = block;
+                }
+            } else if (next == '/' && lt + 2 < end && isLetter(buf[lt + 2])) {
+                int nameEnd = lt + 2;
+                while (nameEnd < end && isNameChar(buf[nameEnd])) {
+                    nameEnd++;
+                }
+                int gt = indexOf('>', nameEnd, end);
+                pos = gt < 0 ? end : gt + 1;
+                afterBlock = isTagIn(lt + 2, nameEnd, BLOCK_TAGS);
+            } else if (next == '!' && regionStartsWith(lt, end, "<!--")) {
+                int close = indexOf("-->", lt + 4, end);
+                pos = close < 0 ? end : close + 3;
+            } else if (next == '!' || next == '?' || next == '/') {
+                int gt = indexOf('>', lt + 2, end);
+                pos = gt < 0 ? end : gt + 1;
+            } else {
+                // Not markup, so the '<' is just text
+                appendText(text, lt, lt + 1);
+                pos = lt + 1;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    private void appendText(StringBuilder text, int start, int end) {
+        String raw = decode(start, end);
+        if (raw.indexOf('&') >= 0) {
+            raw = Parser.unescapeEntities(raw, false);
+        }
+        boolean lastWasWhite = endsWithSpace(text);
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (isWhitespace(c)) {
+                if (!lastWasWhite) {
+                    text.append(' ');
+                    lastWasWhite = true;
+                }
+            } else if (!isInvisible(c)) {
+                text.append(c);
+                lastWasWhite = false;
+            }
+        }
+    }
+
+    private String decode(int start, int end) {
+        return new String(buf, start, end - start, charset);
+    }
+
+    // Byte-level tokenizing over the buffered prefix of the page
+
+    private boolean fill(int pos) throws IOException {
+        while (pos >= limit && !eof) {
+            if (buf.length - limit < MIN_READ_SIZE) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return pos < limit;
+    }
+
+    private int indexOf(char c, int from) throws IOException {
+        int pos = from;
+        while (fill(pos)) {
+            for (; pos < limit; pos++) {
+                if (buf[pos] == c) {
+                    return pos;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(char c, int from, int end) {
+        for (int pos = from; pos < end; pos++) {
+            if (buf[pos] == c) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(String s, int from, int end) {
+        for (int pos = from; pos + s.length() <= end; pos++) {
+            if (regionStartsWith(pos, end, s)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int pos, String s) throws IOException {
+        return fill(pos + s.length() - 1) && regionStartsWith(pos, limit, s);
+    }
+
+    private boolean regionStartsWith(int pos, int end, String s) {
+        if (pos + s.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[pos + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipPast(int from, String terminator) throws IOException {
+        int pos = from;
+        while (fill(pos + terminator.length() - 1)) {
+            if (regionStartsWith(pos, limit, terminator)) {
+                return pos + terminator.length();
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the {@code >} closing a tag whose attributes start at {@code from}, skipping over quoted attribute values.
+     */
+    private int tagEnd(int from) throws IOException {
+        int pos = from;
+        while (fill(pos)) {
+            byte c = buf[pos];
+            if (c == '>') {
+                return pos;
+            } else if (c == '=') {
+                pos++;
+                while (fill(pos) && isWhitespace(buf[pos])) {
+                    pos++;
+                }
+                if (fill(pos) && (buf[pos] == '"' || buf[pos] == '\'')) {
+                    byte quote = buf[pos];
+                    pos = indexOf((char) quote, pos + 1);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                }
+                pos++;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private int tagEnd(int from, int end) {
+        int pos = from;
+        while (pos < end) {
+            byte c = buf[pos];
+            if (c == '>') {
+                return pos;
+            } else if (c == '=') {
+                pos++;
+                while (pos < end && isWhitespace(buf[pos])) {
+                    pos++;
+                }
+                if (pos < end && (buf[pos] == '"' || buf[pos] == '\'')) {
+                    pos = indexOf((char) buf[pos], pos + 1, end);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                }
+                pos++;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfEndTag(int from, int nameStart, int nameEnd) throws IOException {
+        int pos = from;
+        while (true) {
+            int lt = indexOf('<', pos);
+            if (lt < 0) {
+                return -1;
+            }
+            if (fill(lt + 1 + nameEnd - nameStart) && buf[lt + 1] == '/'
+                    && regionEqualsIgnoreCase(lt + 2, lt + 2 + nameEnd - nameStart, nameStart, nameEnd)) {
+                return lt;
+            }
+            pos = lt + 1;
+        }
+    }
+
+    private int indexOfEndTag(int from, int end, int nameStart, int nameEnd) {
+        int length = nameEnd - nameStart;
+        for (int lt = indexOf('<', from, end); lt >= 0; lt = indexOf('<', lt + 1, end)) {
+            if (lt + 2 + length <= end && buf[lt + 1] == '/'
+                    && regionEqualsIgnoreCase(lt + 2, lt + 2 + length, nameStart, nameEnd)) {
+                return lt;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the value of attribute {@code name} among the attributes in {@code [from, end)}.
+     *
+     * @return The range of the (still encoded) value, {@link #EMPTY} if the attribute has no value, or {@link #UNSET}
+     *         if the attribute isn't present
+     */
+    private long attribute(int from, int end, String name) {
+        int pos = from;
+        while (pos < end) {
+            while (pos < end && (isWhitespace(buf[pos]) || buf[pos] == '/')) {
+                pos++;
+            }
+            final int nameStart = pos;
+            while (pos < end && !isWhitespace(buf[pos]) && buf[pos] != '=' && buf[pos] != '/') {
+                pos++;
+            }
+            int nameEnd = pos;
+            while (pos < end && isWhitespace(buf[pos])) {
+                pos++;
+            }
+            long value = EMPTY;
+            if (pos < end && buf[pos] == '=') {
+                pos++;
+                while (pos < end && isWhitespace(buf[pos])) {
+                    pos++;
+                }
+                if (pos < end && (buf[pos] == '"' || buf[pos] == '\'')) {
+                    int close = indexOf((char) buf[pos], pos + 1, end);
+                    int valueEnd = close < 0 ? end : close;
+                    value = range(pos + 1, valueEnd);
+                    pos = valueEnd + 1;
+                } else {
+                    int valueStart = pos;
+                    while (pos < end && !isWhitespace(buf[pos])) {
+                        pos++;
+                    }
+                    value = range(valueStart, pos);
+                }
+            }
+            if (nameEnd > nameStart && nameEqualsIgnoreCase(nameStart, nameEnd, name)) {
+                return value;
+            }
+        }
+        return UNSET;
+    }
+
+    private boolean hasClass(long classes, String className) {
+        if (classes < 0) {
+            return false;
+        }
+        int end = end(classes);
+        int pos = start(classes);
+        while (pos < end) {
+            while (pos < end && isWhitespace(buf[pos])) {
+                pos++;
+            }
+            int tokenStart = pos;
+            while (pos < end && !isWhitespace(buf[pos])) {
+                pos++;
+            }
+            if (pos > tokenStart && nameEqualsIgnoreCase(tokenStart, pos, className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches {@code [class*=lowerCaseValue]}, which Jsoup evaluates case-insensitively.
+     */
+    private boolean classContains(long classes, String lowerCaseValue) {
+        if (classes < 0) {
+            return false;
+        }
+        int end = end(classes);
+        for (int pos = start(classes); pos + lowerCaseValue.length() <= end; pos++) {
+            if (nameEqualsIgnoreCase(pos, pos + lowerCaseValue.length(), lowerCaseValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches {@code [class~=country\d+]}.
+     */
+    private boolean hasCountryClass(long classes) {
+        if (classes < 0) {
+            return false;
+        }
+        int end = end(classes);
+        for (int pos = start(classes); pos + "country".length() < end; pos++) {
+            if (regionStartsWith(pos, end, "country") && isDigit(buf[pos + "country".length()])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTag(int nameStart, int nameEnd, String tag) {
+        return nameEqualsIgnoreCase(nameStart, nameEnd, tag);
+    }
+
+    private boolean isTagIn(int nameStart, int nameEnd, ImmutableSet<String> tags) {
+        for (String tag : tags) {
+            if (nameEqualsIgnoreCase(nameStart, nameEnd, tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean nameEqualsIgnoreCase(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (toLowerCase(buf[start + i]) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionEqualsIgnoreCase(int start, int end, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (toLowerCase(buf[start + i]) != toLowerCase(buf[otherStart + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean claim(long[] fields, int field, boolean matches) {
+        if (matches && fields[field] == UNSET) {
+            fields[field] = CLAIMED;
+            return true;
+        }
+        return false;
+    }
+
+    private static long[] newFields(int count) {
+        long[] fields = new long[count];
+        Arrays.fill(fields, UNSET);
+        return fields;
+    }
+
+    private static long orEmpty(long range) {
+        return range == UNSET ? EMPTY : range;
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static int start(long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int end(long range) {
+        return (int) range;
+    }
+
+    private static boolean endsWithSpace(StringBuilder text) {
+        return text.length() > 0 && text.charAt(text.length() - 1) == ' ';
+    }
+
+    private static boolean isLetter(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameChar(byte c) {
+        return isLetter(c) || isDigit(c) || c == '-' || c == '_' || c == ':';
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    // Matches Jsoup's StringUtil, which also treats non-breaking spaces as whitespace and drops invisible characters
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == 160;
+    }
+
+    private static boolean isInvisible(char c) {
+        // Zero width space and soft hyphen
+        return c == 8203 || c == 173;
+    }
+
+    private static int toLowerCase(byte c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
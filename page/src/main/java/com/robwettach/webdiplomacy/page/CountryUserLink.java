@@ -31,13 +31,24 @@ public abstract class CountryUserLink {
      */
     public static CountryUserLink fromElement(Element element) {
         Element userA = element.select("a").first();
-        String name = userA.text();
+        String pointsSpanText = element.select("span.points").first().text();
+        return create(userA.text(), userA.attr("href"), pointsSpanText);
+    }
 
-        String pointsSpanText = element.select("span.points").first().text(); // (109 )
+    /**
+     * Create a {@link CountryUserLink} from the text already extracted from its HTML.
+     *
+     * @param name The text of the user link
+     * @param profileLink The {@code href} of the user link
+     * @param pointsSpanText The text of the {@code points} element
+     * @return A {@link CountryUserLink} instance
+     */
+    static CountryUserLink create(String name, String profileLink, String pointsSpanText) {
+        // (109 )
         Matcher pointsMatcher = POINTS_PATTERN.matcher(pointsSpanText);
         verify(pointsMatcher.find(), "Failed to parse points: %s", pointsSpanText);
         int points = Integer.parseInt(pointsMatcher.group(POINTS_KEY));
 
-        return new AutoValue_CountryUserLink(UserProfileLink.fromElement(userA).getId(), name, points);
+        return new AutoValue_CountryUserLink(UserProfileLink.fromHref(profileLink).getId(), name, points);
     }
 }
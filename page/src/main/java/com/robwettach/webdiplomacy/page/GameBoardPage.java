@@ -4,10 +4,15 @@ import static java.lang.String.format;
 
 import com.google.auto.value.AutoValue;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 /**
@@ -30,9 +35,35 @@ public abstract class GameBoardPage {
      * @throws IOException if there is an error downloading the game board data from the Internet
      */
     public static GameBoardPage loadGame(int gameId) throws IOException {
-        String url = format("http://webdiplomacy.net/board.php?gameID=%d", gameId);
-        LOG.debug("Loading game from {}", url);
-        return fromDocument(Jsoup.connect(url).get());
+        LOG.debug("Loading game {}", gameId);
+        return PageFetcher.getDefault().get(boardPath(gameId), Collections.emptyMap(), GameBoardPage::read);
+    }
+
+    /**
+     * Load a given {@code gameId} using {@code fetcher}, unless it hasn't changed since it was last loaded.
+     *
+     * <p>The page is only parsed if the server reports that it has changed since {@code validators} were last
+     * updated, and the fingerprint of its title bar and members table no longer matches theirs (see
+     * {@link #fromStreamIfChanged(InputStream, Charset, PageValidators)}).
+     *
+     * @param fetcher The {@link PageFetcher} to load the game board with
+     * @param gameId The ID of the game to load
+     * @param validators The {@link PageValidators} last seen for this game's board
+     * @return An {@link Optional} containing a {@link GameBoardPage} instance if the game board has changed.
+     *         Else, {@link Optional#empty()}.
+     * @throws IOException if there is an error downloading the game board data from the Internet
+     */
+    public static Optional<GameBoardPage> loadGameIfModified(
+            PageFetcher fetcher,
+            int gameId,
+            PageValidators validators) throws IOException {
+        LOG.debug("Loading game {} if modified", gameId);
+        return fetcher.getIfModified(
+                boardPath(gameId),
+                Collections.emptyMap(),
+                validators,
+                (body, charsetName, url) -> fromStreamIfChanged(body, charset(charsetName), validators))
+                .flatMap(Function.identity());
     }
 
     /**
@@ -47,6 +78,61 @@ public abstract class GameBoardPage {
         if (!Constants.PRE_GAME.equals(titleBar.getPhase())) {
             membersTable = Optional.of(MembersTable.fromParent(document));
         }
+        return create(titleBar, membersTable);
+    }
+
+    /**
+     * Extract a {@link GameBoardPage} straight from the bytes of an HTML game board, without building a DOM.
+     *
+     * <p>Equivalent to {@link #fromDocument(Document)}, but much cheaper: only the title bar and members table are
+     * decoded, and {@code body} is only read as far as the end of the members table.
+     *
+     * @param body The {@link InputStream} containing the game board
+     * @param charset The {@link Charset} of the game board
+     * @return A {@link GameBoardPage} instance
+     * @throws IOException if there is an error reading from {@code body}
+     */
+    public static GameBoardPage fromStream(InputStream body, Charset charset) throws IOException {
+        return BoardPageExtractor.extract(body, charset);
+    }
+
+    /**
+     * Extract a {@link GameBoardPage} straight from the bytes of an HTML game board, unless the title bar and members
+     * table are byte-for-byte the same as when {@code validators} were last updated.
+     *
+     * <p>Like {@link #fromStream(InputStream, Charset)}, but first fingerprints the raw bytes of the title bar and
+     * members table fields, leaving out the countdown to the next turn, which changes on every request.  If the
+     * fingerprint matches the one in {@code validators}, nothing is decoded at all.  Otherwise the fingerprint in
+     * {@code validators} is updated once the page has been extracted.
+     *
+     * @param body The {@link InputStream} containing the game board
+     * @param charset The {@link Charset} of the game board
+     * @param validators The {@link PageValidators} last seen for this game's board
+     * @return An {@link Optional} containing a {@link GameBoardPage} instance if the game board has changed.
+     *         Else, {@link Optional#empty()}.
+     * @throws IOException if there is an error reading from {@code body}
+     */
+    public static Optional<GameBoardPage> fromStreamIfChanged(
+            InputStream body,
+            Charset charset,
+            PageValidators validators) throws IOException {
+        return BoardPageExtractor.extractIfChanged(body, charset, validators);
+    }
+
+    static GameBoardPage create(GameTitleBar titleBar, Optional<MembersTable> membersTable) {
         return new AutoValue_GameBoardPage(titleBar, membersTable);
     }
+
+    private static GameBoardPage read(InputStream body, @Nullable String charsetName, String url) throws IOException {
+        return fromStream(body, charset(charsetName));
+    }
+
+    private static Charset charset(@Nullable String charsetName) {
+        // webDiplomacy serves UTF-8 throughout
+        return charsetName != null ? Charset.forName(charsetName) : StandardCharsets.UTF_8;
+    }
+
+    private static String boardPath(int gameId) {
+        return format("/board.php?gameID=%d", gameId);
+    }
 }
@@ -9,7 +9,6 @@ import java.util.Map;
 import java.util.function.Function;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 
@@ -19,6 +18,7 @@ import org.jsoup.select.Elements;
 @AutoValue
 public abstract class GameListingsPage {
     private static final Logger LOG = LogManager.getLogger(GameListingsPage.class);
+    private static final String LISTINGS_PATH = "/gamelistings.php?gamelistType=My%20games";
 
     public abstract ImmutableMap<Integer, GamePanel> getGamePanels();
 
@@ -32,11 +32,20 @@ public abstract class GameListingsPage {
      * @throws IOException if there is an error downloading the game listing data from the Internet
      */
     public static GameListingsPage load(Map<String, String> cookies) throws IOException {
-        String url = "http://webdiplomacy.net/gamelistings.php?gamelistType=My%20games";
-        LOG.debug("Loading games from {}", url);
-        return fromDocument(Jsoup.connect(url)
-                .cookies(cookies)
-                .get());
+        return load(PageFetcher.getDefault(), cookies);
+    }
+
+    /**
+     * Load a list of games for the current user, as represented by {@code cookies}, using {@code fetcher}.
+     *
+     * @param fetcher The {@link PageFetcher} to load the game listings with
+     * @param cookies The map of HTTP cookies that authenticate a given user
+     * @return A {@link GameListingsPage} instance
+     * @throws IOException if there is an error downloading the game listing data from the Internet
+     */
+    public static GameListingsPage load(PageFetcher fetcher, Map<String, String> cookies) throws IOException {
+        LOG.debug("Loading games from {}", LISTINGS_PATH);
+        return fromDocument(fetcher.get(LISTINGS_PATH, cookies));
     }
 
     /**
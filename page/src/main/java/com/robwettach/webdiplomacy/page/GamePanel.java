@@ -36,8 +36,10 @@ public abstract class GamePanel {
 
         GameTitleBar titleBar = GameTitleBar.fromParent(element);
         Optional<MembersTable> membersTable = Optional.empty();
-        if (!Constants.PRE_GAME.equals(titleBar.getPhase())) {
-            membersTable = Optional.of(MembersTable.fromParent(element));
+        Element membersList = element.select(MembersTable.SELECTOR).first();
+        // Unlike the game board, panels don't always include the members table
+        if (!Constants.PRE_GAME.equals(titleBar.getPhase()) && membersList != null) {
+            membersTable = Optional.of(MembersTable.fromElement(membersList));
         }
         return new AutoValue_GamePanel(gameId, titleBar, membersTable);
     }
@@ -1,10 +1,13 @@
 package com.robwettach.webdiplomacy.page;
 
+import static com.google.common.base.Verify.verifyNotNull;
+
 import com.google.auto.value.AutoValue;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Optional;
+import javax.annotation.Nullable;
 import org.jsoup.nodes.Element;
 
 /**
@@ -41,20 +44,39 @@ public abstract class GameTitleBar {
         String name = element.select(".gameName").first().text();
         String date = element.select(".gameDate").first().text();
         String phase = element.select(".gamePhase").first().text();
+        String timeRemaining = element.select(".gameTimeRemaining").first().text();
+        Element next = element.select("span.timeremaining").first();
+        return create(name, date, phase, timeRemaining, next != null ? next.attr("unixtime") : null);
+    }
 
+    /**
+     * Create a {@link GameTitleBar} from the text already extracted from its HTML.
+     *
+     * @param name The text of the {@code gameName} element
+     * @param date The text of the {@code gameDate} element
+     * @param phase The text of the {@code gamePhase} element
+     * @param timeRemaining The text of the {@code gameTimeRemaining} element
+     * @param nextTurnUnixTime The {@code unixtime} attribute of the {@code timeremaining} element, if present
+     * @return A {@link GameTitleBar} instance
+     */
+    static GameTitleBar create(
+            String name,
+            String date,
+            String phase,
+            String timeRemaining,
+            @Nullable String nextTurnUnixTime) {
         boolean paused = false;
         boolean finished = false;
         Optional<ZonedDateTime> nextTurnAt = Optional.empty();
 
-        Element gameTimeRemaining = element.select(".gameTimeRemaining").first();
-        if (gameTimeRemaining.text().startsWith("Paused")) {
+        if (timeRemaining.startsWith("Paused")) {
             paused = true;
-        } else if (gameTimeRemaining.text().startsWith("Finished")) {
+        } else if (timeRemaining.startsWith("Finished")) {
             finished = true;
         } else {
-            String next = element.select("span.timeremaining").first().attr("unixtime");
+            verifyNotNull(nextTurnUnixTime, "Missing next turn time: %s", timeRemaining);
             nextTurnAt = Optional.of(ZonedDateTime.ofInstant(
-                    Instant.ofEpochSecond(Long.parseLong(next)),
+                    Instant.ofEpochSecond(Long.parseLong(nextTurnUnixTime)),
                     ZoneOffset.UTC));
         }
         return new AutoValue_GameTitleBar(name, date, phase, paused, finished, nextTurnAt);
@@ -1,6 +1,7 @@
 package com.robwettach.webdiplomacy.page;
 
 import static com.google.common.base.Verify.verify;
+import static com.google.common.base.Verify.verifyNotNull;
 import static java.lang.String.format;
 
 import com.google.auto.value.AutoValue;
@@ -8,8 +9,8 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 /**
  * Representation of a row in a {@link MembersTable}.
@@ -40,17 +41,45 @@ public abstract class MemberRow {
     public static MemberRow fromElement(Element element) {
         String countryName = element.select(".memberCountryName > span[class~=country\\d+]").first().text();
         Element statusImg = element.select("span[class*=\"StatusIcon\"] > img").first();
-        String status = statusImg != null ? statusImg.attr("alt") : NO_ORDERS;
-
         CountryUserLink user = CountryUserLink.fromElement(element.select(".memberName").first());
+        Element memberStatus = element.select(".memberStatus > em").first();
+        Element scUnits = element.select(".memberSCCount").first();
+        Element memberVotes = element.select(".memberVotes").first();
+        return create(
+                countryName,
+                statusImg != null ? statusImg.attr("alt") : null,
+                user,
+                memberStatus != null ? memberStatus.text() : null,
+                scUnits != null ? scUnits.text() : null,
+                memberVotes != null ? memberVotes.text() : null);
+    }
+
+    /**
+     * Create a {@link MemberRow} from the text already extracted from its HTML.
+     *
+     * @param countryName The text of the country name element
+     * @param statusIcon The {@code alt} text of the status icon, if present
+     * @param user The {@link CountryUserLink} for the row
+     * @param memberStatus The text of the {@code memberStatus} element (e.g. "Defeated"), if present
+     * @param scUnits The text of the {@code memberSCCount} element, if present
+     * @param memberVotes The text of the {@code memberVotes} element, if present
+     * @return A {@link MemberRow} instance
+     */
+    static MemberRow create(
+            String countryName,
+            @Nullable String statusIcon,
+            CountryUserLink user,
+            @Nullable String memberStatus,
+            @Nullable String scUnits,
+            @Nullable String memberVotes) {
+        String status = statusIcon != null ? statusIcon : NO_ORDERS;
         int supplyCenterCount = 0;
         int unitCount = 0;
 
-        Elements memberStatus = element.select(".memberStatus > em");
-        if (!memberStatus.isEmpty()) {
-            status = memberStatus.first().text();
+        if (memberStatus != null) {
+            status = memberStatus;
         } else {
-            String scUnits = element.select(".memberSCCount").first().text();
+            verifyNotNull(scUnits, "Missing supply centers and units for %s", countryName);
             Matcher scUnitMatcher = SUPPLY_CENTERS_UNITS_PATTERN.matcher(scUnits);
             verify(scUnitMatcher.find(), "Failed to parse supply centers and units: %s", scUnits);
             supplyCenterCount = Integer.parseInt(scUnitMatcher.group(SUPPLY_CENTERS_KEY));
@@ -58,9 +87,8 @@ public abstract class MemberRow {
         }
 
         ImmutableSet<String> votes = ImmutableSet.of();
-        Element memberVotes = element.select(".memberVotes").first();
         if (memberVotes != null) {
-            votes = ImmutableSet.copyOf(COMMA_SPLITTER.splitToList(memberVotes.text()));
+            votes = ImmutableSet.copyOf(COMMA_SPLITTER.splitToList(memberVotes));
         }
 
         return new AutoValue_MemberRow(countryName, status, user, supplyCenterCount, unitCount, votes);
@@ -12,6 +12,8 @@ import org.jsoup.select.Elements;
  */
 @AutoValue
 public abstract class MembersTable {
+    static final String SELECTOR = ".membersList.membersFullTable";
+
     public abstract ImmutableSet<MemberRow> getRows();
 
     /**
@@ -24,7 +26,7 @@ public abstract class MembersTable {
      * @return A {@link MembersTable} instance
      */
     public static MembersTable fromParent(Element parent) {
-        return fromElement(parent.select(".membersList.membersFullTable").first());
+        return fromElement(parent.select(SELECTOR).first());
     }
 
     /**
@@ -38,6 +40,10 @@ public abstract class MembersTable {
         ImmutableSet<MemberRow> rows = members.stream()
                 .map(MemberRow::fromElement)
                 .collect(toImmutableSet());
+        return create(rows);
+    }
+
+    static MembersTable create(ImmutableSet<MemberRow> rows) {
         return new AutoValue_MembersTable(rows);
     }
 }
@@ -0,0 +1,346 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toMap;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Fetches pages from <a href="https://webDiplomacy.net">webDiplomacy.net</a>.
+ *
+ * <p>Every {@link PageFetcher} shares a single {@link HttpClient}, so connections are kept alive and reused across
+ * pages, games and threads instead of being set up for every request.  Responses are requested with gzip/deflate
+ * compression and handed to {@link PageReader}s as a (decompressed) stream.
+ *
+ * <p>Every request, including form submissions, goes through a {@link RequestGovernor}, which is also shared unless
+ * given explicitly, so all of them together are held to its rate limit and cap on requests in flight.
+ *
+ * <p>Host names are resolved through {@link java.net.InetAddress InetAddress}, so successful lookups are cached for
+ * as long as the JVM-wide {@code networkaddress.cache.ttl} security property says: only 30 seconds by default, which
+ * is shorter than most poll intervals.  Applications that want longer should set it, in {@code java.security} or
+ * before their first lookup, as both poller entry points do.
+ */
+public class PageFetcher {
+    private static final Logger LOG = LogManager.getLogger(PageFetcher.class);
+    private static final String DEFAULT_BASE_URL = "http://webdiplomacy.net";
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final PageReader<Document> DOCUMENT_READER = Jsoup::parse;
+
+    private static final HttpClient CLIENT = createClient(HttpClient.Redirect.NORMAL);
+    private static final PageFetcher DEFAULT = new PageFetcher(DEFAULT_BASE_URL);
+
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final RequestGovernor governor;
+
+    /**
+     * Create a {@link PageFetcher} that loads pages relative to {@code baseUrl}.
+     *
+     * @param baseUrl The scheme, host and (optional) port to load pages from, e.g. {@code http://webdiplomacy.net}
+     */
+    public PageFetcher(String baseUrl) {
+        this(baseUrl, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Create a {@link PageFetcher} that loads pages relative to {@code baseUrl}.
+     *
+     * @param baseUrl The scheme, host and (optional) port to load pages from, e.g. {@code http://webdiplomacy.net}
+     * @param requestTimeout How long to wait for each response to start arriving
+     */
+    public PageFetcher(String baseUrl, Duration requestTimeout) {
+        this(baseUrl, requestTimeout, RequestGovernor.getDefault());
+    }
+
+    /**
+     * Create a {@link PageFetcher} that loads pages relative to {@code baseUrl}, governed by {@code governor}.
+     *
+     * @param baseUrl The scheme, host and (optional) port to load pages from, e.g. {@code http://webdiplomacy.net}
+     * @param requestTimeout How long to wait for each response to start arriving
+     * @param governor The {@link RequestGovernor} that every request must go through
+     */
+    public PageFetcher(String baseUrl, Duration requestTimeout, RequestGovernor governor) {
+        checkNotNull(baseUrl, "baseUrl must not be null");
+        checkNotNull(requestTimeout, "requestTimeout must not be null");
+        checkNotNull(governor, "governor must not be null");
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.governor = governor;
+    }
+
+    /**
+     * Get the shared {@link PageFetcher} for <a href="https://webDiplomacy.net">webDiplomacy.net</a>.
+     *
+     * @return The default {@link PageFetcher}
+     */
+    public static PageFetcher getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Load and parse a page.
+     *
+     * @param path The path (and query) of the page to load, e.g. {@code /board.php?gameID=1234}
+     * @param cookies The HTTP cookies to send with the request
+     * @return The parsed HTML {@link Document}
+     * @throws IOException if there is an error downloading the page
+     */
+    public Document get(String path, Map<String, String> cookies) throws IOException {
+        return get(path, cookies, DOCUMENT_READER);
+    }
+
+    /**
+     * Load a page, reading it straight from the response body with {@code reader}.
+     *
+     * @param path The path (and query) of the page to load, e.g. {@code /board.php?gameID=1234}
+     * @param cookies The HTTP cookies to send with the request
+     * @param reader The {@link PageReader} to read the response body with
+     * @param <T> The type of page read
+     * @return The page read by {@code reader}
+     * @throws IOException if there is an error downloading the page
+     */
+    public <T> T get(String path, Map<String, String> cookies, PageReader<T> reader) throws IOException {
+        String url = baseUrl + path;
+        LOG.debug("Loading page from {}", url);
+        governor.acquire();
+        try {
+            HttpResponse<InputStream> response = send(CLIENT, newRequest(url, cookies).GET().build());
+            return read(response, url, reader);
+        } finally {
+            governor.release();
+        }
+    }
+
+    /**
+     * Load and parse a page, unless it hasn't changed since {@code validators} were last updated.
+     *
+     * @param path The path (and query) of the page to load, e.g. {@code /board.php?gameID=1234}
+     * @param cookies The HTTP cookies to send with the request
+     * @param validators The validators last seen for this page
+     * @return An {@link Optional} containing the parsed HTML {@link Document} if the page has changed.
+     *         Else, {@link Optional#empty()}.
+     * @throws IOException if there is an error downloading the page
+     * @see #getIfModified(String, Map, PageValidators, PageReader)
+     */
+    public Optional<Document> getIfModified(String path, Map<String, String> cookies, PageValidators validators)
+            throws IOException {
+        return getIfModified(path, cookies, validators, DOCUMENT_READER);
+    }
+
+    /**
+     * Load a page with {@code reader}, unless it hasn't changed since {@code validators} were last updated.
+     *
+     * <p>Sends the stored validators as {@code If-None-Match} and {@code If-Modified-Since}.  On a
+     * {@code 304 Not Modified} response the (empty) body is never read.  On a full response, {@code validators} are
+     * updated from its {@code ETag} and {@code Last-Modified} headers.
+     *
+     * @param path The path (and query) of the page to load, e.g. {@code /board.php?gameID=1234}
+     * @param cookies The HTTP cookies to send with the request
+     * @param validators The validators last seen for this page
+     * @param reader The {@link PageReader} to read the response body with
+     * @param <T> The type of page read
+     * @return An {@link Optional} containing the page read by {@code reader} if the page has changed.
+     *         Else, {@link Optional#empty()}.
+     * @throws IOException if there is an error downloading the page
+     */
+    public <T> Optional<T> getIfModified(
+            String path,
+            Map<String, String> cookies,
+            PageValidators validators,
+            PageReader<T> reader) throws IOException {
+        String url = baseUrl + path;
+        LOG.debug("Loading page from {} if modified", url);
+        HttpRequest.Builder request = newRequest(url, cookies).GET();
+        validators.getEntityTag().ifPresent(etag -> request.header("If-None-Match", etag));
+        validators.getLastModified().ifPresent(lastModified -> request.header("If-Modified-Since", lastModified));
+
+        governor.acquire();
+        try {
+            HttpResponse<InputStream> response = send(CLIENT, request.build());
+            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LOG.debug("Page at {} not modified", url);
+                response.body().close();
+                return Optional.empty();
+            }
+            validators.update(
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+            return Optional.of(read(response, url, reader));
+        } finally {
+            governor.release();
+        }
+    }
+
+    /**
+     * Submit a form, as a browser would.
+     *
+     * @param path The path (and query) to submit the form to, e.g. {@code /index.php}
+     * @param form The form fields to submit
+     * @return The HTTP cookies set by the response
+     * @throws IOException if there is an error submitting the form
+     */
+    public Map<String, String> postForm(String path, Map<String, String> form) throws IOException {
+        String url = baseUrl + path;
+        LOG.debug("Submitting form to {}", url);
+        String body = form.entrySet()
+                .stream()
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8)
+                        + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(joining("&"));
+        HttpRequest request = newRequest(url, Map.of())
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .build();
+        HttpResponse<InputStream> response;
+        governor.acquire();
+        try {
+            response = send(FormClientHolder.CLIENT, request);
+            response.body().close();
+        } finally {
+            governor.release();
+        }
+        return response.headers()
+                .allValues("set-cookie")
+                .stream()
+                .map(HttpCookie::parse)
+                .flatMap(List::stream)
+                .collect(toMap(HttpCookie::getName, HttpCookie::getValue, (first, second) -> second));
+    }
+
+    private HttpRequest.Builder newRequest(String url, Map<String, String> cookies) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", ACCEPT_ENCODING);
+        if (!cookies.isEmpty()) {
+            request.header("Cookie", cookies.entrySet()
+                    .stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(joining("; ")));
+        }
+        return request;
+    }
+
+    private static HttpResponse<InputStream> send(HttpClient client, HttpRequest request) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        }
+        int status = response.statusCode();
+        if (status < 200 || status >= 400) {
+            response.body().close();
+            throw new HttpStatusException("HTTP error fetching URL", status, request.uri().toString());
+        }
+        return response;
+    }
+
+    private static <T> T read(HttpResponse<InputStream> response, String url, PageReader<T> reader)
+            throws IOException {
+        try (InputStream body = response.body()) {
+            // Some readers (e.g. Jsoup) close the stream they get, so shield the body that still needs draining
+            InputStream decoded = new FilterInputStream(decode(body, response.headers())) {
+                @Override
+                public void close() {
+                }
+            };
+            T page = reader.read(decoded, charset(response.headers()), url);
+            // Readers may stop early, so drain whatever's left to hand the connection back to the pool for reuse,
+            // which is much cheaper than closing it and setting up a new one for the next request
+            body.transferTo(OutputStream.nullOutputStream());
+            return page;
+        }
+    }
+
+    private static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body);
+            case "deflate":
+                return inflate(body);
+            default:
+                return body;
+        }
+    }
+
+    /**
+     * Inflate a {@code deflate}-encoded body, which servers send either zlib-wrapped (per the spec) or raw.
+     */
+    private static InputStream inflate(InputStream body) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(body);
+        buffered.mark(2);
+        int header = (buffered.read() << 8) | buffered.read();
+        buffered.reset();
+        // A zlib header declares the deflate method in its first byte, and is a multiple of 31 as a whole
+        boolean zlib = header >= 0 && (header & 0x0f00) == 0x0800 && header % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlib));
+    }
+
+    @Nullable
+    private static String charset(HttpHeaders headers) {
+        return headers.firstValue("Content-Type")
+                .flatMap(contentType -> {
+                    for (String parameter : contentType.split(";")) {
+                        String[] parts = parameter.trim().split("=", 2);
+                        if (parts.length == 2 && parts[0].trim().equalsIgnoreCase("charset")) {
+                            return Optional.of(parts[1].trim().replace("\"", ""));
+                        }
+                    }
+                    return Optional.empty();
+                })
+                .orElse(null);
+    }
+
+    private static HttpClient createClient(HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                // Plain-HTTP HTTP/2 upgrades just cost a round trip, and webDiplomacy doesn't support them anyway
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(redirect)
+                .build();
+    }
+
+    /**
+     * Holds the client for form submissions, which is only created if a form is ever submitted.
+     *
+     * <p>Form submissions (i.e. logging in) need the cookies set by the response itself, rather than by wherever it
+     * redirects to, so they can't share the redirect-following client.
+     */
+    private static class FormClientHolder {
+        private static final HttpClient CLIENT = createClient(HttpClient.Redirect.NEVER);
+    }
+}
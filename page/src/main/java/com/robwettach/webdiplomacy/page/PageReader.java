@@ -0,0 +1,26 @@
+package com.robwettach.webdiplomacy.page;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads a page straight from the body of an HTTP response.
+ *
+ * @param <T> The type of page read
+ */
+@FunctionalInterface
+public interface PageReader<T> {
+    /**
+     * Read a page from {@code body}.
+     *
+     * <p>The reader need not consume all of {@code body}; the caller closes it afterwards.
+     *
+     * @param body The (decompressed) response body
+     * @param charsetName The charset named by the response's {@code Content-Type}, or {@code null} if it names none
+     * @param url The URL the page was loaded from
+     * @return The page read from {@code body}
+     * @throws IOException if there is an error reading {@code body}
+     */
+    T read(InputStream body, @Nullable String charsetName, String url) throws IOException;
+}
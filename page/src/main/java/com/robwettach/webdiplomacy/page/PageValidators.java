@@ -0,0 +1,61 @@
+package com.robwettach.webdiplomacy.page;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * The HTTP cache validators ({@code ETag} and {@code Last-Modified}) last seen for a single page.
+ *
+ * <p>Sent back as {@code If-None-Match} and {@code If-Modified-Since} so that
+ * <a href="https://webDiplomacy.net">webDiplomacy.net</a> can answer {@code 304 Not Modified} when the page hasn't
+ * changed.  Keep one instance per page (e.g. per game) and reuse it across polls.
+ *
+ * <p>Also holds a fingerprint of the parts of the page that were last read, for pages that come back in full even
+ * though nothing that matters has changed.
+ */
+public class PageValidators {
+    private volatile String entityTag;
+    private volatile String lastModified;
+    private volatile Long fingerprint;
+
+    public Optional<String> getEntityTag() {
+        return Optional.ofNullable(entityTag);
+    }
+
+    public Optional<String> getLastModified() {
+        return Optional.ofNullable(lastModified);
+    }
+
+    public OptionalLong getFingerprint() {
+        Long value = fingerprint;
+        return value != null ? OptionalLong.of(value) : OptionalLong.empty();
+    }
+
+    /**
+     * Remember the validators returned with the latest full response for the page.
+     *
+     * @param entityTag The value of the {@code ETag} header, or {@code null} if absent
+     * @param lastModified The value of the {@code Last-Modified} header, or {@code null} if absent
+     */
+    public void update(String entityTag, String lastModified) {
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Remember the fingerprint of the page that was last read.
+     *
+     * @param fingerprint The fingerprint of the parts of the page that were read
+     */
+    public void updateFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Forget any stored validators and fingerprint, so the next request for the page is unconditional and read in full.
+     */
+    public void clear() {
+        update(null, null);
+        fingerprint = null;
+    }
+}
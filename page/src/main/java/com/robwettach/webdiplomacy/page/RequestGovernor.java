@@ -0,0 +1,164 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounds how hard we hit <a href="https://webDiplomacy.net">webDiplomacy.net</a>, however many games and accounts
+ * are being polled.
+ *
+ * <p>Every request must {@link #acquire()} a permit first, and {@link #release()} it once its response has been read.
+ * Requests are held back by a token bucket, which allows short bursts but otherwise spaces them out to a steady rate,
+ * and by a cap on how many may be in flight at once.  Requests queue up (fairly) until both allow them through, and
+ * how long they queued is recorded in the {@link Stats}.
+ */
+public class RequestGovernor {
+    private static final Logger LOG = LogManager.getLogger(RequestGovernor.class);
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 5;
+    private static final int DEFAULT_BURST = 10;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    private static final long SLOW_QUEUE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final RequestGovernor DEFAULT = new RequestGovernor(
+            DEFAULT_REQUESTS_PER_SECOND,
+            DEFAULT_BURST,
+            DEFAULT_MAX_IN_FLIGHT);
+
+    private final long nanosPerRequest;
+    private final long burstToleranceNanos;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    // The time at which the next request would be sent if requests were spaced out perfectly
+    private long theoreticalArrivalNanos = System.nanoTime();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Create a {@link RequestGovernor}.
+     *
+     * @param requestsPerSecond The steady rate at which requests may be sent
+     * @param burst The number of requests that may be sent back-to-back after a quiet spell
+     * @param maxInFlight The maximum number of requests that may be in flight at once
+     */
+    public RequestGovernor(double requestsPerSecond, int burst, int maxInFlight) {
+        checkArgument(requestsPerSecond > 0, "requestsPerSecond must be positive");
+        checkArgument(burst > 0, "burst must be positive");
+        checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.nanosPerRequest = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstToleranceNanos = (burst - 1) * nanosPerRequest;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight, true);
+    }
+
+    /**
+     * Get the shared {@link RequestGovernor} for <a href="https://webDiplomacy.net">webDiplomacy.net</a>.
+     *
+     * @return The default {@link RequestGovernor}
+     */
+    public static RequestGovernor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Wait until a request may be sent.
+     *
+     * <p>Must be followed by a call to {@link #release()} once the response has been read (or the request failed).
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        long start = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            // Wait for a slot before taking a token, so that tokens aren't used up by requests that can't be sent
+            inFlight.acquire();
+            try {
+                long delay = reserve(System.nanoTime());
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                inFlight.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        } finally {
+            queued.decrementAndGet();
+        }
+
+        long waitNanos = System.nanoTime() - start;
+        requests.increment();
+        totalQueueWaitNanos.add(waitNanos);
+        maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        if (waitNanos >= SLOW_QUEUE_WAIT_NANOS) {
+            LOG.info("Request queued for {} ms, {} still queued", TimeUnit.NANOSECONDS.toMillis(waitNanos), queued);
+        }
+    }
+
+    /**
+     * Mark a request {@link #acquire() acquired} earlier as finished, letting the next queued request through.
+     */
+    public void release() {
+        inFlight.release();
+    }
+
+    /**
+     * Get the queueing statistics of every request sent so far.
+     *
+     * @return The current {@link Stats}
+     */
+    public Stats getStats() {
+        return new AutoValue_RequestGovernor_Stats(
+                requests.sum(),
+                Duration.ofNanos(totalQueueWaitNanos.sum()),
+                Duration.ofNanos(maxQueueWaitNanos.get()),
+                queued.get(),
+                maxInFlight - inFlight.availablePermits());
+    }
+
+    /**
+     * Take a token from the bucket, returning how long to wait before it may be used.
+     */
+    private synchronized long reserve(long now) {
+        long arrival = Math.max(theoreticalArrivalNanos, now);
+        theoreticalArrivalNanos = arrival + nanosPerRequest;
+        // Requests may run ahead of the steady rate by up to a burst's worth before they have to wait
+        return Math.max(0, arrival - burstToleranceNanos - now);
+    }
+
+    /**
+     * Queueing statistics of the requests sent through a {@link RequestGovernor}.
+     */
+    @AutoValue
+    public abstract static class Stats {
+        public abstract long getRequests();
+        public abstract Duration getTotalQueueWait();
+        public abstract Duration getMaxQueueWait();
+        public abstract int getQueued();
+        public abstract int getInFlight();
+
+        /**
+         * Get the average time each request spent queued before it was sent.
+         *
+         * @return The average queue wait, or {@link Duration#ZERO} if no requests have been sent
+         */
+        public Duration getAverageQueueWait() {
+            return getRequests() == 0 ? Duration.ZERO : getTotalQueueWait().dividedBy(getRequests());
+        }
+    }
+}
@@ -28,7 +28,17 @@ public abstract class UserProfileLink {
      * @return A {@link UserProfileLink} instance
      */
     public static UserProfileLink fromElement(Element element) {
-        String profileLink = element.attr("href"); //./profile.php?userID=1234
+        return fromHref(element.attr("href"));
+    }
+
+    /**
+     * Extract an {@link UserProfileLink} from the {@code href} of a profile link.
+     *
+     * @param profileLink The {@code href} of the profile link
+     * @return A {@link UserProfileLink} instance
+     */
+    static UserProfileLink fromHref(String profileLink) {
+        //./profile.php?userID=1234
         Matcher profileMatcher = PROFILE_USER_ID_PATTERN.matcher(profileLink);
         verify(profileMatcher.find(), "Failed to parse profile link: %s", profileLink);
         int userId = Integer.parseInt(profileMatcher.group(USER_ID_KEY));
@@ -0,0 +1,108 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class GameBoardPageTest {
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "pages/board-pre-game.html",
+            "pages/board-diplomacy.html",
+            "pages/board-paused.html",
+            "pages/board-finished.html",
+            "pages/board-defeated.html",
+            "pages/board-voting.html"})
+    void shouldExtractSamePageAsJsoup(String fixture) throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource(fixture));
+        GameBoardPage expected = GameBoardPage.fromDocument(Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", ""));
+        GameBoardPage actual = GameBoardPage.fromStream(new ByteArrayInputStream(page), UTF_8);
+        assertThat("Streaming extraction differs from Jsoup", actual, is(equalTo(expected)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"pages/board-diplomacy.html", "pages/board-paused.html"})
+    void shouldExtractSamePageFromTrickledBytes(String fixture) throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource(fixture));
+        GameBoardPage expected = GameBoardPage.fromStream(new ByteArrayInputStream(page), UTF_8);
+        GameBoardPage actual = GameBoardPage.fromStream(new TrickleInputStream(page), UTF_8);
+        assertThat("Extraction depends on how the body is chunked", actual, is(equalTo(expected)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"pages/board-pre-game.html", "pages/board-diplomacy.html"})
+    void shouldStopReadingAfterMembersTable(String fixture) throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource(fixture));
+        // Trickle the page in, so reading only goes a few bytes past wherever extraction stops
+        CountingInputStream body = new CountingInputStream(new TrickleInputStream(page));
+        GameBoardPage.fromStream(body, UTF_8);
+        assertThat("Read too much of the page", body.getCount(), is(lessThan((long) page.length)));
+    }
+
+    @Test
+    void shouldSkipUnchangedBoard() throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource("pages/board-diplomacy.html"));
+        PageValidators validators = new PageValidators();
+        GameBoardPage.fromStreamIfChanged(new ByteArrayInputStream(page), UTF_8, validators);
+
+        Optional<GameBoardPage> unchanged = GameBoardPage.fromStreamIfChanged(
+                new ByteArrayInputStream(page), UTF_8, validators);
+        assertThat("Unexpected page", unchanged, is(emptyOptional()));
+    }
+
+    @Test
+    void shouldIgnoreCountdownWhenSkippingUnchangedBoard() throws IOException {
+        String page = Resources.toString(Resources.getResource("pages/board-diplomacy.html"), UTF_8);
+        PageValidators validators = new PageValidators();
+        GameBoardPage.fromStreamIfChanged(new ByteArrayInputStream(page.getBytes(UTF_8)), UTF_8, validators);
+
+        String later = page.replace(
+                "unixtimefrom=\"1599996400\">1 hours, 0 minutes",
+                "unixtimefrom=\"1599996460\">59 minutes");
+        Optional<GameBoardPage> unchanged = GameBoardPage.fromStreamIfChanged(
+                new ByteArrayInputStream(later.getBytes(UTF_8)), UTF_8, validators);
+        assertThat("Unexpected page", unchanged, is(emptyOptional()));
+    }
+
+    @Test
+    void shouldExtractChangedBoard() throws IOException {
+        String page = Resources.toString(Resources.getResource("pages/board-diplomacy.html"), UTF_8);
+        PageValidators validators = new PageValidators();
+        GameBoardPage.fromStreamIfChanged(new ByteArrayInputStream(page.getBytes(UTF_8)), UTF_8, validators);
+
+        byte[] changed = page.replace("alt=\"Not received\"", "alt=\"Ready\"").getBytes(UTF_8);
+        GameBoardPage expected = GameBoardPage.fromStream(new ByteArrayInputStream(changed), UTF_8);
+        Optional<GameBoardPage> actual = GameBoardPage.fromStreamIfChanged(
+                new ByteArrayInputStream(changed), UTF_8, validators);
+        assertThat("Unexpected page", actual, is(optionalWithValue(equalTo(expected))));
+    }
+
+    /**
+     * Returns at most a few bytes per read, so tokens straddle every possible buffer boundary.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        TrickleInputStream(byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
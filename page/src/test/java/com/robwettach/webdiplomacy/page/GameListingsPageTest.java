@@ -0,0 +1,66 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class GameListingsPageTest {
+    private static GameListingsPage listings;
+
+    @BeforeAll
+    static void loadListings() throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource("pages/gamelistings-my-games.html"));
+        listings = GameListingsPage.fromDocument(Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", ""));
+    }
+
+    @Test
+    void shouldFindEveryGamePanel() {
+        assertThat("Unexpected game IDs", listings.getGamePanels().keySet(), contains(1234, 2345, 3456));
+    }
+
+    @Test
+    void shouldFindManyGamePanels() throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource("pages/gamelistings-many-games.html"));
+        GameListingsPage many = GameListingsPage.fromDocument(Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", ""));
+        assertThat("Unexpected game panels", many.getGamePanels().values(), hasSize(30));
+    }
+
+    @Test
+    void shouldExtractSameGameAsBoard() throws IOException {
+        byte[] page = Resources.toByteArray(Resources.getResource("pages/board-diplomacy.html"));
+        GameBoardPage board = GameBoardPage.fromStream(new ByteArrayInputStream(page), UTF_8);
+        GamePanel panel = listings.getGamePanels().get(1234);
+        assertThat("Unexpected title bar", panel.getTitleBar(), is(equalTo(board.getTitleBar())));
+        assertThat("Unexpected members table", panel.getMembersTable(), is(equalTo(board.getMembersTable())));
+    }
+
+    @Test
+    void shouldNotHaveMembersTableBeforeGameStarts() {
+        GamePanel panel = listings.getGamePanels().get(2345);
+        assertThat("Unexpected members table", panel.getMembersTable(), is(emptyOptional()));
+    }
+
+    @Test
+    void shouldTolerateMissingMembersTable() {
+        GamePanel panel = listings.getGamePanels().get(3456);
+        assertThat("Unexpected phase", panel.getTitleBar().getPhase(), is("Retreats"));
+        assertThat("Unexpected members table", panel.getMembersTable(), is(emptyOptional()));
+        ZonedDateTime nextTurn = ZonedDateTime.ofInstant(Instant.ofEpochSecond(1600003600), ZoneOffset.UTC);
+        assertThat("Unexpected next turn", panel.getTitleBar().getNextTurnAt(), optionalWithValue(equalTo(nextTurn)));
+    }
+}
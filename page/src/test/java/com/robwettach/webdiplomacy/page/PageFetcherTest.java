@@ -0,0 +1,200 @@
+package com.robwettach.webdiplomacy.page;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PageFetcherTest {
+    private static final int GAME_ID = 1234;
+    private static final String BOARD_PATH = "/board.php?gameID=" + GAME_ID;
+    private static final String LAST_MODIFIED = "Sun, 13 Sep 2020 11:26:40 GMT";
+
+    private final List<String> requestedEntityTags = new CopyOnWriteArrayList<>();
+    private final List<InetSocketAddress> clientAddresses = new CopyOnWriteArrayList<>();
+    private volatile String entityTag = "\"v1\"";
+    private volatile int errorStatus = 0;
+    private volatile String contentEncoding = null;
+    private HttpServer server;
+    private PageFetcher fetcher;
+    private byte[] board;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        board = Resources.toByteArray(Resources.getResource("pages/board-diplomacy.html"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/board.php", this::serveBoard);
+        server.createContext("/index.php", this::serveLogin);
+        server.start();
+        fetcher = new PageFetcher("http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldLoadPageWithoutValidators() throws IOException {
+        PageValidators validators = new PageValidators();
+        Optional<Document> document = fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+
+        assertThat("Expected a document", document.isPresent(), is(true));
+        assertThat("Unexpected request validator", requestedEntityTags.get(0), is(nullValue()));
+        assertThat("Unexpected ETag", validators.getEntityTag(), is(optionalWithValue(equalTo(entityTag))));
+        assertThat("Unexpected Last-Modified", validators.getLastModified(),
+                is(optionalWithValue(equalTo(LAST_MODIFIED))));
+    }
+
+    @Test
+    void shouldSkipUnmodifiedPage() throws IOException {
+        PageValidators validators = new PageValidators();
+        fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+        Optional<Document> document = fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+
+        assertThat("Expected no document for unmodified page", document, is(emptyOptional()));
+        assertThat("Unexpected request count", requestedEntityTags, hasSize(2));
+        assertThat("Unexpected request validator", requestedEntityTags.get(1), is("\"v1\""));
+    }
+
+    @Test
+    void shouldReloadModifiedPage() throws IOException {
+        PageValidators validators = new PageValidators();
+        fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+        entityTag = "\"v2\"";
+        Optional<Document> document = fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+
+        assertThat("Expected a document for modified page", document.isPresent(), is(true));
+        assertThat("Unexpected ETag", validators.getEntityTag(), is(optionalWithValue(equalTo("\"v2\""))));
+    }
+
+    @Test
+    void shouldRequestUnconditionallyAfterClear() throws IOException {
+        PageValidators validators = new PageValidators();
+        fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+        validators.clear();
+        Optional<Document> document = fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), validators);
+
+        assertThat("Expected a document after clearing validators", document.isPresent(), is(true));
+        assertThat("Unexpected request validator", requestedEntityTags.get(1), is(nullValue()));
+    }
+
+    @Test
+    void shouldThrowOnServerError() {
+        errorStatus = HttpURLConnection.HTTP_INTERNAL_ERROR;
+        HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> fetcher.getIfModified(BOARD_PATH, Collections.emptyMap(), new PageValidators()));
+        assertThat("Unexpected status", e.getStatusCode(), is(HttpURLConnection.HTTP_INTERNAL_ERROR));
+    }
+
+    @Test
+    void shouldLoadGameBoardIfModified() throws IOException {
+        PageValidators validators = new PageValidators();
+        Optional<GameBoardPage> first = GameBoardPage.loadGameIfModified(fetcher, GAME_ID, validators);
+        assertThat("Expected a game board", first.isPresent(), is(true));
+        assertThat("Unexpected game name", first.get().getTitleBar().getName(), is("Test Game & Friends"));
+        assertThat("Unexpected row count", first.get().getMembersTable().get().getRows(), hasSize(7));
+
+        Optional<GameBoardPage> second = GameBoardPage.loadGameIfModified(fetcher, GAME_ID, validators);
+        assertThat("Expected no game board for unmodified page", second, is(emptyOptional()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "deflate"})
+    void shouldDecodeCompressedPage(String encoding) throws IOException {
+        contentEncoding = encoding;
+        Optional<GameBoardPage> page = GameBoardPage.loadGameIfModified(fetcher, GAME_ID, new PageValidators());
+        assertThat("Unexpected game name", page.get().getTitleBar().getName(), is("Test Game & Friends"));
+        assertThat("Unexpected row count", page.get().getMembersTable().get().getRows(), hasSize(7));
+    }
+
+    @Test
+    void shouldReuseConnections() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            GameBoardPage.loadGameIfModified(fetcher, GAME_ID, new PageValidators());
+        }
+        assertThat("Expected every request on the same connection", ImmutableSet.copyOf(clientAddresses), hasSize(1));
+    }
+
+    @Test
+    void shouldReturnCookiesFromForm() throws IOException {
+        Map<String, String> cookies = fetcher.postForm("/index.php", ImmutableMap.of("loginuser", "a b&c"));
+        assertThat("Unexpected cookies", cookies, is(ImmutableMap.of("session", "a+b%26c")));
+    }
+
+    private void serveBoard(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requestedEntityTags.add(ifNoneMatch);
+        clientAddresses.add(exchange.getRemoteAddress());
+        if (errorStatus != 0) {
+            exchange.sendResponseHeaders(errorStatus, -1);
+        } else if (entityTag.equals(ifNoneMatch)) {
+            exchange.getResponseHeaders().add("ETag", entityTag);
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=" + UTF_8.name());
+            exchange.getResponseHeaders().add("ETag", entityTag);
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            byte[] body = board;
+            if (contentEncoding != null) {
+                exchange.getResponseHeaders().add("Content-Encoding", contentEncoding);
+                body = compress(board);
+            }
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private void serveLogin(HttpExchange exchange) throws IOException {
+        // Echo the form body back as a cookie, then redirect like a real login does
+        String form = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+        exchange.getResponseHeaders().add("Set-Cookie", "session=" + form.substring(form.indexOf('=') + 1));
+        exchange.getResponseHeaders().add("Location", "/board.php?gameID=" + GAME_ID);
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_MOVED_TEMP, -1);
+        exchange.close();
+    }
+
+    private byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = "gzip".equals(contentEncoding)
+                ? new GZIPOutputStream(compressed)
+                : new DeflaterOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+package com.robwettach.webdiplomacy.page;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RequestGovernorTest {
+    @Test
+    void shouldSendBurstWithoutQueueing() throws InterruptedIOException {
+        RequestGovernor governor = new RequestGovernor(1, 3, 3);
+        for (int i = 0; i < 3; i++) {
+            governor.acquire();
+            governor.release();
+        }
+
+        RequestGovernor.Stats stats = governor.getStats();
+        assertThat("Unexpected requests", stats.getRequests(), is(3L));
+        assertThat("Unexpected queue wait", stats.getMaxQueueWait(), is(lessThan(Duration.ofMillis(500))));
+    }
+
+    @Test
+    void shouldSpaceOutRequestsBeyondBurst() throws InterruptedIOException {
+        RequestGovernor governor = new RequestGovernor(20, 1, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            governor.acquire();
+            governor.release();
+        }
+
+        // The first request goes straight through, and each of the other four waits 50ms
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertThat("Requests weren't rate limited", elapsed, is(greaterThanOrEqualTo(Duration.ofMillis(190))));
+        assertThat("Unexpected queue wait", governor.getStats().getTotalQueueWait(),
+                is(greaterThanOrEqualTo(Duration.ofMillis(190))));
+    }
+
+    @Test
+    void shouldCapRequestsInFlight() throws Exception {
+        RequestGovernor governor = new RequestGovernor(1000, 10, 1);
+        governor.acquire();
+
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try {
+                governor.acquire();
+                sent.countDown();
+                governor.release();
+            } catch (InterruptedIOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        second.start();
+
+        assertThat("Request sent while another was in flight", sent.await(200, TimeUnit.MILLISECONDS), is(false));
+        assertThat("Unexpected queued requests", governor.getStats().getQueued(), is(1));
+        assertThat("Unexpected requests in flight", governor.getStats().getInFlight(), is(1));
+
+        governor.release();
+        assertThat("Queued request never sent", sent.await(5, TimeUnit.SECONDS), is(true));
+        second.join();
+        assertThat("Unexpected requests", governor.getStats().getRequests(), is(2L));
+    }
+}
@@ -1,27 +1,113 @@
 package com.robwettach.webdiplomacy.poller.lambda;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Streams;
 import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.poller.lib.DeltaCursor;
 import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 
 /**
  * {@link HistoryStore} that manages history in a DynamoDB table.
+ *
+ * <p>Every so often a record holds the full {@link com.robwettach.webdiplomacy.model.GameState GameState}, and the
+ * rest hold only what changed since the previous record (see {@link DeltaCursor}).  Adding the first snapshot to a game
+ * reads back to its most recent full record, and that position is kept so that the snapshots added after it can be
+ * written as deltas without reading it again.  This assumes it is the only writer for each game.
+ *
+ * <p>Each game also has a "latest" item, sorted after all of its records, holding the full state of its latest
+ * snapshot, so that reading the latest snapshot is a single strongly-consistent {@code GetItem}.  It is only replaced
+ * by a conditional put on the time of the snapshot it holds, so writers racing each other never roll it back.
+ *
+ * <p>Records are written in the background, so that a poller can get on with sending notifications.  Records added
+ * while a batch is being written are gathered into the next {@code BatchWriteItem} call, of up to 25 records, and
+ * items DynamoDB leaves unprocessed are retried with exponential backoff.  Each game's latest item is then updated
+ * once per batch, to its newest snapshot in it.  {@link #getLatestSnapshotForGame(int)} returns the latest snapshot
+ * added even if it hasn't been written yet, and every other operation first waits for the snapshots added before it to
+ * be written.  {@link #flush()} waits too, and throws if any write failed, so it must be called before a Lambda
+ * invocation returns.
+ *
+ * <p>Range and point-in-time queries are pushed down to DynamoDB as conditions on the sort key, reading back only as
+ * far as the full record they need to start from.  Sort keys are ISO-8601 strings, which only sort in time order
+ * between times with the same UTC offset, so the bounds are widened by the largest possible offset and the records
+ * read are then filtered exactly by time.
  */
 public class DynamoHistoryStore implements HistoryStore {
-    private static final Function<GameHistoryRecord, Snapshot> RECORD_TO_SNAPSHOT =
-            r -> Snapshot.create(r.getTime(), r.getState());
+    private static final Logger LOG = LogManager.getLogger(DynamoHistoryStore.class);
+    // The furthest any time zone is from UTC
+    private static final Duration MAX_OFFSET = Duration.ofSeconds(ZoneOffset.MAX.getTotalSeconds());
+    // The sort key of each game's latest item, which sorts after every real snapshot
+    @VisibleForTesting
+    static final ZonedDateTime LATEST_TIME = ZonedDateTime.of(9999, 12, 31, 23, 59, 59, 999_999_999, ZoneOffset.UTC);
+    private static final String LATEST_EPOCH_NANOS = "latestEpochNanos";
+    private static final String NOT_AFTER = ":notAfter";
+    // The most items DynamoDB accepts in one BatchWriteItem call
+    private static final int MAX_BATCH_SIZE = 25;
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+    private static final Duration BASE_RETRY_DELAY = Duration.ofMillis(50);
 
+    private final DynamoDbEnhancedClient dynamo;
     private final DynamoDbTable<GameHistoryRecord> recordsTable;
+    private final int keyframeInterval;
+    private final Map<Integer, DeltaCursor> cursors = new ConcurrentHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dynamo-history-writer");
+        // Don't keep the process alive just for this; flush() before exiting instead
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The latest snapshot of each game that hasn't been written yet
+    private final Map<Integer, Snapshot> unwritten = new ConcurrentHashMap<>();
+    // Guarded by this
+    private final List<PendingRecord> pending = new ArrayList<>();
+    private boolean writing;
+    @Nullable
+    private RuntimeException writeFailure;
 
     public DynamoHistoryStore(String tableName) {
         this(tableName, DynamoDbEnhancedClient.create());
@@ -29,40 +115,473 @@ public class DynamoHistoryStore implements HistoryStore {
 
     @VisibleForTesting
     DynamoHistoryStore(String tableName, DynamoDbEnhancedClient dynamo) {
-        this(dynamo.table(tableName, TableSchema.fromBean(GameHistoryRecord.class)));
+        this(dynamo, dynamo.table(tableName, TableSchema.fromBean(GameHistoryRecord.class)));
     }
 
     @VisibleForTesting
-    DynamoHistoryStore(DynamoDbTable<GameHistoryRecord> recordsTable) {
+    DynamoHistoryStore(DynamoDbEnhancedClient dynamo, DynamoDbTable<GameHistoryRecord> recordsTable) {
+        this(dynamo, recordsTable, DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    @VisibleForTesting
+    DynamoHistoryStore(
+            DynamoDbEnhancedClient dynamo,
+            DynamoDbTable<GameHistoryRecord> recordsTable,
+            int keyframeInterval) {
+        checkArgument(keyframeInterval > 0, "keyframeInterval must be positive");
+        this.dynamo = dynamo;
         this.recordsTable = recordsTable;
+        this.keyframeInterval = keyframeInterval;
     }
 
     @Override
     public List<Snapshot> getSnapshotsForGame(int gameId) {
-        PageIterable<GameHistoryRecord> records = recordsTable.query(qb ->
-                qb.queryConditional(QueryConditional.keyEqualTo(kb -> kb.partitionValue(gameId))));
-        return records.items()
-                .stream()
-                .map(RECORD_TO_SNAPSHOT)
-                .collect(toList());
+        awaitWritten();
+        PageIterable<GameHistoryRecord> records = recordsTable.query(qb -> qb.queryConditional(allRecords(gameId)));
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (GameHistoryRecord record : records.items()) {
+            snapshots.add(read(cursor, record));
+        }
+        return snapshots;
     }
 
+    @Override
+    public Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        checkArgument(!to.isBefore(from), "to must not be before from");
+        awaitWritten();
+        Key lower = sortKey(gameId, from.minus(MAX_OFFSET));
+        Key upper = sortKey(gameId, to.plus(MAX_OFFSET));
+        PeekingIterator<GameHistoryRecord> records = Iterators.peekingIterator(recordsTable.query(qb ->
+                qb.queryConditional(QueryConditional.sortBetween(lower, upper))).items().iterator());
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        if (records.hasNext() && records.peek().getState() == null) {
+            // Starts part-way between keyframes, so catch up from the one before
+            readSinceKeyframe(QueryConditional.sortLessThan(lower), Instant.MAX)
+                    .forEach(r -> cursor.advance(toNode(r)));
+        }
+        Instant fromInstant = from.toInstant();
+        Instant toInstant = to.toInstant();
+        return Streams.stream(new AbstractIterator<Snapshot>() {
+            @Override
+            protected Snapshot computeNext() {
+                while (records.hasNext()) {
+                    GameHistoryRecord record = records.next();
+                    Instant time = record.getTime().toInstant();
+                    if (time.isAfter(toInstant)) {
+                        break;
+                    }
+                    if (!time.isBefore(fromInstant)) {
+                        return read(cursor, record);
+                    }
+                    cursor.advance(toNode(record));
+                }
+                return endOfData();
+            }
+        });
+    }
+
+    @Override
+    public Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        awaitWritten();
+        List<GameHistoryRecord> records = readSinceKeyframe(
+                QueryConditional.sortLessThanOrEqualTo(sortKey(gameId, time.plus(MAX_OFFSET))),
+                time.toInstant());
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        Snapshot snapshot = null;
+        for (GameHistoryRecord record : records) {
+            snapshot = read(cursor, record);
+        }
+        return Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the game's latest item, falling back to reading back from its last record for games added before
+     * latest items were, and then adding one.
+     */
     @Override
     public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
-        PageIterable<GameHistoryRecord> latest = recordsTable.query(qb ->
-                qb.queryConditional(QueryConditional.keyEqualTo(kb -> kb.partitionValue(gameId)))
-                        .scanIndexForward(false)
-                        .limit(1));
-        return latest.items().stream().map(RECORD_TO_SNAPSHOT).findFirst();
+        // Only removed once written, so if it's not here the table has it
+        Snapshot unwrittenLatest = unwritten.get(gameId);
+        if (unwrittenLatest != null) {
+            return Optional.of(unwrittenLatest);
+        }
+        GameHistoryRecord item = recordsTable.getItem(r -> r.key(sortKey(gameId, LATEST_TIME)).consistentRead(true));
+        if (item != null) {
+            return Optional.of(Snapshot.create(item.getLatestTime(), item.getState()));
+        }
+
+        List<GameHistoryRecord> records = readSinceKeyframe(allRecords(gameId), Instant.MAX);
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        Snapshot latest = null;
+        for (GameHistoryRecord record : records) {
+            latest = read(cursor, record);
+        }
+        if (latest != null) {
+            putLatest(gameId, latest, latest.getTime().toInstant());
+            cursors.putIfAbsent(gameId, cursor);
+        }
+        return Optional.ofNullable(latest);
     }
 
     @Override
     public void addSnapshot(int gameId, Snapshot snapshot) {
+        DeltaCursor cursor = cursors.computeIfAbsent(gameId, (x) -> {
+            DeltaCursor loaded = new DeltaCursor(keyframeInterval);
+            readSinceKeyframe(allRecords(gameId), Instant.MAX)
+                    .forEach(r -> loaded.advance(toNode(r)));
+            return loaded;
+        });
+        synchronized (cursor) {
+            ObjectNode next = cursor.nextRecord(snapshot);
+            GameHistoryRecord record = toRecord(gameId, snapshot, next);
+            cursor.advance(next);
+            unwritten.put(gameId, snapshot);
+            synchronized (this) {
+                pending.add(new PendingRecord(gameId, snapshot, record));
+                if (!writing) {
+                    writing = true;
+                    writer.execute(this::writePending);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for every {@link Snapshot} added so far to be written.
+     *
+     * @throws IllegalStateException if any of them failed to be written since the last flush
+     */
+    @Override
+    public void flush() {
+        awaitWritten();
+        RuntimeException failure;
+        synchronized (this) {
+            failure = writeFailure;
+            writeFailure = null;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Failed to write snapshots", failure);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Scans the whole table, so is only meant for occasional maintenance.
+     */
+    @Override
+    public Set<Integer> getGameIds() {
+        awaitWritten();
+        return recordsTable.scan().items().stream()
+                .map(GameHistoryRecord::getGameId)
+                .collect(toImmutableSet());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes the replacements, then deletes the records they don't replace.  The first record after {@code until}
+     * is rewritten as a full record if it isn't one, so that the records after it no longer depend on those replaced.
+     * Not atomic: a concurrent read may see some of the records replaced before others.
+     */
+    @Override
+    public void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        checkArgument(
+                snapshots.stream().noneMatch(s -> s.getTime().isAfter(until)),
+                "snapshots must not be after until");
+        awaitWritten();
+        Instant untilInstant = until.toInstant();
+        List<GameHistoryRecord> replaced = new ArrayList<>();
+        Snapshot next = null;
+        DeltaCursor reader = new DeltaCursor(keyframeInterval);
+        boolean anyAfter = false;
+        for (GameHistoryRecord record : recordsTable.query(qb -> qb.queryConditional(allRecords(gameId))).items()) {
+            if (record.getTime().toInstant().isAfter(untilInstant)) {
+                anyAfter = true;
+                if (record.getState() == null) {
+                    next = read(reader, record);
+                }
+                break;
+            }
+            reader.advance(toNode(record));
+            replaced.add(record);
+        }
+
+        DeltaCursor writer = new DeltaCursor(keyframeInterval);
+        Set<Instant> kept = new HashSet<>();
+        for (Snapshot snapshot : snapshots) {
+            ObjectNode record = writer.nextRecord(snapshot);
+            recordsTable.putItem(toRecord(gameId, snapshot, record));
+            writer.advance(record);
+            kept.add(snapshot.getTime().toInstant());
+        }
+        if (next != null) {
+            writer.reset();
+            recordsTable.putItem(toRecord(gameId, next, writer.nextRecord(next)));
+        }
+        for (GameHistoryRecord record : replaced) {
+            if (!kept.contains(record.getTime().toInstant())) {
+                recordsTable.deleteItem(record);
+            }
+        }
+        if (!anyAfter) {
+            // The latest snapshot was one of those replaced
+            if (snapshots.isEmpty()) {
+                deleteLatest(gameId, untilInstant);
+            } else {
+                putLatest(gameId, snapshots.get(snapshots.size() - 1), untilInstant);
+            }
+        }
+        // Reload from the new records on the next snapshot added
+        cursors.remove(gameId);
+    }
+
+    @Override
+    public void deleteGame(int gameId) {
+        awaitWritten();
+        unwritten.remove(gameId);
+        recordsTable.query(qb -> qb.queryConditional(QueryConditional.keyEqualTo(kb -> kb.partitionValue(gameId))))
+                .items()
+                .forEach(recordsTable::deleteItem);
+        cursors.remove(gameId);
+    }
+
+    private synchronized void awaitWritten() {
+        while (writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted waiting for snapshots to be written");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write batches of pending records until there are none left, on the writer thread.
+     */
+    private void writePending() {
+        while (true) {
+            List<PendingRecord> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    writing = false;
+                    notifyAll();
+                    return;
+                }
+                List<PendingRecord> next = pending.subList(0, Math.min(pending.size(), MAX_BATCH_SIZE));
+                batch = new ArrayList<>(next);
+                next.clear();
+            }
+            try {
+                writeBatch(batch);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to write {} snapshots", batch.size(), e);
+                // The records after the lost ones can't be deltas from them
+                batch.stream().mapToInt(r -> r.gameId).distinct().forEach(this::restartFromKeyframe);
+                synchronized (this) {
+                    if (writeFailure == null) {
+                        writeFailure = e;
+                    }
+                }
+            } finally {
+                batch.forEach(r -> unwritten.remove(r.gameId, r.snapshot));
+            }
+        }
+    }
+
+    /**
+     * Make sure the next record written for a game is a keyframe, after records it may depend on were lost.
+     *
+     * <p>If the game already has records pending, the first is rewritten as a keyframe, and those after it can stay
+     * deltas from it.  Otherwise the game's cursor is reset, so that the next snapshot added is written as one.
+     */
+    private void restartFromKeyframe(int gameId) {
+        DeltaCursor cursor = cursors.get(gameId);
+        if (cursor == null) {
+            // Loaded from what was actually written when the next snapshot is added
+            return;
+        }
+        // Locked in the same order as addSnapshot, so that no record can be added in between
+        synchronized (cursor) {
+            synchronized (this) {
+                for (int i = 0; i < pending.size(); i++) {
+                    PendingRecord queued = pending.get(i);
+                    if (queued.gameId == gameId) {
+                        pending.set(i, new PendingRecord(gameId, queued.snapshot,
+                                toKeyframeRecord(gameId, queued.snapshot)));
+                        return;
+                    }
+                }
+            }
+            cursor.reset();
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) {
+        List<GameHistoryRecord> records = batch.stream().map(r -> r.record).collect(toList());
+        for (int attempt = 1; !records.isEmpty(); attempt++) {
+            if (attempt > MAX_BATCH_ATTEMPTS) {
+                throw new IllegalStateException(format(
+                        "%d records still unprocessed after %d attempts", records.size(), MAX_BATCH_ATTEMPTS));
+            }
+            if (attempt > 1) {
+                sleep(BASE_RETRY_DELAY.multipliedBy(1L << (attempt - 2)));
+            }
+            WriteBatch.Builder<GameHistoryRecord> writeBatch = WriteBatch.builder(GameHistoryRecord.class)
+                    .mappedTableResource(recordsTable);
+            records.forEach(writeBatch::addPutItem);
+            BatchWriteResult result = dynamo.batchWriteItem(r -> r.addWriteBatch(writeBatch.build()));
+            records = result.unprocessedPutItemsForTable(recordsTable);
+        }
+
+        // Conditional writes can't be batched, but only the newest snapshot of each game needs one
+        Map<Integer, Snapshot> newest = new LinkedHashMap<>();
+        batch.forEach(r -> newest.put(r.gameId, r.snapshot));
+        newest.forEach((gameId, snapshot) -> putLatest(gameId, snapshot, snapshot.getTime().toInstant()));
+        LOG.debug("Wrote {} snapshots of {} games", batch.size(), newest.size());
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted retrying unprocessed records", e);
+        }
+    }
+
+    /**
+     * Replace the game's latest item with {@code snapshot}, unless it already holds a snapshot after {@code notAfter},
+     * so that concurrent writers never roll it back.
+     */
+    private void putLatest(int gameId, Snapshot snapshot, Instant notAfter) {
+        GameHistoryRecord latest = new GameHistoryRecord();
+        latest.setGameId(gameId);
+        latest.setTime(LATEST_TIME);
+        latest.setLatestTime(snapshot.getTime());
+        latest.setLatestEpochNanos(epochNanos(snapshot.getTime().toInstant()));
+        latest.setState(snapshot.getState());
+        try {
+            recordsTable.putItem(PutItemEnhancedRequest.builder(GameHistoryRecord.class)
+                    .item(latest)
+                    .conditionExpression(latestNotAfter(notAfter))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            LOG.debug("Not replacing newer latest snapshot of game {}", gameId);
+        }
+    }
+
+    private void deleteLatest(int gameId, Instant notAfter) {
+        try {
+            recordsTable.deleteItem(DeleteItemEnhancedRequest.builder()
+                    .key(sortKey(gameId, LATEST_TIME))
+                    .conditionExpression(latestNotAfter(notAfter))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            LOG.debug("Not deleting newer latest snapshot of game {}", gameId);
+        }
+    }
+
+    private static Expression latestNotAfter(Instant notAfter) {
+        return Expression.builder()
+                .expression(format("attribute_not_exists(#%1$s) OR #%1$s <= %2$s", LATEST_EPOCH_NANOS, NOT_AFTER))
+                .putExpressionName("#" + LATEST_EPOCH_NANOS, LATEST_EPOCH_NANOS)
+                .putExpressionValue(NOT_AFTER, AttributeValue.builder().n(String.valueOf(epochNanos(notAfter))).build())
+                .build();
+    }
+
+    private static long epochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    /**
+     * Match every record of a game, but not its latest item.
+     */
+    private static QueryConditional allRecords(int gameId) {
+        return QueryConditional.sortLessThan(sortKey(gameId, LATEST_TIME));
+    }
+
+    private static GameHistoryRecord toRecord(int gameId, Snapshot snapshot, ObjectNode next) {
+        if (DeltaCursor.isKeyframe(next)) {
+            return toKeyframeRecord(gameId, snapshot);
+        }
+        GameHistoryRecord record = new GameHistoryRecord();
+        record.setGameId(gameId);
+        record.setTime(snapshot.getTime());
+        record.setDelta((ObjectNode) next.get(DeltaCursor.DELTA_FIELD));
+        return record;
+    }
+
+    private static GameHistoryRecord toKeyframeRecord(int gameId, Snapshot snapshot) {
         GameHistoryRecord record = new GameHistoryRecord();
         record.setGameId(gameId);
         record.setTime(snapshot.getTime());
         record.setState(snapshot.getState());
+        return record;
+    }
+
+    /**
+     * Read back from the latest record matching {@code conditional} taken at or before {@code time} to the most recent
+     * full record, returning them oldest first.
+     */
+    private List<GameHistoryRecord> readSinceKeyframe(QueryConditional conditional, Instant time) {
+        PageIterable<GameHistoryRecord> latest = recordsTable.query(qb ->
+                qb.queryConditional(conditional)
+                        .scanIndexForward(false)
+                        .limit(keyframeInterval));
+        Deque<GameHistoryRecord> records = new ArrayDeque<>();
+        for (GameHistoryRecord record : latest.items()) {
+            if (record.getTime().toInstant().isAfter(time)) {
+                continue;
+            }
+            records.addFirst(record);
+            if (record.getState() != null) {
+                break;
+            }
+        }
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Build the sort key of a record taken at {@code time}, in UTC.
+     */
+    private static Key sortKey(int gameId, ZonedDateTime time) {
+        return Key.builder()
+                .partitionValue(gameId)
+                .sortValue(time.withZoneSameInstant(ZoneOffset.UTC).toString())
+                .build();
+    }
+
+    private static Snapshot read(DeltaCursor cursor, GameHistoryRecord record) {
+        try {
+            // Take the time from the sort key, which unlike the JSON keeps its time zone ID
+            return Snapshot.create(record.getTime(), cursor.read(toNode(record)).getState());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonNode toNode(GameHistoryRecord record) {
+        if (record.getDelta() != null) {
+            return OBJECT_MAPPER.createObjectNode().set(DeltaCursor.DELTA_FIELD, record.getDelta());
+        }
+        return OBJECT_MAPPER.valueToTree(Snapshot.create(record.getTime(), record.getState()));
+    }
+
+    private static class PendingRecord {
+        final int gameId;
+        final Snapshot snapshot;
+        final GameHistoryRecord record;
 
-        recordsTable.putItem(record);
+        PendingRecord(int gameId, Snapshot snapshot, GameHistoryRecord record) {
+            this.gameId = gameId;
+            this.snapshot = snapshot;
+            this.record = record;
+        }
     }
 }
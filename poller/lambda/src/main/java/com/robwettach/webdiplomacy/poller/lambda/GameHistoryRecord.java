@@ -1,5 +1,6 @@
 package com.robwettach.webdiplomacy.poller.lambda;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.robwettach.webdiplomacy.model.GameState;
 import java.time.ZonedDateTime;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
@@ -9,12 +10,21 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortK
 
 /**
  * DynamoDB Model object representing a single {@link GameState}.
+ *
+ * <p>Holds either the full {@link #getState() state}, or a {@link #getDelta() delta} from the previous record's state
+ * (see {@link com.robwettach.webdiplomacy.poller.lib.DeltaCursor DeltaCursor}).
+ *
+ * <p>Each game's latest item has a placeholder {@link #getTime() time} that sorts after every real record, and holds
+ * the full {@link #getState() state} of the game's latest snapshot along with its {@link #getLatestTime() time}.
  */
 @DynamoDbBean
 public class GameHistoryRecord {
     private int gameId;
     private ZonedDateTime time;
     private GameState state;
+    private ObjectNode delta;
+    private ZonedDateTime latestTime;
+    private Long latestEpochNanos;
 
     @DynamoDbPartitionKey
     public int getGameId() {
@@ -34,7 +44,7 @@ public class GameHistoryRecord {
         this.time = time;
     }
 
-    @DynamoDbConvertedBy(GameStateJsonConverter.class)
+    @DynamoDbConvertedBy(GameStateBinaryConverter.class)
     public GameState getState() {
         return state;
     }
@@ -42,4 +52,35 @@ public class GameHistoryRecord {
     public void setState(GameState state) {
         this.state = state;
     }
+
+    @DynamoDbConvertedBy(JsonNodeJsonConverter.class)
+    public ObjectNode getDelta() {
+        return delta;
+    }
+
+    public void setDelta(ObjectNode delta) {
+        this.delta = delta;
+    }
+
+    public ZonedDateTime getLatestTime() {
+        return latestTime;
+    }
+
+    public void setLatestTime(ZonedDateTime latestTime) {
+        this.latestTime = latestTime;
+    }
+
+    /**
+     * Get the {@link #getLatestTime() latest time} as nanoseconds since the epoch, which unlike the time itself can be
+     * compared in a condition expression.
+     *
+     * @return The latest time in nanoseconds since the epoch, or {@code null} if this isn't a latest item
+     */
+    public Long getLatestEpochNanos() {
+        return latestEpochNanos;
+    }
+
+    public void setLatestEpochNanos(Long latestEpochNanos) {
+        this.latestEpochNanos = latestEpochNanos;
+    }
 }
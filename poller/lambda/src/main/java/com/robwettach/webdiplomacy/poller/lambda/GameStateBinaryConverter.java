@@ -0,0 +1,52 @@
+package com.robwettach.webdiplomacy.poller.lambda;
+
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.poller.lib.SnapshotCodec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * {@link AttributeConverter} that translates between {@link GameState} instances and their compact
+ * {@link SnapshotCodec} encoding, stored as a binary attribute.
+ *
+ * <p>States stored as JSON strings by {@link GameStateJsonConverter} are still read.
+ */
+public class GameStateBinaryConverter implements AttributeConverter<GameState> {
+    private static final SnapshotCodec CODEC = SnapshotCodec.create(SnapshotCodec.Compression.DEFLATE);
+
+    private final GameStateJsonConverter jsonConverter = new GameStateJsonConverter();
+
+    @Override
+    public AttributeValue transformFrom(GameState input) {
+        return AttributeValue.builder()
+                .b(SdkBytes.fromByteArrayUnsafe(CODEC.encode(input)))
+                .build();
+    }
+
+    @Override
+    public GameState transformTo(AttributeValue input) {
+        if (input.s() != null) {
+            return jsonConverter.transformTo(input);
+        }
+        try {
+            return SnapshotCodec.decodeState(input.b().asByteArrayUnsafe());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public EnhancedType<GameState> type() {
+        return EnhancedType.of(GameState.class);
+    }
+
+    @Override
+    public AttributeValueType attributeValueType() {
+        return AttributeValueType.B;
+    }
+}
@@ -0,0 +1,13 @@
+package com.robwettach.webdiplomacy.poller.lambda;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * {@link software.amazon.awssdk.enhanced.dynamodb.AttributeConverter AttributeConverter} that translates between
+ * {@link ObjectNode} instances and their JSON representation.
+ */
+public class JsonNodeJsonConverter extends JsonAttributeConverter<ObjectNode> {
+    public JsonNodeJsonConverter() {
+        super(ObjectNode.class);
+    }
+}
@@ -3,25 +3,42 @@ package com.robwettach.webdiplomacy.poller.lambda;
 import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
 import com.robwettach.webdiplomacy.notify.Notifier;
 import com.robwettach.webdiplomacy.notify.StdOutNotifier;
-import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.CachingHistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.DnsCache;
 import com.robwettach.webdiplomacy.poller.lib.Poller;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
  * Lambda entrypoint for periodic poller.
  */
 public class LambdaPoller {
-    private static final HistoryStore HISTORY_STORE = new DynamoHistoryStore(System.getenv("GAME_HISTORY_TABLE_NAME"));
+    private static final Logger LOG = LogManager.getLogger(LambdaPoller.class);
+
+    static {
+        // Before the clients below make their first lookups
+        DnsCache.configure();
+    }
+
+    // Shared across warm invocations so that each poll finds the snapshot the last one added without querying for it
+    private static final CachingHistoryStore HISTORY_STORE = new CachingHistoryStore(
+            new DynamoHistoryStore(System.getenv("GAME_HISTORY_TABLE_NAME")),
+            CachingHistoryStore.DEFAULT_MAX_GAMES,
+            CachingHistoryStore.DEFAULT_TTL);
     private static final Notifier NOTIFIER = StdOutNotifier.create();
+    // TODO: get game IDs either from input or Dynamo
+    private static final int GAME_ID = 313359;
+    // Shared across warm invocations so the page validators survive, letting unchanged boards come back as a 304
+    private static final Poller POLLER = new Poller(GAME_ID, HISTORY_STORE, NOTIFIER);
 
     /**
      * Lambda entrypoint for periodic poller.
      * @param event The CloudWatch {@link ScheduledEvent} that triggered this execution
      */
     public void handle(ScheduledEvent event) {
-        // TODO: get game IDs either from input or Dynamo
-        int gameId = 313359;
-
-        Poller poller = new Poller(gameId, HISTORY_STORE, NOTIFIER);
-        poller.poll();
+        POLLER.poll();
+        // Snapshots are written in the background, and the container may be frozen as soon as this returns
+        HISTORY_STORE.flush();
+        LOG.info("Latest snapshot cache: {}", HISTORY_STORE.getStats());
     }
 }
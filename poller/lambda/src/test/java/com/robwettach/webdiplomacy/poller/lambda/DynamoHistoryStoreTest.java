@@ -2,12 +2,16 @@ package com.robwettach.webdiplomacy.poller.lambda;
 
 import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
 import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.collect.Iterables;
@@ -17,10 +21,17 @@ import com.robwettach.webdiplomacy.model.GameDate;
 import com.robwettach.webdiplomacy.model.GamePhase;
 import com.robwettach.webdiplomacy.model.GameState;
 import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.poller.lib.SnapshotCodec;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -33,13 +44,19 @@ import org.junit.jupiter.api.extension.ParameterResolver;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.BeanTableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 
 class DynamoHistoryStoreTest {
     public static final String TABLE_NAME = "GameHistoryRecords";
     private static LocalDynamoDb localDynamoDb;
+    private static DynamoDbEnhancedClient dynamo;
     private static DynamoDbTable<GameHistoryRecord> recordsTable;
 
     @RegisterExtension
@@ -51,7 +68,7 @@ class DynamoHistoryStoreTest {
     static void setupDynamo() {
         localDynamoDb = new LocalDynamoDb();
         localDynamoDb.start();
-        DynamoDbEnhancedClient dynamo = DynamoDbEnhancedClient.builder()
+        dynamo = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(localDynamoDb.createClient())
                 .build();
         recordsTable = dynamo.table(
@@ -67,11 +84,11 @@ class DynamoHistoryStoreTest {
 
     @BeforeEach
     void setUp() {
-        historyStore = new DynamoHistoryStore(recordsTable);
+        historyStore = new DynamoHistoryStore(dynamo, recordsTable);
     }
 
     @Test
-    void shouldStoreHistoryRecordInProperSchema(int gameId) throws JsonProcessingException {
+    void shouldStoreHistoryRecordInProperSchema(int gameId) throws IOException {
         ZonedDateTime time = ZonedDateTime.now();
         GameState state = GameState.builder()
                 .id(gameId)
@@ -81,6 +98,7 @@ class DynamoHistoryStoreTest {
                 .build();
         Snapshot expectedSnap = Snapshot.create(time, state);
         historyStore.addSnapshot(gameId, expectedSnap);
+        historyStore.flush();
 
         GetItemResponse response = localDynamoDb.createClient()
                 .getItem(r -> r.tableName(TABLE_NAME)
@@ -91,7 +109,28 @@ class DynamoHistoryStoreTest {
         Map<String, AttributeValue> item = response.item();
         assertThat("Unexpected gameId", item.get("gameId").n(), is(String.valueOf(gameId)));
         assertThat("Unexpected time", item.get("time").s(), is(time.toString()));
-        assertThat("Unexpected state", Json.OBJECT_MAPPER.readValue(item.get("state").s(), GameState.class), is(state));
+        assertThat("Unexpected state", SnapshotCodec.decodeState(item.get("state").b().asByteArray()), is(state));
+    }
+
+    @Test
+    void shouldReadJsonState(int gameId) throws JsonProcessingException {
+        ZonedDateTime time = ZonedDateTime.now();
+        GameState state = GameState.builder()
+                .id(gameId)
+                .name("test")
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .build();
+        String json = Json.OBJECT_MAPPER.writeValueAsString(state);
+        localDynamoDb.createClient()
+                .putItem(r -> r.tableName(TABLE_NAME)
+                        .item(Map.of(
+                                "gameId", AttributeValue.builder().n(String.valueOf(gameId)).build(),
+                                "time", AttributeValue.builder().s(time.toString()).build(),
+                                "state", AttributeValue.builder().s(json).build())));
+
+        assertThat("Unexpected snapshots", historyStore.getSnapshotsForGame(gameId),
+                contains(Snapshot.create(time, state)));
     }
 
     @Test
@@ -163,6 +202,295 @@ class DynamoHistoryStoreTest {
                 is(optionalWithValue(equalTo(Iterables.getLast(expectedSnapshots)))));
     }
 
+    @Test
+    void shouldStoreDeltasBetweenKeyframes(int gameId) {
+        ZonedDateTime startTime = ZonedDateTime.now();
+        List<Snapshot> expectedSnapshots = IntStream.range(0, 10)
+                .mapToObj(i -> Snapshot.create(startTime.plusHours(i), GameState.builder()
+                        .id(gameId)
+                        .name("test")
+                        .date(GameDate.create(Season.Spring, 1901 + i / 2))
+                        .phase(i % 2 == 0 ? GamePhase.Diplomacy : GamePhase.Retreats)
+                        .build()))
+                .collect(toList());
+        DynamoHistoryStore deltaStore = new DynamoHistoryStore(dynamo, recordsTable, 4);
+        expectedSnapshots.forEach(s -> deltaStore.addSnapshot(gameId, s));
+        deltaStore.flush();
+
+        List<Boolean> keyframes = recordsTable.query(qb -> qb.queryConditional(
+                        QueryConditional.keyEqualTo(kb -> kb.partitionValue(gameId))))
+                .items()
+                .stream()
+                .filter(r -> r.getLatestTime() == null)
+                .map(r -> r.getState() != null)
+                .collect(toList());
+        assertThat("Unexpected keyframes", keyframes,
+                contains(true, false, false, false, true, false, false, false, true, false));
+
+        // A fresh store has to find the latest keyframe again
+        DynamoHistoryStore reloaded = new DynamoHistoryStore(dynamo, recordsTable, 4);
+        assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(gameId), is(expectedSnapshots));
+        assertThat(
+                "Unexpected latest snapshot",
+                reloaded.getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(Iterables.getLast(expectedSnapshots)))));
+    }
+
+    @Test
+    void shouldGetSnapshotsBetweenTimes(int gameId) {
+        List<Snapshot> expectedSnapshots = makeDailySnapshots(gameId);
+        DynamoHistoryStore deltaStore = new DynamoHistoryStore(dynamo, recordsTable, 4);
+        expectedSnapshots.forEach(s -> deltaStore.addSnapshot(gameId, s));
+
+        // Starts on a delta, so has to read back to the keyframe before the range
+        ZonedDateTime start = expectedSnapshots.get(0).getTime();
+        assertThat("Unexpected snapshots", deltaStore.getSnapshotsBetween(gameId, start.plusDays(5), start.plusDays(6)),
+                contains(expectedSnapshots.get(5), expectedSnapshots.get(6)));
+        // The same instants, in a time zone far from the one they were stored in
+        ZoneId kiritimati = ZoneId.of("Pacific/Kiritimati");
+        assertThat("Unexpected snapshots", deltaStore.getSnapshotsBetween(
+                gameId,
+                start.plusDays(7).plusHours(1).withZoneSameInstant(kiritimati),
+                start.plusDays(9).withZoneSameInstant(kiritimati)),
+                contains(expectedSnapshots.get(8), expectedSnapshots.get(9)));
+        assertThat("Unexpected snapshots",
+                deltaStore.getSnapshotsBetween(gameId, start.minusDays(3), start.minusDays(2)),
+                is(empty()));
+    }
+
+    @Test
+    void shouldGetSnapshotAtTime(int gameId) {
+        List<Snapshot> expectedSnapshots = makeDailySnapshots(gameId);
+        DynamoHistoryStore deltaStore = new DynamoHistoryStore(dynamo, recordsTable, 4);
+        expectedSnapshots.forEach(s -> deltaStore.addSnapshot(gameId, s));
+
+        ZonedDateTime start = expectedSnapshots.get(0).getTime();
+        assertThat("Unexpected snapshot", deltaStore.getSnapshotAt(gameId, start.plusDays(6).plusHours(12)),
+                is(optionalWithValue(equalTo(expectedSnapshots.get(6)))));
+        assertThat("Unexpected snapshot", deltaStore.getSnapshotAt(gameId, start.plusDays(3)),
+                is(optionalWithValue(equalTo(expectedSnapshots.get(3)))));
+        assertThat("Unexpected snapshot", deltaStore.getSnapshotAt(gameId, start.minusSeconds(1)),
+                is(emptyOptional()));
+    }
+
+    @Test
+    void shouldReplaceSnapshotsUntilTime(int gameId) {
+        List<Snapshot> snapshots = makeDailySnapshots(gameId);
+        DynamoHistoryStore deltaStore = new DynamoHistoryStore(dynamo, recordsTable, 4);
+        snapshots.forEach(s -> deltaStore.addSnapshot(gameId, s));
+
+        deltaStore.replaceSnapshotsUntil(
+                gameId,
+                snapshots.get(5).getTime(),
+                List.of(snapshots.get(0), snapshots.get(3), snapshots.get(5)));
+        Snapshot next = Snapshot.create(snapshots.get(9).getTime().plusDays(1), snapshots.get(0).getState());
+        deltaStore.addSnapshot(gameId, next);
+        deltaStore.flush();
+
+        List<Boolean> keyframes = recordsTable.query(qb -> qb.queryConditional(
+                        QueryConditional.keyEqualTo(kb -> kb.partitionValue(gameId))))
+                .items()
+                .stream()
+                .filter(r -> r.getLatestTime() == null)
+                .map(r -> r.getState() != null)
+                .collect(toList());
+        // The first record after the replaced ones no longer depends on them
+        assertThat("Unexpected keyframes", keyframes, contains(true, false, false, true, false, true, false, false));
+        assertThat("Unexpected snapshots", new DynamoHistoryStore(dynamo, recordsTable, 4).getSnapshotsForGame(gameId),
+                contains(snapshots.get(0), snapshots.get(3), snapshots.get(5), snapshots.get(6), snapshots.get(7),
+                        snapshots.get(8), snapshots.get(9), next));
+    }
+
+    @Test
+    void shouldDeleteGame(int gameId) {
+        makeDailySnapshots(gameId).forEach(s -> historyStore.addSnapshot(gameId, s));
+        assertThat("Missing game", historyStore.getGameIds(), hasItem(gameId));
+
+        historyStore.deleteGame(gameId);
+
+        assertThat("Unexpected game", historyStore.getGameIds(), not(hasItem(gameId)));
+        assertThat("Unexpected snapshots", historyStore.getSnapshotsForGame(gameId), is(empty()));
+    }
+
+    @Test
+    void shouldKeepLatestItem(int gameId) {
+        List<Snapshot> snapshots = makeDailySnapshots(gameId);
+        snapshots.forEach(s -> historyStore.addSnapshot(gameId, s));
+        historyStore.flush();
+
+        GameHistoryRecord latest = recordsTable.getItem(Key.builder()
+                .partitionValue(gameId)
+                .sortValue(DynamoHistoryStore.LATEST_TIME.toString())
+                .build());
+        assertThat("Missing latest item", latest != null);
+        assertThat("Unexpected latest time", latest.getLatestTime(), is(snapshots.get(9).getTime()));
+        assertThat("Unexpected latest state", latest.getState(), is(snapshots.get(9).getState()));
+        assertThat("Unexpected latest snapshot",
+                new DynamoHistoryStore(dynamo, recordsTable).getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(snapshots.get(9)))));
+        // The latest item isn't part of the history
+        assertThat("Unexpected snapshots", historyStore.getSnapshotsForGame(gameId), is(snapshots));
+    }
+
+    @Test
+    void shouldNotRollLatestItemBack(int gameId) {
+        List<Snapshot> snapshots = makeDailySnapshots(gameId);
+        DynamoHistoryStore otherPoller = new DynamoHistoryStore(dynamo, recordsTable);
+        historyStore.addSnapshot(gameId, snapshots.get(5));
+        historyStore.flush();
+        // A slower poller finishes writing an older snapshot afterwards
+        otherPoller.addSnapshot(gameId, snapshots.get(4));
+        otherPoller.flush();
+
+        assertThat("Unexpected latest snapshot", historyStore.getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(snapshots.get(5)))));
+    }
+
+    @Test
+    void shouldAddLatestItemToExistingGame(int gameId) {
+        List<Snapshot> snapshots = makeDailySnapshots(gameId);
+        snapshots.forEach(s -> historyStore.addSnapshot(gameId, s));
+        historyStore.flush();
+        recordsTable.deleteItem(Key.builder()
+                .partitionValue(gameId)
+                .sortValue(DynamoHistoryStore.LATEST_TIME.toString())
+                .build());
+
+        assertThat("Unexpected latest snapshot", historyStore.getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(snapshots.get(9)))));
+        GameHistoryRecord latest = recordsTable.getItem(Key.builder()
+                .partitionValue(gameId)
+                .sortValue(DynamoHistoryStore.LATEST_TIME.toString())
+                .build());
+        assertThat("Missing latest item", latest != null);
+        assertThat("Unexpected latest time", latest.getLatestTime(), is(snapshots.get(9).getTime()));
+    }
+
+    @Test
+    void shouldBatchWritesOfManyGames(int gameId) {
+        // More games than fit in one batch, so that some are written by a second one
+        List<Integer> gameIds = IntStream.range(0, 30).mapToObj(i -> 10000 + gameId * 100 + i).collect(toList());
+        gameIds.forEach(id -> makeDailySnapshots(id).forEach(s -> historyStore.addSnapshot(id, s)));
+        historyStore.flush();
+
+        DynamoHistoryStore reloaded = new DynamoHistoryStore(dynamo, recordsTable);
+        for (int id : gameIds) {
+            List<Snapshot> snapshots = makeDailySnapshots(id);
+            assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(id), is(snapshots));
+            assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(id),
+                    is(optionalWithValue(equalTo(snapshots.get(9)))));
+        }
+    }
+
+    @Test
+    void shouldReadSnapshotsBeforeTheyAreFlushed(int gameId) {
+        List<Snapshot> snapshots = makeDailySnapshots(gameId);
+        snapshots.forEach(s -> historyStore.addSnapshot(gameId, s));
+
+        assertThat("Unexpected latest snapshot", historyStore.getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(snapshots.get(9)))));
+        assertThat("Unexpected snapshots", historyStore.getSnapshotsForGame(gameId), is(snapshots));
+    }
+
+    @Test
+    void shouldThrowFromFlushWhenWriteFails(int gameId) {
+        // Too big for a DynamoDB item, even compressed
+        Random random = new Random(gameId);
+        String name = IntStream.range(0, 1_000_000)
+                .mapToObj(i -> String.valueOf((char) ('a' + random.nextInt(26))))
+                .collect(joining());
+        historyStore.addSnapshot(gameId, Snapshot.create(ZonedDateTime.now(), GameState.builder()
+                .id(gameId)
+                .name(name)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .build()));
+
+        assertThrows(IllegalStateException.class, historyStore::flush);
+        // The failure is only reported once
+        historyStore.flush();
+    }
+
+    @Test
+    void shouldRewriteQueuedDeltasAsKeyframeWhenBatchFails(int gameId) throws InterruptedException {
+        FailingBatchClient client = new FailingBatchClient();
+        DynamoHistoryStore store = new DynamoHistoryStore(client, recordsTable);
+        Snapshot first = makeDailySnapshots(gameId).get(0);
+        Snapshot lost = Snapshot.create(first.getTime().plusDays(1), first.getState().toBuilder().name("lost").build());
+        // Only differs from the lost snapshot in its date and time, so a delta from it would keep its name
+        final Snapshot queued = Snapshot.create(lost.getTime().plusDays(1), lost.getState().toBuilder()
+                .date(GameDate.create(Season.Autumn, 1901))
+                .build());
+        store.addSnapshot(gameId, first);
+        store.flush();
+
+        client.failNextBatch();
+        store.addSnapshot(gameId, lost);
+        client.awaitBatch();
+        store.addSnapshot(gameId, queued);
+        client.release();
+
+        assertThrows(IllegalStateException.class, store::flush);
+        DynamoHistoryStore reloaded = new DynamoHistoryStore(dynamo, recordsTable);
+        assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(gameId), contains(first, queued));
+        assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(gameId),
+                is(optionalWithValue(equalTo(queued))));
+    }
+
+    private static List<Snapshot> makeDailySnapshots(int gameId) {
+        ZonedDateTime startTime = ZonedDateTime.of(2020, 9, 13, 12, 0, 30, 0, ZoneOffset.UTC);
+        return IntStream.range(0, 10)
+                .mapToObj(i -> Snapshot.create(startTime.plusDays(i), GameState.builder()
+                        .id(gameId)
+                        .name("test")
+                        .date(GameDate.create(Season.Spring, 1901 + i))
+                        .phase(GamePhase.Diplomacy)
+                        .build()))
+                .collect(toList());
+    }
+
+    /**
+     * {@link DynamoDbEnhancedClient} that can be made to block its next {@code BatchWriteItem} call until released,
+     * and then fail it.
+     */
+    private static class FailingBatchClient implements DynamoDbEnhancedClient {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean failNext;
+
+        @Override
+        public <T> DynamoDbTable<T> table(String tableName, TableSchema<T> tableSchema) {
+            return dynamo.table(tableName, tableSchema);
+        }
+
+        @Override
+        public BatchWriteResult batchWriteItem(Consumer<BatchWriteItemEnhancedRequest.Builder> request) {
+            if (failNext) {
+                failNext = false;
+                entered.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Failed to write batch");
+            }
+            return dynamo.batchWriteItem(request);
+        }
+
+        void failNextBatch() {
+            failNext = true;
+        }
+
+        void awaitBatch() throws InterruptedException {
+            entered.await();
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
     /**
      * Super-simple {@link ParameterResolver} that returns an incrementing integer value.
      *
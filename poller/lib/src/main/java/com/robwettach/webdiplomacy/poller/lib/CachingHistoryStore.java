@@ -0,0 +1,185 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link HistoryStore} that remembers the latest snapshot of each game, so that a poller reading back the snapshot it
+ * added last time doesn't have to go to the underlying store for it.
+ *
+ * <p>Snapshots are written through to the underlying store before being cached.  If the underlying store only
+ * writes them in the background, and {@link #flush()} finds that any failed, the whole cache is forgotten, so that the
+ * snapshots that weren't written don't look like the latest and get stored again.  The cache holds at most
+ * {@code maxGames} games, evicting the least recently used, and forgets each game {@code ttl} after it was last
+ * loaded or added, in case something else has written to the underlying store since.  Games with no history are
+ * cached too, so a new game is only looked up once.  Every other read goes straight to the underlying store.
+ *
+ * <p>Safe to share between pollers running on different threads.
+ */
+public class CachingHistoryStore implements HistoryStore {
+    /**
+     * Cache up to 1024 games, far more than any one poller should be polling.
+     */
+    public static final int DEFAULT_MAX_GAMES = 1024;
+    /**
+     * Forget cached snapshots after an hour, long enough to cover many polls of even the least active game.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+    private final HistoryStore delegate;
+    private final Cache<Integer, Optional<Snapshot>> latestSnapshots;
+
+    /**
+     * Create a {@link CachingHistoryStore} in front of {@code delegate}.
+     *
+     * @param delegate The {@link HistoryStore} to read from and write through to
+     * @param maxGames The most games to cache the latest snapshot of at once
+     * @param ttl How long to cache each game's latest snapshot for
+     */
+    public CachingHistoryStore(HistoryStore delegate, int maxGames, Duration ttl) {
+        this(delegate, maxGames, ttl, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingHistoryStore(HistoryStore delegate, int maxGames, Duration ttl, Ticker ticker) {
+        checkNotNull(delegate, "delegate must not be null");
+        checkArgument(maxGames > 0, "maxGames must be positive");
+        checkArgument(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+        this.delegate = delegate;
+        this.latestSnapshots = CacheBuilder.newBuilder()
+                .maximumSize(maxGames)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<Snapshot> getSnapshotsForGame(int gameId) {
+        return delegate.getSnapshotsForGame(gameId);
+    }
+
+    @Override
+    public List<Snapshot> getSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        return delegate.getSnapshotsBetween(gameId, from, to);
+    }
+
+    @Override
+    public Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        return delegate.streamSnapshotsBetween(gameId, from, to);
+    }
+
+    @Override
+    public Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        return delegate.getSnapshotAt(gameId, time);
+    }
+
+    @Override
+    public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
+        Optional<Snapshot> cached = latestSnapshots.getIfPresent(gameId);
+        if (cached != null) {
+            return cached;
+        }
+        Optional<Snapshot> latest = delegate.getLatestSnapshotForGame(gameId);
+        // Don't replace a snapshot added while this one was being loaded
+        Optional<Snapshot> added = latestSnapshots.asMap().putIfAbsent(gameId, latest);
+        return added != null ? added : latest;
+    }
+
+    @Override
+    public void addSnapshot(int gameId, Snapshot snapshot) {
+        try {
+            delegate.addSnapshot(gameId, snapshot);
+        } catch (RuntimeException e) {
+            // Whether it was written or not is anyone's guess
+            latestSnapshots.invalidate(gameId);
+            throw e;
+        }
+        latestSnapshots.put(gameId, Optional.of(snapshot));
+    }
+
+    @Override
+    public Set<Integer> getGameIds() {
+        return delegate.getGameIds();
+    }
+
+    @Override
+    public void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        try {
+            delegate.replaceSnapshotsUntil(gameId, until, snapshots);
+        } finally {
+            // The latest snapshot only changes if every snapshot was replaced, but it's simpler to load it again
+            latestSnapshots.invalidate(gameId);
+        }
+    }
+
+    @Override
+    public void deleteGame(int gameId) {
+        try {
+            delegate.deleteGame(gameId);
+        } finally {
+            latestSnapshots.invalidate(gameId);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            delegate.flush();
+        } catch (RuntimeException e) {
+            // Any snapshot added since the last flush may not have been written after all
+            latestSnapshots.invalidateAll();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the hit and miss counts of the latest snapshot cache since this store was created.
+     *
+     * @return The current {@link Stats}
+     */
+    public Stats getStats() {
+        CacheStats stats = latestSnapshots.stats();
+        return new AutoValue_CachingHistoryStore_Stats(
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                latestSnapshots.size());
+    }
+
+    /**
+     * Statistics of the latest snapshot cache of a {@link CachingHistoryStore}.
+     */
+    @AutoValue
+    public abstract static class Stats {
+        public abstract long getHits();
+        public abstract long getMisses();
+        public abstract long getEvictions();
+        public abstract long getSize();
+
+        /**
+         * Get the fraction of reads of a latest snapshot that were served from the cache.
+         *
+         * @return The hit rate, or {@code 1.0} if nothing has been read yet
+         */
+        public double getHitRate() {
+            long reads = getHits() + getMisses();
+            return reads == 0 ? 1.0 : (double) getHits() / reads;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableSet;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameState;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * {@link PollPolicy} that polls hard when something is about to happen in a game, and backs off when nothing is.
+ *
+ * <ul>
+ *     <li>Finished games are not polled again.</li>
+ *     <li>Paused games are polled every {@code pausedInterval}, just to notice them being un-paused.</li>
+ *     <li>Games in which every active country is {@link CountryStatus#Ready Ready}, or that are within ten minutes
+ *         of (or past) their next turn, are polled every {@code minInterval}.</li>
+ *     <li>Otherwise, the next poll is timed for the next interesting moment (just after one hour before the next turn,
+ *         and the start of those last ten minutes), but never less than {@code minInterval} or more than
+ *         {@code maxInterval} away.</li>
+ * </ul>
+ */
+public class DeadlineAwarePollPolicy implements PollPolicy {
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofMinutes(15);
+    public static final Duration DEFAULT_PAUSED_INTERVAL = Duration.ofHours(1);
+
+    // How long before the next turn we start polling at the minimum interval, to catch last-minute orders
+    private static final Duration DEADLINE_WINDOW = Duration.ofMinutes(10);
+    // Matches the warning sent by HourRemainingChecker
+    private static final Duration HOUR_WARNING = Duration.ofHours(1);
+    // Aim slightly past the hour warning so the poll lands on the far side of it
+    private static final Duration SLACK = Duration.ofSeconds(5);
+    private static final Set<CountryStatus> EFFECTIVELY_READY_STATUSES = ImmutableSet.of(
+            CountryStatus.Ready,
+            CountryStatus.NoOrders);
+
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final Duration pausedInterval;
+
+    public DeadlineAwarePollPolicy() {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_PAUSED_INTERVAL);
+    }
+
+    /**
+     * Create a {@link DeadlineAwarePollPolicy} with custom intervals.
+     *
+     * @param minInterval The shortest delay between polls, used when a game is about to progress
+     * @param maxInterval The longest delay between polls of an active game
+     * @param pausedInterval The delay between polls of a paused game
+     */
+    public DeadlineAwarePollPolicy(Duration minInterval, Duration maxInterval, Duration pausedInterval) {
+        checkArgument(!minInterval.isNegative() && !minInterval.isZero(), "minInterval must be positive");
+        checkArgument(maxInterval.compareTo(minInterval) >= 0, "maxInterval must not be less than minInterval");
+        checkArgument(!pausedInterval.isNegative() && !pausedInterval.isZero(), "pausedInterval must be positive");
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.pausedInterval = pausedInterval;
+    }
+
+    @Override
+    public Optional<Duration> nextPollDelay(Optional<Snapshot> latest, ZonedDateTime now) {
+        if (latest.isEmpty()) {
+            return Optional.of(minInterval);
+        }
+        GameState state = latest.get().getState();
+        if (state.isFinished()) {
+            return Optional.empty();
+        }
+        if (state.isPaused()) {
+            return Optional.of(pausedInterval);
+        }
+        if (isEveryoneReady(state)) {
+            // The turn will be processed as soon as webDiplomacy notices, no need to wait for the deadline
+            return Optional.of(minInterval);
+        }
+        if (state.getNextTurnAt().isEmpty()) {
+            return Optional.of(maxInterval);
+        }
+
+        ZonedDateTime nextTurnAt = state.getNextTurnAt().get();
+        if (!now.isBefore(nextTurnAt.minus(DEADLINE_WINDOW))) {
+            return Optional.of(minInterval);
+        }
+        // Wake up at the start of the deadline window, rather than at the deadline, so that all of it is polled hard
+        Duration untilNextMoment = Stream.of(
+                nextTurnAt.minus(HOUR_WARNING).plus(SLACK),
+                nextTurnAt.minus(DEADLINE_WINDOW))
+                .filter(now::isBefore)
+                .map(moment -> Duration.between(now, moment))
+                .findFirst()
+                .orElse(minInterval);
+        return Optional.of(clamp(untilNextMoment));
+    }
+
+    private Duration clamp(Duration delay) {
+        if (delay.compareTo(minInterval) < 0) {
+            return minInterval;
+        } else if (delay.compareTo(maxInterval) > 0) {
+            return maxInterval;
+        } else {
+            return delay;
+        }
+    }
+
+    private static boolean isEveryoneReady(GameState state) {
+        Set<CountryState> active = state.getActiveCountries();
+        return active.stream().anyMatch(c -> c.getStatus().equals(CountryStatus.Ready))
+                && active.stream().allMatch(c -> EFFECTIVELY_READY_STATUSES.contains(c.getStatus()));
+    }
+}
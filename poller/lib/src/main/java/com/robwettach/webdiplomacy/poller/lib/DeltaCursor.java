@@ -0,0 +1,260 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Reads and writes the history of a single game as a full keyframe {@link Snapshot} every so often, with a
+ * field-level delta from the previous snapshot in between.
+ *
+ * <p>A keyframe record is just the plain JSON {@link Snapshot}, so history written before deltas existed reads as all
+ * keyframes.  A delta record is a JSON object holding a JSON Merge Patch (RFC 7386) from the previous snapshot in its
+ * {@value #DELTA_FIELD} field.  Each game's countries are keyed by name before diffing, so a change to one country
+ * only carries that country's changed fields rather than the whole set of countries.
+ *
+ * <p>Records must be passed to {@link #advance(JsonNode)} in the order they were written.  After {@link #reset()},
+ * deltas are rejected until the next keyframe, and the next record written is always a keyframe.
+ *
+ * <p>Not safe to share between threads.
+ */
+public class DeltaCursor {
+    /**
+     * The field holding the merge patch of a delta record.
+     */
+    public static final String DELTA_FIELD = "delta";
+    /**
+     * A keyframe every 32 records keeps rebuilding any one snapshot cheap, while still storing most as deltas.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 32;
+
+    private static final String TIME_FIELD = "time";
+    private static final String STATE_FIELD = "state";
+    private static final String COUNTRIES_FIELD = "countries";
+    private static final String COUNTRY_NAME_FIELD = "countryName";
+
+    private final int keyframeInterval;
+
+    // The latest snapshot, with its countries keyed by name
+    @Nullable
+    private ObjectNode tree;
+    private int deltasSinceKeyframe;
+
+    /**
+     * Create a {@link DeltaCursor} at the start of a game's history.
+     *
+     * @param keyframeInterval Write a keyframe once every this many records.  {@code 1} writes only keyframes.
+     */
+    public DeltaCursor(int keyframeInterval) {
+        checkArgument(keyframeInterval > 0, "keyframeInterval must be positive");
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Whether {@code record} is a keyframe, holding a full {@link Snapshot}, rather than a delta.
+     *
+     * @param record The record to check
+     * @return {@code true} if {@code record} is a keyframe, else {@code false}
+     */
+    public static boolean isKeyframe(JsonNode record) {
+        return !record.has(DELTA_FIELD);
+    }
+
+    /**
+     * Whether this cursor has seen a keyframe since it was created or {@link #reset()}.
+     *
+     * @return {@code true} if there is a current snapshot, else {@code false}
+     */
+    public boolean hasCurrent() {
+        return tree != null;
+    }
+
+    /**
+     * Work out the record to write for {@code snapshot}, following the current snapshot.
+     *
+     * <p>Doesn't move the cursor, so that nothing changes if writing the record fails.  Pass the record to
+     * {@link #advance(JsonNode)} once it has been written.
+     *
+     * @param snapshot The {@link Snapshot} to write
+     * @return The keyframe or delta record to write
+     */
+    public ObjectNode nextRecord(Snapshot snapshot) {
+        checkNotNull(snapshot, "snapshot must not be null");
+        ObjectNode keyframe = OBJECT_MAPPER.valueToTree(snapshot);
+        if (tree == null || deltasSinceKeyframe + 1 >= keyframeInterval) {
+            return keyframe;
+        }
+        ObjectNode record = OBJECT_MAPPER.createObjectNode();
+        record.set(DELTA_FIELD, diff(tree, keyCountries(keyframe)));
+        return record;
+    }
+
+    /**
+     * Read the time of the snapshot {@code record} would move the cursor to, without moving it or rebuilding the
+     * snapshot, e.g. to skip over records outside a range of times.
+     *
+     * @param record The next keyframe or delta record
+     * @return The time of the {@link Snapshot} as of {@code record}
+     * @throws JsonProcessingException if the time can't be read
+     * @throws IllegalStateException if {@code record} is a delta, but there is no current snapshot for it to apply to
+     * @throws IllegalArgumentException if {@code record} is malformed
+     */
+    public ZonedDateTime timeOf(JsonNode record) throws JsonProcessingException {
+        JsonNode time = record.path(DELTA_FIELD).path(TIME_FIELD);
+        if (isKeyframe(record)) {
+            time = record.path(TIME_FIELD);
+        } else if (time.isMissingNode()) {
+            // The delta doesn't change the time
+            checkState(tree != null, "Cannot apply a delta without a keyframe");
+            time = tree.path(TIME_FIELD);
+        }
+        checkArgument(time.isTextual(), "record has no time");
+        return OBJECT_MAPPER.treeToValue(time, ZonedDateTime.class);
+    }
+
+    /**
+     * Move the cursor past {@code record}.
+     *
+     * @param record The next keyframe or delta record
+     * @throws IllegalStateException if {@code record} is a delta, but there is no current snapshot for it to apply to
+     * @throws IllegalArgumentException if {@code record} is malformed
+     */
+    public void advance(JsonNode record) {
+        checkArgument(record.isObject(), "record must be a JSON object");
+        if (isKeyframe(record)) {
+            tree = keyCountries(((ObjectNode) record).deepCopy());
+            deltasSinceKeyframe = 0;
+            return;
+        }
+        checkState(tree != null, "Cannot apply a delta without a keyframe");
+        JsonNode patch = record.get(DELTA_FIELD);
+        checkArgument(patch.isObject(), "delta must be a JSON object");
+        merge(tree, patch);
+        deltasSinceKeyframe++;
+    }
+
+    /**
+     * Move the cursor past {@code record}, and rebuild the {@link Snapshot} it leaves the cursor at.
+     *
+     * <p>If {@code record} can't be read, the cursor is {@link #reset()}.
+     *
+     * @param record The next keyframe or delta record
+     * @return The {@link Snapshot} as of {@code record}
+     * @throws JsonProcessingException if the resulting snapshot can't be read
+     * @throws IllegalStateException if {@code record} is a delta, but there is no current snapshot for it to apply to
+     * @throws IllegalArgumentException if {@code record} is malformed
+     */
+    public Snapshot read(JsonNode record) throws JsonProcessingException {
+        try {
+            advance(record);
+            return current();
+        } catch (JsonProcessingException | RuntimeException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuild the current {@link Snapshot}.
+     *
+     * @return The current {@link Snapshot}
+     * @throws JsonProcessingException if the current snapshot can't be read
+     * @throws IllegalStateException if there is no current snapshot
+     */
+    public Snapshot current() throws JsonProcessingException {
+        checkState(tree != null, "No current snapshot");
+        return OBJECT_MAPPER.treeToValue(listCountries(tree.deepCopy()), Snapshot.class);
+    }
+
+    /**
+     * Forget the current snapshot, e.g. after a record couldn't be read.
+     */
+    public void reset() {
+        tree = null;
+        deltasSinceKeyframe = 0;
+    }
+
+    /**
+     * Build the merge patch that turns {@code from} into {@code to}.
+     *
+     * <p>{@link com.robwettach.webdiplomacy.json.Json#OBJECT_MAPPER OBJECT_MAPPER} never writes {@code null}s, so
+     * {@code null} is free to mean "removed", as the merge patch format needs.
+     */
+    private static ObjectNode diff(ObjectNode from, ObjectNode to) {
+        ObjectNode patch = OBJECT_MAPPER.createObjectNode();
+        Iterator<String> fromNames = from.fieldNames();
+        while (fromNames.hasNext()) {
+            String name = fromNames.next();
+            if (!to.has(name)) {
+                patch.putNull(name);
+            }
+        }
+        Iterator<Map.Entry<String, JsonNode>> toFields = to.fields();
+        while (toFields.hasNext()) {
+            Map.Entry<String, JsonNode> field = toFields.next();
+            JsonNode fromValue = from.get(field.getKey());
+            JsonNode toValue = field.getValue();
+            if (toValue.equals(fromValue)) {
+                continue;
+            }
+            if (fromValue instanceof ObjectNode && toValue instanceof ObjectNode) {
+                patch.set(field.getKey(), diff((ObjectNode) fromValue, (ObjectNode) toValue));
+            } else {
+                patch.set(field.getKey(), toValue);
+            }
+        }
+        return patch;
+    }
+
+    private static void merge(ObjectNode target, JsonNode patch) {
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isNull()) {
+                target.remove(field.getKey());
+            } else if (value.isObject()) {
+                JsonNode existing = target.get(field.getKey());
+                ObjectNode merged = existing instanceof ObjectNode
+                        ? (ObjectNode) existing
+                        : target.putObject(field.getKey());
+                merge(merged, value);
+            } else {
+                target.set(field.getKey(), value.deepCopy());
+            }
+        }
+    }
+
+    private static ObjectNode keyCountries(ObjectNode snapshot) {
+        JsonNode countries = snapshot.path(STATE_FIELD).path(COUNTRIES_FIELD);
+        if (countries.isArray()) {
+            ObjectNode keyed = OBJECT_MAPPER.createObjectNode();
+            for (JsonNode country : countries) {
+                keyed.set(country.path(COUNTRY_NAME_FIELD).asText(), country);
+            }
+            ((ObjectNode) snapshot.get(STATE_FIELD)).set(COUNTRIES_FIELD, keyed);
+        }
+        return snapshot;
+    }
+
+    private static ObjectNode listCountries(ObjectNode snapshot) {
+        JsonNode countries = snapshot.path(STATE_FIELD).path(COUNTRIES_FIELD);
+        if (countries.isObject()) {
+            ArrayNode listed = OBJECT_MAPPER.createArrayNode();
+            countries.elements().forEachRemaining(listed::add);
+            ((ObjectNode) snapshot.get(STATE_FIELD)).set(COUNTRIES_FIELD, listed);
+        }
+        return snapshot;
+    }
+}
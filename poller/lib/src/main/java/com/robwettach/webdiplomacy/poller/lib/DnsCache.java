@@ -0,0 +1,27 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import java.security.Security;
+
+/**
+ * JVM-wide DNS caching shared by every poller entry point.
+ */
+public final class DnsCache {
+    // How long to cache successful DNS lookups, unless the JVM has been configured otherwise
+    private static final String TTL_PROPERTY = "networkaddress.cache.ttl";
+    private static final String TTL_SECONDS = "300";
+
+    private DnsCache() {
+    }
+
+    /**
+     * Cache DNS lookups for longer than the JDK's default of 30 seconds, which is shorter than most poll intervals.
+     *
+     * <p>A JVM-wide setting, which only takes effect if made before the first lookup, so entry points call this first
+     * thing.  Left alone if it has been set in {@code java.security}.
+     */
+    public static void configure() {
+        if (Security.getProperty(TTL_PROPERTY) == null) {
+            Security.setProperty(TTL_PROPERTY, TTL_SECONDS);
+        }
+    }
+}
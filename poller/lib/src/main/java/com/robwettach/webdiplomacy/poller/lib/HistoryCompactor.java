@@ -0,0 +1,223 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.DatePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Thins out the history of games in a {@link HistoryStore}, and removes finished games once they're old enough.
+ *
+ * <ul>
+ *     <li>Every snapshot of a game's most recent {@code fullResolutionPhases} {@link DatePhase phases} is kept.</li>
+ *     <li>Older phases are collapsed to their first and last snapshots, plus any snapshot at which the game's status
+ *         changed: it was paused, un-paused or finished, a country changed hands, was defeated or finished the game,
+ *         or a vote was cast or withdrawn.  Countries moving between the order statuses
+ *         ({@link CountryStatus#NotReceived NotReceived}, {@link CountryStatus#Completed Completed},
+ *         {@link CountryStatus#Ready Ready}, ...) are what make up most snapshots, and those points are dropped.</li>
+ *     <li>Finished games whose latest snapshot is more than {@code finishedRetention} old are copied to an archive
+ *         {@link HistoryStore}, if there is one, and then deleted.</li>
+ * </ul>
+ *
+ * <p>Safe to run alongside pollers adding to the same store, as long as the store's
+ * {@link HistoryStore#replaceSnapshotsUntil(int, ZonedDateTime, List)} is: only snapshots from phases that are already
+ * over are replaced.
+ */
+public class HistoryCompactor {
+    private static final Logger LOG = LogManager.getLogger(HistoryCompactor.class);
+
+    public static final int DEFAULT_FULL_RESOLUTION_PHASES = 2;
+    public static final Duration DEFAULT_FINISHED_RETENTION = Duration.ofDays(30);
+
+    private final HistoryStore history;
+    @Nullable
+    private final HistoryStore archive;
+    private final int fullResolutionPhases;
+    private final Duration finishedRetention;
+
+    /**
+     * Create a {@link HistoryCompactor}.
+     *
+     * @param history The {@link HistoryStore} to compact
+     * @param archive The {@link HistoryStore} to copy finished games to before deleting them, or {@code null} to just
+     *                delete them
+     * @param fullResolutionPhases The number of most recent phases of each game to keep every snapshot of
+     * @param finishedRetention How long to keep finished games after their latest snapshot
+     */
+    public HistoryCompactor(
+            HistoryStore history,
+            @Nullable HistoryStore archive,
+            int fullResolutionPhases,
+            Duration finishedRetention) {
+        checkNotNull(history, "history must not be null");
+        checkArgument(fullResolutionPhases > 0, "fullResolutionPhases must be positive");
+        checkArgument(!finishedRetention.isNegative(), "finishedRetention must not be negative");
+        this.history = history;
+        this.archive = archive;
+        this.fullResolutionPhases = fullResolutionPhases;
+        this.finishedRetention = finishedRetention;
+    }
+
+    /**
+     * Compact every game in the store, as of now.
+     */
+    public void compactAll() {
+        compactAll(ZonedDateTime.now(ZoneOffset.UTC));
+    }
+
+    /**
+     * Compact every game in the store, as of {@code now}.
+     *
+     * <p>A failure to compact one game is logged, and doesn't stop the others being compacted.
+     *
+     * @param now The time against which to judge the age of finished games
+     */
+    public void compactAll(ZonedDateTime now) {
+        Set<Integer> gameIds = history.getGameIds();
+        LOG.info("Compacting history of {} games", gameIds.size());
+        for (int gameId : gameIds) {
+            try {
+                compact(gameId, now);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to compact history of game {}", gameId, e);
+            }
+        }
+    }
+
+    /**
+     * Compact a single game, as of {@code now}.
+     *
+     * @param gameId The Id of the game to compact
+     * @param now The time against which to judge the age of a finished game
+     */
+    public void compact(int gameId, ZonedDateTime now) {
+        Optional<Snapshot> latest = history.getLatestSnapshotForGame(gameId);
+        if (latest.isEmpty()) {
+            return;
+        }
+        if (latest.get().getState().isFinished()
+                && latest.get().getTime().plus(finishedRetention).isBefore(now)) {
+            retire(gameId, latest.get());
+            return;
+        }
+
+        List<Snapshot> snapshots = history.getSnapshotsForGame(gameId);
+        int olderCount = countOlderPhases(snapshots);
+        if (olderCount == 0) {
+            return;
+        }
+        List<Snapshot> kept = collapse(snapshots.subList(0, olderCount));
+        if (kept.size() == olderCount) {
+            return;
+        }
+        history.replaceSnapshotsUntil(gameId, snapshots.get(olderCount - 1).getTime(), kept);
+        LOG.info("Compacted {} snapshots of game {} down to {}", olderCount, gameId, kept.size());
+    }
+
+    private void retire(int gameId, Snapshot latest) {
+        if (archive != null) {
+            archive.replaceSnapshotsUntil(gameId, latest.getTime(), mergeWithArchived(gameId));
+            archive.flush();
+            LOG.info("Archived finished game {}", gameId);
+        }
+        history.deleteGame(gameId);
+        LOG.info("Deleted finished game {}, last seen at {}", gameId, latest.getTime());
+    }
+
+    /**
+     * Add a game's live snapshots to any it already has archived, e.g. from being retired before and then polled again,
+     * so that the archived history only ever grows.  Where they overlap, the live snapshots win.
+     */
+    private List<Snapshot> mergeWithArchived(int gameId) {
+        List<Snapshot> live = history.getSnapshotsForGame(gameId);
+        if (live.isEmpty()) {
+            return live;
+        }
+        ZonedDateTime firstLive = live.get(0).getTime();
+        List<Snapshot> merged = new ArrayList<>();
+        archive.getSnapshotsForGame(gameId).stream()
+                .filter(s -> s.getTime().isBefore(firstLive))
+                .forEach(merged::add);
+        merged.addAll(live);
+        return merged;
+    }
+
+    /**
+     * Count the snapshots before the most recent {@code fullResolutionPhases} runs of snapshots in the same phase.
+     */
+    private int countOlderPhases(List<Snapshot> snapshots) {
+        int phases = 0;
+        DatePhase phase = null;
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            DatePhase current = snapshots.get(i).getState().getDatePhase();
+            if (!current.equals(phase)) {
+                phase = current;
+                phases++;
+                if (phases > fullResolutionPhases) {
+                    return i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Keep the first and last snapshot of each phase, and every snapshot at which the game's status changed.
+     */
+    private static List<Snapshot> collapse(List<Snapshot> snapshots) {
+        List<Snapshot> kept = new ArrayList<>();
+        for (int i = 0; i < snapshots.size(); i++) {
+            GameState state = snapshots.get(i).getState();
+            boolean first = i == 0 || !snapshots.get(i - 1).getState().getDatePhase().equals(state.getDatePhase());
+            boolean last = i == snapshots.size() - 1
+                    || !snapshots.get(i + 1).getState().getDatePhase().equals(state.getDatePhase());
+            if (first || last || !statusOf(snapshots.get(i - 1).getState()).equals(statusOf(state))) {
+                kept.add(snapshots.get(i));
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Everything about a game's state that counts as a change in its status, so just has to be compared for equality.
+     */
+    private static List<Object> statusOf(GameState state) {
+        return ImmutableList.of(
+                state.isPaused(),
+                state.isFinished(),
+                state.getCountries().stream()
+                        .map(c -> ImmutableList.of(c.getCountryName(), c.getUser(), playingStatus(c), c.getVotes()))
+                        .collect(toImmutableSet()));
+    }
+
+    /**
+     * A country's status, with all of the order statuses, which change several times a phase, treated as one.
+     */
+    private static Object playingStatus(CountryState country) {
+        switch (country.getStatus()) {
+            case NoOrders:
+            case NotReceived:
+            case Completed:
+            case Ready:
+                return "playing";
+            default:
+                return country.getStatus();
+        }
+    }
+}
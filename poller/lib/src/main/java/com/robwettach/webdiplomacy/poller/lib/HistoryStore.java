@@ -1,11 +1,19 @@
 package com.robwettach.webdiplomacy.poller.lib;
 
+import static java.util.stream.Collectors.toList;
+
 import com.robwettach.webdiplomacy.diff.Snapshot;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Interface defining interactions with a history store tracking {@link Snapshot}s of a <em>webDiplomacy</em> game.
+ *
+ * <p>Snapshots are expected to be added to each game in time order, as every poller does, and range queries rely on
+ * that to stop reading once they pass the end of the range.
  */
 public interface HistoryStore {
     /**
@@ -17,6 +25,47 @@ public interface HistoryStore {
      */
     List<Snapshot> getSnapshotsForGame(int gameId);
 
+    /**
+     * Get the snapshots for a given game taken within a range of times.
+     *
+     * @param gameId The ID of the game for which to retrieve snapshots
+     * @param from The earliest time to include
+     * @param to The latest time to include
+     * @return The {@link List} of snapshots taken between {@code from} and {@code to}, inclusive, in time order.
+     *         Not-{@code null}.  If no {@link Snapshot}s are found, an empty {@link List} is returned.
+     * @throws IllegalArgumentException if {@code to} is before {@code from}
+     */
+    default List<Snapshot> getSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        try (Stream<Snapshot> snapshots = streamSnapshotsBetween(gameId, from, to)) {
+            return snapshots.collect(toList());
+        }
+    }
+
+    /**
+     * Lazily stream the snapshots for a given game taken within a range of times.
+     *
+     * <p>Snapshots are only read as the {@link Stream} is consumed, so a long range can be processed without holding
+     * all of it in memory, and a short-circuiting operation stops reading early.  The {@link Stream} may hold open
+     * resources, so should be closed once done with, e.g. with a try-with-resources statement.
+     *
+     * @param gameId The ID of the game for which to retrieve snapshots
+     * @param from The earliest time to include
+     * @param to The latest time to include
+     * @return A {@link Stream} of the snapshots taken between {@code from} and {@code to}, inclusive, in time order
+     * @throws IllegalArgumentException if {@code to} is before {@code from}
+     */
+    Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to);
+
+    /**
+     * Get the snapshot for a given game that was current at a point in time.
+     *
+     * @param gameId The ID of the game for which to retrieve a snapshot
+     * @param time The point in time
+     * @return An {@link Optional} containing the latest {@link Snapshot} taken at or before {@code time}, if any.
+     *         Else, {@link Optional#empty()}.
+     */
+    Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time);
+
     /**
      * Get the most recent snapshot for a given game.
      *
@@ -33,4 +82,40 @@ public interface HistoryStore {
      * @param snapshot The {@link Snapshot} to add
      */
     void addSnapshot(int gameId, Snapshot snapshot);
+
+    /**
+     * Get the IDs of every game with history in this store.
+     *
+     * @return The IDs of every game with at least one {@link Snapshot}
+     */
+    Set<Integer> getGameIds();
+
+    /**
+     * Replace the history of a given game up to a point in time, keeping everything after it.
+     *
+     * <p>Used to compact history, so {@code snapshots} are expected to be a subset of the existing ones.  Snapshots
+     * added concurrently are kept, as long as they're after {@code until}.
+     *
+     * @param gameId The ID of the game for which to replace snapshots
+     * @param until The time up to which (inclusive) to replace the existing snapshots
+     * @param snapshots The snapshots to replace them with, in time order, none after {@code until}
+     * @throws IllegalArgumentException if any of {@code snapshots} is after {@code until}
+     */
+    void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots);
+
+    /**
+     * Delete the entire history of a given game.
+     *
+     * @param gameId The ID of the game to delete
+     */
+    void deleteGame(int gameId);
+
+    /**
+     * Make sure every {@link Snapshot} added so far has been written out, as durably as the store promises.
+     *
+     * <p>Stores that write each snapshot out before {@link #addSnapshot(int, Snapshot)} returns have nothing to do,
+     * which is the default.
+     */
+    default void flush() {
+    }
 }
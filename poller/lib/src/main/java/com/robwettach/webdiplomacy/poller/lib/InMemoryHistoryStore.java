@@ -0,0 +1,92 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * {@link HistoryStore} that only keeps history in memory, e.g. for tests, or for a poller that doesn't need its
+ * history to outlive it.
+ *
+ * <p>Each game's snapshots are kept sorted by time, so range and point-in-time queries only visit the snapshots they
+ * return.  A snapshot added at exactly the same instant as an existing one replaces it.
+ *
+ * <p>Safe to share between pollers running on different threads.
+ */
+public class InMemoryHistoryStore implements HistoryStore {
+    private final Map<Integer, NavigableMap<Instant, Snapshot>> games = new ConcurrentHashMap<>();
+
+    @Override
+    public ImmutableList<Snapshot> getSnapshotsForGame(int gameId) {
+        return ImmutableList.copyOf(game(gameId).values());
+    }
+
+    @Override
+    public Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        checkArgument(!to.isBefore(from), "to must not be before from");
+        return game(gameId).subMap(from.toInstant(), true, to.toInstant(), true).values().stream();
+    }
+
+    @Override
+    public Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        return Optional.ofNullable(game(gameId).floorEntry(time.toInstant())).map(Map.Entry::getValue);
+    }
+
+    @Override
+    public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
+        return Optional.ofNullable(game(gameId).lastEntry()).map(Map.Entry::getValue);
+    }
+
+    @Override
+    public void addSnapshot(int gameId, Snapshot snapshot) {
+        checkNotNull(snapshot, "snapshot must not be null");
+        games.computeIfAbsent(gameId, (x) -> new ConcurrentSkipListMap<>())
+                .put(snapshot.getTime().toInstant(), snapshot);
+    }
+
+    @Override
+    public ImmutableSet<Integer> getGameIds() {
+        return games.entrySet().stream()
+                .filter(e -> !e.getValue().isEmpty())
+                .map(Map.Entry::getKey)
+                .collect(toImmutableSet());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Not atomic: a concurrent read may see some of the existing snapshots removed before the replacements are
+     * added.
+     */
+    @Override
+    public void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        checkArgument(
+                snapshots.stream().noneMatch(s -> s.getTime().isAfter(until)),
+                "snapshots must not be after until");
+        NavigableMap<Instant, Snapshot> game = games.computeIfAbsent(gameId, (x) -> new ConcurrentSkipListMap<>());
+        game.headMap(until.toInstant(), true).clear();
+        snapshots.forEach(s -> game.put(s.getTime().toInstant(), s));
+    }
+
+    @Override
+    public void deleteGame(int gameId) {
+        games.remove(gameId);
+    }
+
+    private NavigableMap<Instant, Snapshot> game(int gameId) {
+        return games.getOrDefault(gameId, new ConcurrentSkipListMap<>());
+    }
+}
@@ -0,0 +1,113 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.robwettach.webdiplomacy.notify.Notifier;
+import com.robwettach.webdiplomacy.page.GameListingsPage;
+import com.robwettach.webdiplomacy.page.GamePanel;
+import com.robwettach.webdiplomacy.page.PageFetcher;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link PollTask} that keeps every game in a user's "My games" list up to date from a single request.
+ *
+ * <p>Each poll loads the {@link GameListingsPage} once, and updates each listed game from its {@link GamePanel}.
+ * Only games whose panel lacks the members table fall back to loading their own game board.
+ *
+ * <p>Keeps being polled even once every listed game is finished, as often as a paused game, so that games the user
+ * joins later are still picked up.
+ */
+public class ListingPoller implements PollTask {
+    private static final Logger LOG = LogManager.getLogger(ListingPoller.class);
+    private static final Duration IDLE_DELAY = DeadlineAwarePollPolicy.DEFAULT_PAUSED_INTERVAL;
+
+    private final CookieProvider cookieProvider;
+    private final HistoryStore history;
+    private final Notifier notifier;
+    private final PageFetcher fetcher;
+    private final Map<Integer, Poller> pollers = new ConcurrentHashMap<>();
+
+    /**
+     * Create a {@link ListingPoller} for the user authenticated by {@code cookieProvider}.
+     *
+     * @param cookieProvider The {@link CookieProvider} authenticating the user whose games to poll
+     * @param history The {@link HistoryStore} to store and retrieve history to/from
+     * @param notifier The {@link Notifier} to send notifications to
+     */
+    public ListingPoller(CookieProvider cookieProvider, HistoryStore history, Notifier notifier) {
+        this(cookieProvider, history, notifier, PageFetcher.getDefault());
+    }
+
+    /**
+     * Create a {@link ListingPoller} for the user authenticated by {@code cookieProvider}, loading pages with a given
+     * {@link PageFetcher}.
+     *
+     * @param cookieProvider The {@link CookieProvider} authenticating the user whose games to poll
+     * @param history The {@link HistoryStore} to store and retrieve history to/from
+     * @param notifier The {@link Notifier} to send notifications to
+     * @param fetcher The {@link PageFetcher} to load pages with
+     */
+    public ListingPoller(CookieProvider cookieProvider, HistoryStore history, Notifier notifier, PageFetcher fetcher) {
+        checkNotNull(cookieProvider, "cookieProvider must not be null");
+        checkNotNull(history, "history must not be null");
+        checkNotNull(notifier, "notifier must not be null");
+        checkNotNull(fetcher, "fetcher must not be null");
+        this.cookieProvider = cookieProvider;
+        this.history = history;
+        this.notifier = notifier;
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public String getName() {
+        return "game listings";
+    }
+
+    @Override
+    public List<Integer> getGameIds() {
+        return ImmutableList.copyOf(pollers.keySet());
+    }
+
+    @Override
+    public Optional<Duration> getIdleDelay() {
+        return Optional.of(IDLE_DELAY);
+    }
+
+    /**
+     * Load the user's game listings, then send notifications and update the history of every listed game.
+     */
+    @Override
+    public void poll() {
+        LOG.debug("Polling for changes to listed games");
+        Map<String, String> cookies = verifyNotNull(cookieProvider.getCookies(), "Failed to get cookies");
+        GameListingsPage page;
+        try {
+            page = GameListingsPage.load(fetcher, cookies);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load webDiplomacy game listings page", e);
+        }
+        LOG.info("Found {} listed games", page.getGamePanels().size());
+
+        for (GamePanel panel : page.getGamePanels().values()) {
+            Poller poller = pollers.computeIfAbsent(panel.getId(), id -> new Poller(id, history, notifier, fetcher));
+            try {
+                poller.update(panel);
+            } catch (RuntimeException e) {
+                // Keep updating the other games rather than losing the whole listing
+                LOG.error("Failed to update game {}", panel.getId(), e);
+            }
+        }
+        // Stop tracking games that have left the listing
+        pollers.keySet().retainAll(page.getGamePanels().keySet());
+    }
+}
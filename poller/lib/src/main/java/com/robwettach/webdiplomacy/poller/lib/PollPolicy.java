@@ -0,0 +1,35 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Simple interface for deciding when a game should next be polled.
+ */
+public interface PollPolicy {
+    /**
+     * Decide how long to wait before polling a game again.
+     *
+     * @param latest The most recent {@link Snapshot} of the game, if any
+     * @param now The current time
+     * @return An {@link Optional} containing the delay before the next poll.  {@link Optional#empty()} if the game no
+     *         longer needs to be polled at all.
+     */
+    Optional<Duration> nextPollDelay(Optional<Snapshot> latest, ZonedDateTime now);
+
+    /**
+     * Get a {@link PollPolicy} that always polls at the same {@code interval}.
+     *
+     * @param interval The delay between polls
+     * @return A fixed-rate {@link PollPolicy}
+     */
+    static PollPolicy fixed(Duration interval) {
+        checkArgument(!interval.isNegative() && !interval.isZero(), "interval must be positive");
+        Optional<Duration> delay = Optional.of(interval);
+        return (latest, now) -> delay;
+    }
+}
@@ -0,0 +1,43 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Something that can be polled repeatedly to keep the history of one or more <em>webDiplomacy</em> games up to date.
+ */
+public interface PollTask {
+    /**
+     * Get a short description of this task, for logging.
+     *
+     * @return A description, e.g. {@code game 1234}
+     */
+    String getName();
+
+    /**
+     * Get the IDs of the games kept up to date by this task.
+     *
+     * <p>The task is next polled as soon as any of these games needs polling.
+     *
+     * @return The IDs of the games polled by this task.  Not-{@code null}, but may be empty before the first poll.
+     */
+    List<Integer> getGameIds();
+
+    /**
+     * Get how long to wait between polls once none of this task's games need polling any more.
+     *
+     * <p>By default such a task stops being polled.  A task that can pick up new games, e.g. from a game listing,
+     * should keep being polled, however long it might be until one turns up.
+     *
+     * @return The delay between idle polls, or {@link Optional#empty()} to stop polling
+     */
+    default Optional<Duration> getIdleDelay() {
+        return Optional.empty();
+    }
+
+    /**
+     * Poll once, sending notifications and updating the history of each game.
+     */
+    void poll();
+}
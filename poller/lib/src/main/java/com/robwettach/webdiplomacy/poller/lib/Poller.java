@@ -1,11 +1,13 @@
 package com.robwettach.webdiplomacy.poller.lib;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import com.robwettach.webdiplomacy.diff.Diff;
 import com.robwettach.webdiplomacy.diff.DiffCheckers;
 import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.diff.SnapshotIndex;
 import com.robwettach.webdiplomacy.model.CountryState;
 import com.robwettach.webdiplomacy.model.CountryStatus;
 import com.robwettach.webdiplomacy.model.GameDate;
@@ -16,8 +18,12 @@ import com.robwettach.webdiplomacy.model.Vote;
 import com.robwettach.webdiplomacy.notify.Notifier;
 import com.robwettach.webdiplomacy.page.CountryUserLink;
 import com.robwettach.webdiplomacy.page.GameBoardPage;
+import com.robwettach.webdiplomacy.page.GamePanel;
 import com.robwettach.webdiplomacy.page.GameTitleBar;
 import com.robwettach.webdiplomacy.page.MemberRow;
+import com.robwettach.webdiplomacy.page.MembersTable;
+import com.robwettach.webdiplomacy.page.PageFetcher;
+import com.robwettach.webdiplomacy.page.PageValidators;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.time.ZoneOffset;
@@ -25,18 +31,24 @@ import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Main entrypoint for webDiplomacy Poller applications.
  */
-public class Poller {
+public class Poller implements PollTask {
     private static final Logger LOG = LogManager.getLogger(Poller.class);
 
     private final int gameId;
     private final HistoryStore history;
     private final Notifier notifier;
+    private final PageFetcher fetcher;
+    private final PageValidators validators = new PageValidators();
+    // The index of the last snapshot stored, so that it needn't be built again when it's next the previous snapshot
+    @Nullable
+    private SnapshotIndex latestIndex;
 
     /**
      * Create a {@link Poller} for a given game.
@@ -46,46 +58,151 @@ public class Poller {
      * @param notifier The {@link Notifier} to send notifications to
      */
     public Poller(int gameId, HistoryStore history, Notifier notifier) {
+        this(gameId, history, notifier, PageFetcher.getDefault());
+    }
+
+    /**
+     * Create a {@link Poller} for a given game, loading its game board with a given {@link PageFetcher}.
+     *
+     * @param gameId The ID of the game to poll
+     * @param history The {@link HistoryStore} to store and retrieve history to/from
+     * @param notifier The {@link Notifier} to send notifications to
+     * @param fetcher The {@link PageFetcher} to load the game board with
+     */
+    public Poller(int gameId, HistoryStore history, Notifier notifier, PageFetcher fetcher) {
         this.gameId = gameId;
         this.history = history;
         this.notifier = notifier;
+        this.fetcher = fetcher;
+    }
+
+    public int getGameId() {
+        return gameId;
+    }
+
+    @Override
+    public String getName() {
+        return "game " + gameId;
+    }
+
+    @Override
+    public List<Integer> getGameIds() {
+        return Collections.singletonList(gameId);
     }
 
     /**
      * Poll the current status of a <em>webDiplomacy</em> game, send notifications, and update the history.
+     *
+     * <p>The game board is requested conditionally, and fingerprinted before it is parsed, so if it hasn't changed
+     * since the last poll it is neither parsed, diffed nor stored again.  Only the time-based checks are run.
      */
+    @Override
     public void poll() {
         LOG.debug("Polling for changes to game {}", gameId);
-        GameBoardPage page;
+        Optional<GameBoardPage> page;
         try {
-            page = GameBoardPage.loadGame(gameId);
+            page = GameBoardPage.loadGameIfModified(fetcher, gameId, validators);
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to load webDiplomacy game board page for game: " + gameId, e);
         }
+        update(page.map(p -> stateFromPage(gameId, p.getTitleBar(), p.getMembersTable())));
+    }
 
-        GameState state = stateFromPage(gameId, page);
+    /**
+     * Update the game from its panel on a {@link com.robwettach.webdiplomacy.page.GameListingsPage GameListingsPage},
+     * send notifications, and update the history.
+     *
+     * <p>Falls back to {@link #poll()}ing the game board if the panel doesn't include the game's members table.
+     *
+     * @param panel The game's {@link GamePanel}
+     */
+    public void update(GamePanel panel) {
+        checkArgument(panel.getId() == gameId, "Panel for game %s can't update game %s", panel.getId(), gameId);
+        GameTitleBar titleBar = panel.getTitleBar();
+        if (panel.getMembersTable().isEmpty() && GamePhase.fromString(titleBar.getPhase()) != GamePhase.PreGame) {
+            LOG.debug("Panel for game {} has no members table, loading the game board instead", gameId);
+            poll();
+            return;
+        }
+        // The latest snapshot no longer comes from the game board, so it has to be read in full next time
+        validators.clear();
+        update(Optional.of(stateFromPage(gameId, titleBar, panel.getMembersTable())));
+    }
 
+    /**
+     * Compare the game's latest state against its history, send notifications, and store the state if it changed.
+     *
+     * @param state The game's latest {@link GameState}, or {@link Optional#empty()} if it is known to be unchanged
+     */
+    private void update(Optional<GameState> state) {
         ZonedDateTime snapshotDate = ZonedDateTime.now(ZoneOffset.UTC);
-        Snapshot current = Snapshot.create(snapshotDate, state);
+        Optional<Snapshot> previous;
+        try {
+            previous = history.getLatestSnapshotForGame(gameId);
+        } catch (RuntimeException e) {
+            // Nothing from this page gets stored, so as below, the validators mustn't short-circuit the next poll
+            validators.clear();
+            throw e;
+        }
+        if (state.isEmpty()) {
+            if (previous.isPresent()) {
+                // The state can't have changed, but time has passed, so only time-based diffs (e.g. "one hour
+                // remaining") can come up.  There's nothing new to store.
+                List<Diff> diffs = DiffCheckers.checkUnchanged(previous.get(), snapshotDate);
+                LOG.info("Game {} unchanged, found {} diffs at {}", gameId, diffs.size(), snapshotDate);
+                notifier.notify(diffs);
+            } else {
+                // Nothing was stored for the last full response, so make sure the next poll fetches it again
+                LOG.warn("Game {} reported as unchanged, but has no history", gameId);
+                validators.clear();
+            }
+            return;
+        }
+
+        Snapshot current = Snapshot.create(snapshotDate, state.get());
+        SnapshotIndex currentIndex = SnapshotIndex.of(current);
 
-        Optional<Snapshot> previous = history.getLatestSnapshotForGame(gameId);
-        List<Diff> diffs = previous.map(p -> DiffCheckers.check(p, current)).orElse(Collections.emptyList());
+        List<Diff> diffs = previous.map(p -> DiffCheckers.check(indexOf(p), currentIndex))
+                .orElse(Collections.emptyList());
         LOG.info("Found {} diffs at {} for game {}", diffs.size(), snapshotDate, gameId);
-        notifier.notify(diffs);
 
         // Diffs imply a change, and a change implies diffs, but it's not necessarily 1-to-1
         // We track more pieces of state than we notify about (SC/unit count, etc), and we want to notify
         // even if there's no state change, specifically for the "one hour remaining" case.
+        // The snapshot is stored before notifying, so that a store writing in the background does so while the
+        // notifications are sent, but failing to store it mustn't stop them being sent.
+        RuntimeException storeFailure = null;
         if (previous.isEmpty() || !previous.get().getState().equals(current.getState())) {
-            history.addSnapshot(gameId, current);
+            try {
+                history.addSnapshot(gameId, current);
+                latestIndex = currentIndex;
+            } catch (RuntimeException e) {
+                // The validators now describe a page that was never stored, so they mustn't short-circuit the next poll
+                validators.clear();
+                storeFailure = e;
+            }
+        }
+        notifier.notify(diffs);
+        if (storeFailure != null) {
+            throw storeFailure;
+        }
+    }
+
+    private SnapshotIndex indexOf(Snapshot snapshot) {
+        // History stores mostly hand back the instance they were given, unless something else has written since
+        if (latestIndex == null || latestIndex.getSnapshot() != snapshot) {
+            latestIndex = SnapshotIndex.of(snapshot);
         }
+        return latestIndex;
     }
 
-    private static GameState stateFromPage(int gameId, GameBoardPage page) {
+    private static GameState stateFromPage(
+            int gameId,
+            GameTitleBar titleBar,
+            Optional<MembersTable> membersTable) {
         GameState.Builder builder = GameState.builder()
                 .id(gameId);
 
-        GameTitleBar titleBar = page.getTitleBar();
         builder.name(titleBar.getName())
                 .date(GameDate.parse(titleBar.getDate()))
                 .phase(GamePhase.fromString(titleBar.getPhase()))
@@ -93,7 +210,7 @@ public class Poller {
                 .finished(titleBar.isFinished())
                 .nextTurnAt(titleBar.getNextTurnAt().orElse(null));
 
-        builder.countries(page.getMembersTable()
+        builder.countries(membersTable
                 .stream()
                 .flatMap(t -> t.getRows().stream())
                 .map(Poller::countryFromRow)
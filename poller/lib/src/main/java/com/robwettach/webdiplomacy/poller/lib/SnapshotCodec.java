@@ -0,0 +1,425 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.model.ValueInterner;
+import com.robwettach.webdiplomacy.model.Vote;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Compact binary encoding of {@link Snapshot}s and {@link GameState}s, typically a third of the size of their JSON.
+ *
+ * <p>An encoding starts with a format version byte and a flags byte.  The rest is a string table followed by the
+ * fields themselves, optionally compressed together with Deflate.  Numbers are written as varints, enums as their
+ * ordinals, and times as epoch seconds and nanos plus a zone ID.  Every string (game, country, user and zone names) is
+ * written as a reference to either the string table, where each distinct string appears once, or a built-in dictionary
+ * of the most common ones.
+ *
+ * <p>Decoded strings, users and countries are {@link ValueInterner interned}, so a history of decoded snapshots shares
+ * a single instance of each distinct value.
+ *
+ * <p>Existing encodings stay readable as long as enum constants and dictionary entries are only ever appended.  Any
+ * other change to the layout must bump {@link #FORMAT_VERSION}.
+ *
+ * <p>Safe to share between threads.
+ */
+public class SnapshotCodec {
+    /**
+     * Whether to compress encodings.
+     */
+    public enum Compression {
+        /**
+         * Never compress.
+         */
+        NONE,
+        /**
+         * Compress with Deflate, whenever that makes the encoding smaller.
+         */
+        DEFLATE
+    }
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FLAG_DEFLATED = 0x01;
+    private static final int FLAG_SNAPSHOT = 0x02;
+
+    private static final int STATE_PAUSED = 0x01;
+    private static final int STATE_FINISHED = 0x02;
+    private static final int STATE_NEXT_TURN_AT = 0x04;
+    private static final int COUNTRY_CURRENT_USER = 0x01;
+    private static final int COUNTRY_MESSAGE_UNREAD = 0x02;
+
+    // Append-only: references to these are stored by index
+    private static final ImmutableList<String> DICTIONARY = ImmutableList.of(
+            "Z",
+            "UTC",
+            "England",
+            "France",
+            "Italy",
+            "Germany",
+            "Austria",
+            "Turkey",
+            "Russia");
+    private static final ImmutableMap<String, Integer> DICTIONARY_INDEX = IntStream.range(0, DICTIONARY.size())
+            .boxed()
+            .collect(ImmutableMap.toImmutableMap(DICTIONARY::get, i -> i));
+
+    private final Compression compression;
+
+    private SnapshotCodec(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Create a {@link SnapshotCodec} instance.
+     *
+     * @param compression Whether to compress encodings
+     * @return The new {@link SnapshotCodec}
+     */
+    public static SnapshotCodec create(Compression compression) {
+        checkNotNull(compression, "compression must not be null");
+        return new SnapshotCodec(compression);
+    }
+
+    /**
+     * Encode a {@link Snapshot}.
+     *
+     * @param snapshot The {@link Snapshot} to encode
+     * @return The encoded {@code snapshot}
+     */
+    public byte[] encode(Snapshot snapshot) {
+        Writer writer = new Writer();
+        writer.time(snapshot.getTime());
+        writer.state(snapshot.getState());
+        return writer.finish(FLAG_SNAPSHOT);
+    }
+
+    /**
+     * Encode a {@link GameState}.
+     *
+     * @param state The {@link GameState} to encode
+     * @return The encoded {@code state}
+     */
+    public byte[] encode(GameState state) {
+        Writer writer = new Writer();
+        writer.state(state);
+        return writer.finish(0);
+    }
+
+    /**
+     * Decode a {@link Snapshot} from the output of {@link #encode(Snapshot)}, whatever its compression.
+     *
+     * @param bytes The encoded {@link Snapshot}
+     * @return The decoded {@link Snapshot}
+     * @throws IOException if {@code bytes} is not an encoded {@link Snapshot}
+     */
+    public static Snapshot decodeSnapshot(byte[] bytes) throws IOException {
+        Reader reader = Reader.open(bytes, true);
+        try {
+            return Snapshot.create(reader.time(), reader.state());
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Truncated snapshot");
+        }
+    }
+
+    /**
+     * Decode a {@link GameState} from the output of {@link #encode(GameState)}, whatever its compression.
+     *
+     * @param bytes The encoded {@link GameState}
+     * @return The decoded {@link GameState}
+     * @throws IOException if {@code bytes} is not an encoded {@link GameState}
+     */
+    public static GameState decodeState(byte[] bytes) throws IOException {
+        Reader reader = Reader.open(bytes, false);
+        try {
+            return reader.state();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Truncated game state");
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(E[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("Unknown " + values.getClass().getComponentType().getSimpleName() + ": " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private class Writer {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+
+        void time(ZonedDateTime time) {
+            zigzag(fields, time.toEpochSecond());
+            varint(fields, time.getNano());
+            string(time.getZone().getId());
+        }
+
+        void state(GameState state) {
+            string(state.getName());
+            varint(fields, state.getId());
+            varint(fields, state.getDate().getSeason().ordinal());
+            zigzag(fields, state.getDate().getYear());
+            varint(fields, state.getPhase().ordinal());
+            int flags = (state.isPaused() ? STATE_PAUSED : 0)
+                    | (state.isFinished() ? STATE_FINISHED : 0)
+                    | (state.getNextTurnAt().isPresent() ? STATE_NEXT_TURN_AT : 0);
+            varint(fields, flags);
+            state.getNextTurnAt().ifPresent(this::time);
+            varint(fields, state.getCountries().size());
+            state.getCountries().forEach(this::country);
+        }
+
+        void country(CountryState country) {
+            string(country.getCountryName());
+            string(country.getUser().getName());
+            varint(fields, country.getUser().getId());
+            varint(fields, (country.isCurrentUser() ? COUNTRY_CURRENT_USER : 0)
+                    | (country.isMessageUnread() ? COUNTRY_MESSAGE_UNREAD : 0));
+            varint(fields, country.getStatus().ordinal());
+            varint(fields, country.getSupplyCenterCount());
+            varint(fields, country.getUnitCount());
+            int votes = 0;
+            for (Vote vote : country.getVotes()) {
+                votes |= 1 << vote.ordinal();
+            }
+            varint(fields, votes);
+        }
+
+        /**
+         * Write a reference to {@code value}: a non-negative index into the string table, or a negative one into the
+         * built-in dictionary.
+         */
+        void string(String value) {
+            Integer dictionaryIndex = DICTIONARY_INDEX.get(value);
+            if (dictionaryIndex != null) {
+                zigzag(fields, -1 - dictionaryIndex);
+            } else {
+                zigzag(fields, strings.computeIfAbsent(value, (x) -> strings.size()));
+            }
+        }
+
+        byte[] finish(int kindFlag) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            varint(payload, strings.size());
+            for (String value : strings.keySet()) {
+                byte[] utf8 = value.getBytes(UTF_8);
+                varint(payload, utf8.length);
+                payload.writeBytes(utf8);
+            }
+            payload.writeBytes(fields.toByteArray());
+
+            int flags = kindFlag;
+            byte[] body = payload.toByteArray();
+            if (compression == Compression.DEFLATE) {
+                byte[] deflated = deflate(body);
+                if (deflated.length < body.length) {
+                    flags |= FLAG_DEFLATED;
+                    body = deflated;
+                }
+            }
+            byte[] encoded = new byte[2 + body.length];
+            encoded[0] = FORMAT_VERSION;
+            encoded[1] = (byte) flags;
+            System.arraycopy(body, 0, encoded, 2, body.length);
+            return encoded;
+        }
+
+        private byte[] deflate(byte[] body) {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+                out.write(body);
+            } catch (IOException e) {
+                // Can't happen when writing to memory
+                throw new UncheckedIOException(e);
+            }
+            return deflated.toByteArray();
+        }
+
+        private void varint(ByteArrayOutputStream out, long value) {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                out.write((int) (remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            out.write((int) remaining);
+        }
+
+        private void zigzag(ByteArrayOutputStream out, long value) {
+            varint(out, (value << 1) ^ (value >> 63));
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private final List<String> strings;
+
+        private Reader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            int count = intVarint();
+            this.strings = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int length = intVarint();
+                if (length > buffer.remaining()) {
+                    throw new EOFException("Truncated string table");
+                }
+                byte[] utf8 = new byte[length];
+                buffer.get(utf8);
+                // Shared with every other decoded snapshot, rather than each holding its own copy of every name
+                strings.add(ValueInterner.intern(new String(utf8, UTF_8)));
+            }
+        }
+
+        static Reader open(byte[] bytes, boolean snapshot) throws IOException {
+            if (bytes.length < 2) {
+                throw new EOFException("Missing header");
+            }
+            if (bytes[0] != FORMAT_VERSION) {
+                throw new IOException("Unsupported format version: " + bytes[0]);
+            }
+            if (((bytes[1] & FLAG_SNAPSHOT) != 0) != snapshot) {
+                throw new IOException(snapshot ? "Not an encoded snapshot" : "Not an encoded game state");
+            }
+            ByteBuffer body = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+            if ((bytes[1] & FLAG_DEFLATED) != 0) {
+                try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2))) {
+                    body = ByteBuffer.wrap(in.readAllBytes());
+                } catch (ZipException e) {
+                    throw new IOException("Corrupt compressed body", e);
+                }
+            }
+            try {
+                return new Reader(body);
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Truncated string table");
+            }
+        }
+
+        ZonedDateTime time() throws IOException {
+            long epochSecond = zigzag();
+            long nanos = varint();
+            String zone = string();
+            try {
+                return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nanos), ZoneId.of(zone));
+            } catch (DateTimeException e) {
+                throw new IOException("Invalid time", e);
+            }
+        }
+
+        GameState state() throws IOException {
+            GameState.Builder builder = GameState.builder()
+                    .name(string())
+                    .id(intVarint());
+            Season season = enumValue(Season.values(), intVarint());
+            long year = zigzag();
+            if (year < Integer.MIN_VALUE || year > Integer.MAX_VALUE) {
+                throw new IOException("Out of range year: " + year);
+            }
+            builder.date(GameDate.create(season, (int) year))
+                    .phase(enumValue(GamePhase.values(), intVarint()));
+            int flags = intVarint();
+            builder.paused((flags & STATE_PAUSED) != 0)
+                    .finished((flags & STATE_FINISHED) != 0);
+            if ((flags & STATE_NEXT_TURN_AT) != 0) {
+                builder.nextTurnAt(time());
+            }
+            int countries = intVarint();
+            for (int i = 0; i < countries; i++) {
+                builder.country(country());
+            }
+            return builder.build();
+        }
+
+        CountryState country() throws IOException {
+            CountryState.Builder builder = CountryState.builder()
+                    .countryName(string());
+            String userName = string();
+            builder.user(ValueInterner.intern(UserInfo.create(userName, intVarint())));
+            int flags = intVarint();
+            builder.currentUser((flags & COUNTRY_CURRENT_USER) != 0)
+                    .messageUnread((flags & COUNTRY_MESSAGE_UNREAD) != 0)
+                    .status(enumValue(CountryStatus.values(), intVarint()))
+                    .supplyCenterCount(intVarint())
+                    .unitCount(intVarint());
+            int voteBits = intVarint();
+            Set<Vote> votes = EnumSet.noneOf(Vote.class);
+            for (Vote vote : Vote.values()) {
+                if ((voteBits & (1 << vote.ordinal())) != 0) {
+                    votes.add(vote);
+                }
+            }
+            return ValueInterner.intern(builder.votes(ValueInterner.internVotes(votes)).build());
+        }
+
+        String string() throws IOException {
+            long index = zigzag();
+            if (index < 0) {
+                long dictionaryIndex = -1 - index;
+                if (dictionaryIndex >= DICTIONARY.size()) {
+                    throw new IOException("Unknown dictionary entry: " + dictionaryIndex);
+                }
+                return DICTIONARY.get((int) dictionaryIndex);
+            }
+            if (index >= strings.size()) {
+                throw new IOException("Unknown string: " + index);
+            }
+            return strings.get((int) index);
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int intVarint() throws IOException {
+            long value = varint();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        long zigzag() throws IOException {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
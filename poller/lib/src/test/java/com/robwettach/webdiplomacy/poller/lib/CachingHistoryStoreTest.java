@@ -0,0 +1,173 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Ticker;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CachingHistoryStoreTest {
+    private static final int GAME_ID = 1234;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private final CountingHistoryStore delegate = new CountingHistoryStore();
+    private final AtomicLong nanos = new AtomicLong();
+    private final CachingHistoryStore store = new CachingHistoryStore(delegate, 2, TTL, new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    });
+
+    @Test
+    void shouldServeAddedSnapshotFromCache() {
+        Snapshot snapshot = makeSnapshot(0);
+        store.addSnapshot(GAME_ID, snapshot);
+
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(snapshot)));
+        assertThat("Snapshot not written through", delegate.getSnapshotsForGame(GAME_ID), is(List.of(snapshot)));
+        assertThat("Unexpected reads of the underlying store", delegate.latestReads.get(), is(0));
+        assertThat("Unexpected hits", store.getStats().getHits(), is(1L));
+    }
+
+    @Test
+    void shouldLoadLatestSnapshotOnce() {
+        Snapshot snapshot = makeSnapshot(0);
+        delegate.addSnapshot(GAME_ID, snapshot);
+
+        store.getLatestSnapshotForGame(GAME_ID);
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(snapshot)));
+        assertThat("Unexpected latest snapshot of unknown game", store.getLatestSnapshotForGame(GAME_ID + 1),
+                is(emptyOptional()));
+        store.getLatestSnapshotForGame(GAME_ID + 1);
+
+        assertThat("Unexpected reads of the underlying store", delegate.latestReads.get(), is(2));
+        CachingHistoryStore.Stats stats = store.getStats();
+        assertThat("Unexpected hits", stats.getHits(), is(2L));
+        assertThat("Unexpected misses", stats.getMisses(), is(2L));
+        assertThat("Unexpected hit rate", stats.getHitRate(), is(0.5));
+    }
+
+    @Test
+    void shouldExpireCachedSnapshots() {
+        store.addSnapshot(GAME_ID, makeSnapshot(0));
+        nanos.addAndGet(TTL.plusSeconds(1).toNanos());
+        // Written by something else, e.g. another container
+        Snapshot next = makeSnapshot(1);
+        delegate.addSnapshot(GAME_ID, next);
+
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID), optionalWithValue(is(next)));
+        assertThat("Unexpected reads of the underlying store", delegate.latestReads.get(), is(1));
+    }
+
+    @Test
+    void shouldBoundCachedGames() {
+        store.addSnapshot(GAME_ID, makeSnapshot(0));
+        store.addSnapshot(GAME_ID + 1, makeSnapshot(0));
+        store.addSnapshot(GAME_ID + 2, makeSnapshot(0));
+
+        CachingHistoryStore.Stats stats = store.getStats();
+        assertThat("Unexpected cache size", stats.getSize(), is(lessThanOrEqualTo(2L)));
+        assertThat("Unexpected evictions", stats.getEvictions(), is(3L - stats.getSize()));
+    }
+
+    @Test
+    void shouldForgetSnapshotWhenWriteFails() {
+        Snapshot snapshot = makeSnapshot(0);
+        store.addSnapshot(GAME_ID, snapshot);
+
+        delegate.failWrites = true;
+        assertThrows(IllegalStateException.class, () -> store.addSnapshot(GAME_ID, makeSnapshot(1)));
+
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(snapshot)));
+        assertThat("Unexpected reads of the underlying store", delegate.latestReads.get(), is(1));
+    }
+
+    @Test
+    void shouldForgetSnapshotsWhenFlushFails() {
+        Snapshot written = makeSnapshot(0);
+        store.addSnapshot(GAME_ID, written);
+        store.flush();
+        // Accepted, but then lost by a store that writes in the background
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        delegate.lose(GAME_ID);
+
+        delegate.failFlush = true;
+        assertThrows(IllegalStateException.class, store::flush);
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(written)));
+    }
+
+    @Test
+    void shouldForgetDeletedGames() {
+        store.addSnapshot(GAME_ID, makeSnapshot(0));
+        store.deleteGame(GAME_ID);
+
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID), is(emptyOptional()));
+    }
+
+    private static Snapshot makeSnapshot(int minute) {
+        return Snapshot.create(START.plusMinutes(minute), GameState.builder()
+                .name("test")
+                .id(GAME_ID)
+                .date(GameDate.create(Season.Spring, 1901 + minute))
+                .phase(GamePhase.Diplomacy)
+                .build());
+    }
+
+    /**
+     * {@link InMemoryHistoryStore} that counts reads of the latest snapshot, and can be made to fail writes and
+     * flushes.
+     */
+    private static class CountingHistoryStore extends InMemoryHistoryStore {
+        private final AtomicInteger latestReads = new AtomicInteger();
+        private volatile boolean failWrites;
+        private volatile boolean failFlush;
+
+        @Override
+        public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
+            latestReads.incrementAndGet();
+            return super.getLatestSnapshotForGame(gameId);
+        }
+
+        @Override
+        public void addSnapshot(int gameId, Snapshot snapshot) {
+            if (failWrites) {
+                throw new IllegalStateException("Failed to write snapshot");
+            }
+            super.addSnapshot(gameId, snapshot);
+        }
+
+        @Override
+        public void flush() {
+            if (failFlush) {
+                throw new IllegalStateException("Failed to write snapshots");
+            }
+        }
+
+        void lose(int gameId) {
+            List<Snapshot> snapshots = getSnapshotsForGame(gameId);
+            replaceSnapshotsUntil(gameId, START.plusYears(1), snapshots.subList(0, snapshots.size() - 1));
+        }
+    }
+}
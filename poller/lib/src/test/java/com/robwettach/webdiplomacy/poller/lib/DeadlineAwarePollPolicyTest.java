@@ -0,0 +1,142 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+class DeadlineAwarePollPolicyTest {
+    private static final Duration MIN = Duration.ofSeconds(30);
+    private static final Duration MAX = Duration.ofMinutes(15);
+    private static final Duration PAUSED = Duration.ofHours(1);
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2020, 9, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final PollPolicy policy = new DeadlineAwarePollPolicy(MIN, MAX, PAUSED);
+
+    @Test
+    void shouldPollSoonWithoutHistory() {
+        Optional<Duration> delay = policy.nextPollDelay(Optional.empty(), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(MIN))));
+    }
+
+    @Test
+    void shouldStopPollingFinishedGame() {
+        GameState state = makeState(null, CountryStatus.Won, CountryStatus.Defeated).toBuilder()
+                .phase(GamePhase.Finished)
+                .finished(true)
+                .build();
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(emptyOptional()));
+    }
+
+    @Test
+    void shouldBackOffForPausedGame() {
+        GameState state = makeState(null, CountryStatus.NotReceived).toBuilder()
+                .paused(true)
+                .build();
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(PAUSED))));
+    }
+
+    @Test
+    void shouldPollHardWhenEveryoneIsReady() {
+        GameState state = makeState(
+                NOW.plusDays(2),
+                CountryStatus.Ready,
+                CountryStatus.NoOrders,
+                CountryStatus.Defeated);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(MIN))));
+    }
+
+    @Test
+    void shouldBackOffWhenDeadlineIsFarAway() {
+        GameState state = makeState(NOW.plusDays(2), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(MAX))));
+    }
+
+    @Test
+    void shouldLandJustAfterHourWarning() {
+        GameState state = makeState(NOW.plusMinutes(65), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(Duration.ofMinutes(5).plusSeconds(5)))));
+    }
+
+    @Test
+    void shouldLandAtStartOfDeadlineWindow() {
+        GameState state = makeState(NOW.plusMinutes(20), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(Duration.ofMinutes(10)))));
+    }
+
+    @Test
+    void shouldNotSleepThroughDeadlineWindow() {
+        GameState state = makeState(NOW.plusMinutes(12), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(Duration.ofMinutes(2)))));
+    }
+
+    @Test
+    void shouldPollHardCloseToDeadline() {
+        GameState state = makeState(NOW.plusMinutes(5), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(MIN))));
+    }
+
+    @Test
+    void shouldPollHardAfterDeadline() {
+        GameState state = makeState(NOW.minusMinutes(1), CountryStatus.Ready, CountryStatus.NotReceived);
+        Optional<Duration> delay = policy.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(MIN))));
+    }
+
+    @Test
+    void shouldAlwaysUseFixedInterval() {
+        PollPolicy fixed = PollPolicy.fixed(Duration.ofMinutes(2));
+        GameState state = makeState(null, CountryStatus.Won).toBuilder()
+                .finished(true)
+                .build();
+        Optional<Duration> delay = fixed.nextPollDelay(Optional.of(Snapshot.create(NOW, state)), NOW);
+        assertThat("Unexpected delay", delay, is(optionalWithValue(equalTo(Duration.ofMinutes(2)))));
+    }
+
+    private GameState makeState(@Nullable ZonedDateTime nextTurnAt, CountryStatus... statuses) {
+        List<CountryState> countries = IntStream.range(0, statuses.length)
+                .mapToObj(i -> CountryState.builder()
+                        .countryName("c" + i)
+                        .user(UserInfo.create("test", i))
+                        .status(statuses[i])
+                        .supplyCenterCount(3)
+                        .unitCount(3)
+                        .build())
+                .collect(toList());
+        return GameState.builder()
+                .name("test")
+                .id(1)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .nextTurnAt(nextTurnAt)
+                .countries(countries)
+                .build();
+    }
+}
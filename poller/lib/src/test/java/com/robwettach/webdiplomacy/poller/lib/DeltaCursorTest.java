@@ -0,0 +1,192 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.model.Vote;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class DeltaCursorTest {
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void shouldRoundTripThroughDeltas() throws JsonProcessingException {
+        List<Snapshot> expected = List.of(
+                makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of())),
+                makeSnapshot(1, makeGame(CountryStatus.Completed, Set.of())),
+                makeSnapshot(2, makeGame(CountryStatus.Completed, Set.of(Vote.Draw))),
+                makeSnapshot(3, makeGame(CountryStatus.Ready, Set.of(Vote.Draw)).toBuilder()
+                        .paused(true)
+                        .nextTurnAt(null)
+                        .build()),
+                makeSnapshot(4, makeGame(CountryStatus.Defeated, Set.of())));
+
+        List<Snapshot> actual = new ArrayList<>();
+        DeltaCursor reader = new DeltaCursor(DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+        for (JsonNode record : write(expected, DeltaCursor.DEFAULT_KEYFRAME_INTERVAL)) {
+            actual.add(reader.read(OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(record))));
+        }
+        assertThat("Unexpected snapshots", actual, is(expected));
+    }
+
+    @Test
+    void shouldWriteKeyframeEveryInterval() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            snapshots.add(makeSnapshot(i, makeGame(CountryStatus.NotReceived, Set.of())));
+        }
+
+        List<Boolean> keyframes = new ArrayList<>();
+        for (JsonNode record : write(snapshots, 3)) {
+            keyframes.add(DeltaCursor.isKeyframe(record));
+        }
+        assertThat("Unexpected keyframes", keyframes, contains(true, false, false, true, false, false, true));
+    }
+
+    @Test
+    void shouldOnlyWriteKeyframesWithIntervalOfOne() throws JsonProcessingException {
+        Snapshot first = makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of()));
+        Snapshot second = makeSnapshot(1, makeGame(CountryStatus.Completed, Set.of()));
+
+        List<JsonNode> records = write(List.of(first, second), 1);
+        assertThat("Expected a keyframe", DeltaCursor.isKeyframe(records.get(1)), is(true));
+        assertThat("Keyframe isn't a plain snapshot",
+                OBJECT_MAPPER.treeToValue(records.get(1), Snapshot.class), is(second));
+    }
+
+    @Test
+    void shouldOnlyCarryChangedFields() {
+        Snapshot first = makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of()));
+        Snapshot second = makeSnapshot(1, makeGame(CountryStatus.Completed, Set.of()));
+
+        JsonNode delta = write(List.of(first, second), DeltaCursor.DEFAULT_KEYFRAME_INTERVAL)
+                .get(1)
+                .get(DeltaCursor.DELTA_FIELD);
+        assertThat("Unexpected top-level fields", fieldNames(delta), containsInAnyOrder("time", "state"));
+        assertThat("Unexpected state fields", fieldNames(delta.get("state")), contains("countries"));
+        assertThat("Unexpected countries", fieldNames(delta.get("state").get("countries")), contains("England"));
+        assertThat("Unexpected country fields",
+                fieldNames(delta.get("state").get("countries").get("England")), contains("status"));
+    }
+
+    @Test
+    void shouldReadTimeWithoutMoving() throws JsonProcessingException {
+        Snapshot first = makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of()));
+        Snapshot second = makeSnapshot(1, makeGame(CountryStatus.Completed, Set.of()));
+        List<JsonNode> records = write(List.of(first, second), DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+
+        DeltaCursor cursor = new DeltaCursor(DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+        assertThat("Unexpected keyframe time", cursor.timeOf(records.get(0)).toInstant(),
+                is(first.getTime().toInstant()));
+        cursor.advance(records.get(0));
+        assertThat("Unexpected delta time", cursor.timeOf(records.get(1)).toInstant(),
+                is(second.getTime().toInstant()));
+        assertThat("Cursor moved", cursor.current(), is(first));
+    }
+
+    @Test
+    void shouldRejectDeltaWithoutKeyframe() {
+        ObjectNode delta = OBJECT_MAPPER.createObjectNode();
+        delta.putObject(DeltaCursor.DELTA_FIELD);
+
+        DeltaCursor cursor = new DeltaCursor(DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+        assertThrows(IllegalStateException.class, () -> cursor.read(delta));
+    }
+
+    @Test
+    void shouldWriteKeyframeAfterReset() {
+        DeltaCursor cursor = new DeltaCursor(DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+        cursor.advance(cursor.nextRecord(makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of()))));
+        cursor.reset();
+
+        JsonNode record = cursor.nextRecord(makeSnapshot(1, makeGame(CountryStatus.NotReceived, Set.of())));
+        assertThat("Expected a keyframe", DeltaCursor.isKeyframe(record), is(true));
+    }
+
+    @Test
+    void shouldShareUnchangedValuesBetweenSnapshots() throws JsonProcessingException {
+        List<Snapshot> snapshots = List.of(
+                makeSnapshot(0, makeGame(CountryStatus.NotReceived, Set.of())),
+                makeSnapshot(1, makeGame(CountryStatus.Completed, Set.of())));
+
+        List<GameState> states = new ArrayList<>();
+        DeltaCursor reader = new DeltaCursor(DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+        for (JsonNode record : write(snapshots, DeltaCursor.DEFAULT_KEYFRAME_INTERVAL)) {
+            states.add(reader.read(OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(record))).getState());
+        }
+        CountryState firstEngland = states.get(0).getCountries().asList().get(0);
+        CountryState secondEngland = states.get(1).getCountries().asList().get(0);
+        assertThat("Unchanged country not shared", states.get(1).getCountries().asList().get(1),
+                is(sameInstance(states.get(0).getCountries().asList().get(1))));
+        assertThat("Unchanged user not shared", secondEngland.getUser(), is(sameInstance(firstEngland.getUser())));
+    }
+
+    private static List<JsonNode> write(List<Snapshot> snapshots, int keyframeInterval) {
+        DeltaCursor writer = new DeltaCursor(keyframeInterval);
+        List<JsonNode> records = new ArrayList<>();
+        for (Snapshot snapshot : snapshots) {
+            JsonNode record = writer.nextRecord(snapshot);
+            writer.advance(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        Iterator<String> iterator = node.fieldNames();
+        iterator.forEachRemaining(names::add);
+        return names;
+    }
+
+    private static Snapshot makeSnapshot(int minute, GameState state) {
+        return Snapshot.create(START.plusMinutes(minute), state);
+    }
+
+    private static GameState makeGame(CountryStatus englandStatus, Set<Vote> englandVotes) {
+        return GameState.builder()
+                .name("test")
+                .id(1234)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy)
+                .nextTurnAt(START.plusDays(1))
+                .country(CountryState.builder()
+                        .countryName("England")
+                        .user(UserInfo.create("alice", 1))
+                        .status(englandStatus)
+                        .supplyCenterCount(3)
+                        .unitCount(3)
+                        .votes(englandVotes)
+                        .build())
+                .country(CountryState.builder()
+                        .countryName("France")
+                        .user(UserInfo.create("bob", 2))
+                        .status(CountryStatus.NotReceived)
+                        .supplyCenterCount(3)
+                        .unitCount(3)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,159 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class HistoryCompactorTest {
+    private static final int GAME_ID = 1234;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+    private static final Duration RETENTION = Duration.ofDays(30);
+
+    private final InMemoryHistoryStore history = new InMemoryHistoryStore();
+    private final InMemoryHistoryStore archive = new InMemoryHistoryStore();
+    private final HistoryCompactor compactor = new HistoryCompactor(history, archive, 2, RETENTION);
+
+    @Test
+    void shouldCollapseOlderPhases() {
+        List<Snapshot> diplomacy = addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.NotReceived, CountryStatus.Ready);
+        List<Snapshot> retreats = addPhase(GamePhase.Retreats, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.Ready);
+        List<Snapshot> builds = addPhase(GamePhase.Builds, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.Ready);
+
+        compactor.compactAll(START.plusDays(1));
+
+        List<Snapshot> expected = new ArrayList<>(List.of(diplomacy.get(0), diplomacy.get(3)));
+        expected.addAll(retreats);
+        expected.addAll(builds);
+        assertThat("Unexpected snapshots", history.getSnapshotsForGame(GAME_ID), is(expected));
+    }
+
+    @Test
+    void shouldKeepStatusChangePoints() {
+        List<Snapshot> diplomacy = addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.Defeated, CountryStatus.Defeated);
+        List<Snapshot> retreats = addPhase(GamePhase.Retreats, CountryStatus.Defeated);
+        List<Snapshot> builds = addPhase(GamePhase.Builds, CountryStatus.Defeated);
+
+        compactor.compactAll(START.plusDays(1));
+
+        List<Snapshot> expected = new ArrayList<>(List.of(diplomacy.get(0), diplomacy.get(2), diplomacy.get(3)));
+        expected.addAll(retreats);
+        expected.addAll(builds);
+        assertThat("Unexpected snapshots", history.getSnapshotsForGame(GAME_ID), is(expected));
+    }
+
+    @Test
+    void shouldLeaveRecentPhasesAlone() {
+        List<Snapshot> diplomacy = addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.NotReceived, CountryStatus.Ready);
+        List<Snapshot> retreats = addPhase(GamePhase.Retreats, CountryStatus.NotReceived, CountryStatus.Completed,
+                CountryStatus.Ready);
+
+        compactor.compactAll(START.plusDays(1));
+
+        List<Snapshot> expected = new ArrayList<>(diplomacy);
+        expected.addAll(retreats);
+        assertThat("Unexpected snapshots", history.getSnapshotsForGame(GAME_ID), is(expected));
+    }
+
+    @Test
+    void shouldArchiveOldFinishedGames() {
+        final List<Snapshot> snapshots = addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Won);
+
+        compactor.compactAll(START.plusDays(1));
+        assertThat("Finished game archived too soon", archive.getSnapshotsForGame(GAME_ID), is(empty()));
+
+        compactor.compactAll(START.plus(RETENTION).plusDays(2));
+        assertThat("Unexpected archived snapshots", archive.getSnapshotsForGame(GAME_ID), is(snapshots));
+        assertThat("Unexpected games", history.getGameIds(), is(empty()));
+    }
+
+    @Test
+    void shouldKeepArchivedSnapshotsWhenRetiringAgain() {
+        List<Snapshot> expected = addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Won);
+        compactor.compactAll(START.plus(RETENTION).plusDays(2));
+
+        // Polled again after being retired, e.g. after a restart
+        ZonedDateTime seenAgain = START.plus(RETENTION).plusDays(3);
+        expected.add(addSnapshot(GAME_ID, seenAgain, CountryStatus.Won, true));
+        compactor.compactAll(seenAgain.plus(RETENTION).plusDays(1));
+
+        assertThat("Unexpected archived snapshots", archive.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Unexpected games", history.getGameIds(), is(empty()));
+    }
+
+    @Test
+    void shouldDropOldFinishedGamesWithoutArchive() {
+        addPhase(GamePhase.Diplomacy, CountryStatus.NotReceived, CountryStatus.Won);
+        addSnapshot(GAME_ID + 1, START, CountryStatus.NotReceived, false);
+
+        new HistoryCompactor(history, null, 2, RETENTION).compactAll(START.plus(RETENTION).plusDays(2));
+
+        assertThat("Unexpected games", history.getGameIds(), contains(GAME_ID + 1));
+    }
+
+    /**
+     * Add a phase's worth of snapshots, an hour apart, each with England in the given status.  The game finishes if
+     * England has won.
+     */
+    private List<Snapshot> addPhase(GamePhase phase, CountryStatus... statuses) {
+        ZonedDateTime phaseStart = START.plusDays(phase.ordinal());
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+            snapshots.add(addSnapshot(
+                    GAME_ID,
+                    phaseStart.plusHours(i),
+                    phase,
+                    statuses[i],
+                    statuses[i] == CountryStatus.Won));
+        }
+        return snapshots;
+    }
+
+    private Snapshot addSnapshot(int gameId, ZonedDateTime time, CountryStatus status, boolean finished) {
+        return addSnapshot(gameId, time, GamePhase.Diplomacy, status, finished);
+    }
+
+    private Snapshot addSnapshot(
+            int gameId,
+            ZonedDateTime time,
+            GamePhase phase,
+            CountryStatus status,
+            boolean finished) {
+        Snapshot snapshot = Snapshot.create(time, GameState.builder()
+                .name("test")
+                .id(gameId)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(phase)
+                .finished(finished)
+                .country(CountryState.builder()
+                        .countryName("England")
+                        .user(UserInfo.create("alice", 1))
+                        .status(status)
+                        .supplyCenterCount(3)
+                        .unitCount(3)
+                        .build())
+                .build());
+        history.addSnapshot(gameId, snapshot);
+        return snapshot;
+    }
+}
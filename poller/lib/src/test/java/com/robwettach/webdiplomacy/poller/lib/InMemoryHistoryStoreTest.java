@@ -0,0 +1,118 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class InMemoryHistoryStoreTest {
+    private static final int GAME_ID = 1234;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final InMemoryHistoryStore store = new InMemoryHistoryStore();
+
+    @Test
+    void shouldGetSnapshotsBetweenTimes() {
+        List<Snapshot> expected = addSnapshots(10);
+
+        assertThat("Unexpected snapshots",
+                store.getSnapshotsBetween(GAME_ID, START.plusMinutes(3), START.plusMinutes(5)),
+                contains(expected.get(3), expected.get(4), expected.get(5)));
+        // The same instants, in a different time zone
+        ZoneId losAngeles = ZoneId.of("America/Los_Angeles");
+        assertThat("Unexpected snapshots", store.getSnapshotsBetween(
+                GAME_ID,
+                START.plusMinutes(8).withZoneSameInstant(losAngeles),
+                START.plusDays(1).withZoneSameInstant(losAngeles)),
+                contains(expected.get(8), expected.get(9)));
+        assertThat("Unexpected snapshots", store.getSnapshotsBetween(GAME_ID, START.minusDays(2), START.minusDays(1)),
+                is(empty()));
+    }
+
+    @Test
+    void shouldStreamSnapshotsLazily() {
+        List<Snapshot> expected = addSnapshots(10);
+
+        try (Stream<Snapshot> snapshots = store.streamSnapshotsBetween(GAME_ID, START, START.plusDays(1))) {
+            assertThat("Unexpected snapshots", snapshots.limit(2).collect(toList()),
+                    contains(expected.get(0), expected.get(1)));
+        }
+    }
+
+    @Test
+    void shouldRejectBackwardsRange() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> store.getSnapshotsBetween(GAME_ID, START, START.minusDays(1)));
+    }
+
+    @Test
+    void shouldGetSnapshotAtTime() {
+        List<Snapshot> expected = addSnapshots(10);
+
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, START.plusMinutes(4).plusSeconds(30)),
+                optionalWithValue(is(expected.get(4))));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, START.plusMinutes(7)),
+                optionalWithValue(is(expected.get(7))));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, START.minusSeconds(1)), is(emptyOptional()));
+    }
+
+    @Test
+    void shouldReplaceSnapshotsUntilTime() {
+        List<Snapshot> snapshots = addSnapshots(10);
+
+        store.replaceSnapshotsUntil(GAME_ID, START.plusMinutes(4), List.of(snapshots.get(0), snapshots.get(4)));
+
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), contains(
+                snapshots.get(0), snapshots.get(4), snapshots.get(5), snapshots.get(6), snapshots.get(7),
+                snapshots.get(8), snapshots.get(9)));
+    }
+
+    @Test
+    void shouldDeleteGame() {
+        addSnapshots(10);
+        assertThat("Unexpected games", store.getGameIds(), contains(GAME_ID));
+
+        store.deleteGame(GAME_ID);
+
+        assertThat("Unexpected games", store.getGameIds(), is(empty()));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+    }
+
+    @Test
+    void shouldHaveNoSnapshotsForUnknownGame() {
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID), is(emptyOptional()));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, START), is(emptyOptional()));
+    }
+
+    private List<Snapshot> addSnapshots(int count) {
+        List<Snapshot> snapshots = IntStream.range(0, count)
+                .mapToObj(i -> Snapshot.create(START.plusMinutes(i), GameState.builder()
+                        .name("test")
+                        .id(GAME_ID)
+                        .date(GameDate.create(Season.Spring, 1901 + i))
+                        .phase(GamePhase.Diplomacy)
+                        .build()))
+                .collect(toList());
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+        return snapshots;
+    }
+}
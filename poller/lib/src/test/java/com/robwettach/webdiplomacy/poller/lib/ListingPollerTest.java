@@ -0,0 +1,114 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.page.PageFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ListingPollerTest {
+    private static final int PRE_GAME_ID = 1234;
+    private static final int COLLAPSED_GAME_ID = 5678;
+    private static final String PRE_GAME_TITLE_BAR = "<div class=\"titleBar\">"
+            + "<span class=\"gameDate\">Spring, 1901</span>, <span class=\"gamePhase\">Pre-game</span>"
+            + "<span class=\"gameName\">Test Game</span>"
+            + "<span class=\"gameTimeRemaining\"><strong>Start:</strong> "
+            + "<span class=\"timeremaining\" unixtime=\"1600000000\">2 days</span></span>"
+            + "</div>";
+    private static final String PRE_GAME_PANEL = panel(PRE_GAME_ID, PRE_GAME_TITLE_BAR);
+    // An in-progress game whose panel is missing its members table, so it has to be loaded from its board
+    private static final String COLLAPSED_PANEL = panel(COLLAPSED_GAME_ID, "<div class=\"titleBar\">"
+            + "<span class=\"gameDate\">Autumn, 1903</span>, <span class=\"gamePhase\">Retreats</span>"
+            + "<span class=\"gameName\">Collapsed Game</span>"
+            + "<span class=\"gameTimeRemaining\"><strong>Next:</strong> "
+            + "<span class=\"timeremaining\" unixtime=\"1600000000\">2 hours</span></span>"
+            + "</div>");
+    private static final byte[] BOARD = ("<html><body>" + PRE_GAME_TITLE_BAR + "</body></html>")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger listingRequests = new AtomicInteger();
+    private final List<String> boardRequests = new CopyOnWriteArrayList<>();
+    private final InMemoryHistoryStore history = new InMemoryHistoryStore();
+    private volatile String panels = PRE_GAME_PANEL + COLLAPSED_PANEL;
+    private HttpServer server;
+    private ListingPoller poller;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/gamelistings.php", this::serveListings);
+        server.createContext("/board.php", this::serveBoard);
+        server.start();
+        PageFetcher fetcher = new PageFetcher("http://localhost:" + server.getAddress().getPort());
+        poller = new ListingPoller(() -> Map.of("sid", "1"), history, diffs -> { }, fetcher);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldUpdateEveryGameFromOneListing() {
+        poller.poll();
+
+        assertThat("Unexpected listing requests", listingRequests.get(), is(1));
+        assertThat("Unexpected board requests", boardRequests, contains("gameID=" + COLLAPSED_GAME_ID));
+        assertThat("Unexpected pre-game snapshots", history.getSnapshotsForGame(PRE_GAME_ID), hasSize(1));
+        assertThat("Unexpected collapsed snapshots", history.getSnapshotsForGame(COLLAPSED_GAME_ID), hasSize(1));
+        assertThat("Unexpected game IDs", poller.getGameIds(), containsInAnyOrder(PRE_GAME_ID, COLLAPSED_GAME_ID));
+    }
+
+    @Test
+    void shouldForgetGamesThatLeaveListing() {
+        poller.poll();
+        panels = PRE_GAME_PANEL;
+        poller.poll();
+
+        assertThat("Unexpected listing requests", listingRequests.get(), is(2));
+        assertThat("Unexpected game IDs", poller.getGameIds(), contains(PRE_GAME_ID));
+    }
+
+    private static String panel(int gameId, String titleBar) {
+        return "<div class=\"gamePanel\">" + titleBar
+                + "<div class=\"enterBar\"><div class=\"enterBarOpen\">"
+                + "<a href=\"board.php?gameID=" + gameId + "\">Open</a></div></div></div>";
+    }
+
+    private void serveListings(HttpExchange exchange) throws IOException {
+        listingRequests.incrementAndGet();
+        send(exchange, ("<html><body><div class=\"gamesList\">" + panels + "</div></body></html>")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void serveBoard(HttpExchange exchange) throws IOException {
+        boardRequests.add(exchange.getRequestURI().getQuery());
+        send(exchange, BOARD);
+    }
+
+    private static void send(HttpExchange exchange, byte[] page) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, page.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(page);
+        }
+        exchange.close();
+    }
+}
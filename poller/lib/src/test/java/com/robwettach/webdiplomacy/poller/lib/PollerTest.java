@@ -0,0 +1,90 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.diff.Diff;
+import com.robwettach.webdiplomacy.page.PageFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PollerTest {
+    private static final int GAME_ID = 1234;
+    private static final String ENTITY_TAG = "\"v1\"";
+    private static final byte[] BOARD = ("<html><body><div class=\"titleBar\">"
+            + "<span class=\"gameDate\">Spring, 1901</span>, <span class=\"gamePhase\">Pre-game</span>"
+            + "<span class=\"gameName\">Test Game</span>"
+            + "<span class=\"gameTimeRemaining\"><strong>Start:</strong> "
+            + "<span class=\"timeremaining\" unixtime=\"1600000000\">2 days</span></span>"
+            + "</div></body></html>").getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final InMemoryHistoryStore history = new InMemoryHistoryStore();
+    private final List<List<Diff>> notifications = new ArrayList<>();
+    private HttpServer server;
+    private Poller poller;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/board.php", this::serveBoard);
+        server.start();
+        PageFetcher fetcher = new PageFetcher("http://localhost:" + server.getAddress().getPort());
+        poller = new Poller(GAME_ID, history, notifications::add, fetcher);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldStoreFirstSnapshot() {
+        poller.poll();
+        assertThat("Unexpected full responses", fullResponses.get(), is(1));
+        assertThat("Unexpected snapshots", history.getSnapshotsForGame(GAME_ID), hasSize(1));
+    }
+
+    @Test
+    void shouldShortCircuitUnmodifiedBoard() {
+        poller.poll();
+        poller.poll();
+        poller.poll();
+
+        assertThat("Unexpected full responses", fullResponses.get(), is(1));
+        assertThat("Unexpected 304 responses", notModifiedResponses.get(), is(2));
+        assertThat("Unexpected snapshots", history.getSnapshotsForGame(GAME_ID), hasSize(1));
+        assertThat("Unexpected diffs", notifications.get(2), is(empty()));
+    }
+
+    private void serveBoard(HttpExchange exchange) throws IOException {
+        if (ENTITY_TAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+        } else {
+            fullResponses.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().add("ETag", ENTITY_TAG);
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, BOARD.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(BOARD);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,132 @@
+package com.robwettach.webdiplomacy.poller.lib;
+
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.model.Vote;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class SnapshotCodecTest {
+    private static final List<String> COUNTRIES =
+            List.of("England", "France", "Italy", "Germany", "Austria", "Turkey", "Russia");
+
+    @ParameterizedTest
+    @EnumSource(SnapshotCodec.Compression.class)
+    void shouldRoundTripSnapshot(SnapshotCodec.Compression compression) throws IOException {
+        Snapshot snapshot = makeSnapshot();
+
+        byte[] encoded = SnapshotCodec.create(compression).encode(snapshot);
+        assertThat("Unexpected snapshot", SnapshotCodec.decodeSnapshot(encoded), is(snapshot));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SnapshotCodec.Compression.class)
+    void shouldRoundTripState(SnapshotCodec.Compression compression) throws IOException {
+        GameState state = makeSnapshot().getState().toBuilder()
+                .paused(true)
+                .finished(true)
+                .nextTurnAt(null)
+                .build();
+
+        byte[] encoded = SnapshotCodec.create(compression).encode(state);
+        assertThat("Unexpected state", SnapshotCodec.decodeState(encoded), is(state));
+    }
+
+    @Test
+    void shouldBeMuchSmallerThanJson() throws JsonProcessingException {
+        Snapshot snapshot = makeSnapshot();
+        int jsonLength = OBJECT_MAPPER.writeValueAsBytes(snapshot).length;
+
+        int plainLength = SnapshotCodec.create(SnapshotCodec.Compression.NONE).encode(snapshot).length;
+        assertThat("Encoding not small enough", plainLength, lessThan(jsonLength / 3));
+        int deflatedLength = SnapshotCodec.create(SnapshotCodec.Compression.DEFLATE).encode(snapshot).length;
+        assertThat("Compression made encoding larger", deflatedLength, lessThan(plainLength + 1));
+    }
+
+    @Test
+    void shouldRejectStateAsSnapshot() {
+        byte[] encoded = SnapshotCodec.create(SnapshotCodec.Compression.NONE).encode(makeSnapshot().getState());
+        assertThrows(IOException.class, () -> SnapshotCodec.decodeSnapshot(encoded));
+    }
+
+    @Test
+    void shouldRejectUnknownVersion() {
+        byte[] encoded = SnapshotCodec.create(SnapshotCodec.Compression.NONE).encode(makeSnapshot());
+        encoded[0] = 99;
+        assertThrows(IOException.class, () -> SnapshotCodec.decodeSnapshot(encoded));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SnapshotCodec.Compression.class)
+    void shouldRejectTruncatedSnapshot(SnapshotCodec.Compression compression) {
+        byte[] encoded = SnapshotCodec.create(compression).encode(makeSnapshot());
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+        assertThrows(IOException.class, () -> SnapshotCodec.decodeSnapshot(truncated));
+    }
+
+    @Test
+    void shouldShareDecodedValues() throws IOException {
+        byte[] encoded = SnapshotCodec.create(SnapshotCodec.Compression.DEFLATE).encode(makeSnapshot());
+
+        List<CountryState> first = SnapshotCodec.decodeSnapshot(encoded).getState().getCountries().asList();
+        List<CountryState> second = SnapshotCodec.decodeSnapshot(encoded).getState().getCountries().asList();
+        for (int i = 0; i < first.size(); i++) {
+            assertThat("Country not shared", second.get(i), is(sameInstance(first.get(i))));
+        }
+        String name = SnapshotCodec.decodeSnapshot(encoded).getState().getName();
+        assertThat("Name not shared", SnapshotCodec.decodeSnapshot(encoded).getState().getName(),
+                is(sameInstance(name)));
+    }
+
+    private static Snapshot makeSnapshot() {
+        GameState.Builder state = GameState.builder()
+                .name("Codec Test Game")
+                .id(313359)
+                .date(GameDate.create(Season.Autumn, 1907))
+                .phase(GamePhase.Retreats)
+                .nextTurnAt(ZonedDateTime.of(2020, 9, 14, 18, 30, 0, 0, ZoneId.of("America/Los_Angeles")));
+        for (int i = 0; i < COUNTRIES.size(); i++) {
+            state.country(CountryState.builder()
+                    .countryName(COUNTRIES.get(i))
+                    .user(UserInfo.create("player" + i, 1000 + i))
+                    .currentUser(i == 0)
+                    .messageUnread(i == 1)
+                    .status(CountryStatus.values()[i % CountryStatus.values().length])
+                    .supplyCenterCount(i + 2)
+                    .unitCount(i + 1)
+                    .votes(i == 2 ? Set.of(Vote.Draw, Vote.Pause) : Set.of())
+                    .build());
+        }
+        // Not in the built-in dictionary
+        state.country(CountryState.builder()
+                .countryName("Neutral")
+                .user(UserInfo.create("nobody", 0))
+                .status(CountryStatus.NoOrders)
+                .supplyCenterCount(0)
+                .unitCount(0)
+                .build());
+        return Snapshot.create(ZonedDateTime.of(2020, 9, 13, 12, 0, 30, 123_000_000, ZoneOffset.UTC), state.build());
+    }
+}
@@ -3,24 +3,15 @@ package com.robwettach.webdiplomacy.poller;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Verify.verifyNotNull;
 import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
-import static java.lang.String.format;
-import static java.util.stream.Collectors.toMap;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableMap;
+import com.robwettach.webdiplomacy.page.PageFetcher;
 import com.robwettach.webdiplomacy.poller.lib.CookieProvider;
 import java.io.Console;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpCookie;
-import java.net.URI;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -62,35 +53,15 @@ public class LocalCookieProvider implements CookieProvider {
             String username = console.readLine("Username: ");
             String password = new String(console.readPassword("Password: "));
 
-            HttpRequest loginRequest;
+            Map<String, String> cookies;
             try {
-                loginRequest = HttpRequest.newBuilder()
-                        .uri(URI.create("http://webdiplomacy.net/index.php"))
-                        .POST(HttpRequest.BodyPublishers.ofString(
-                                format(
-                                        "loginuser=%s&loginpass=%s",
-                                        URLEncoder.encode(username, StandardCharsets.UTF_8.toString()),
-                                        URLEncoder.encode(password, StandardCharsets.UTF_8.toString()))))
-                        .header("Content-Type", "application/x-www-form-urlencoded")
-                        .build();
-            } catch (UnsupportedEncodingException e) {
-                LOG.error("Failed to encode login body", e);
-                return null;
-            }
-            HttpResponse<String> loginResponse;
-            try {
-                HttpClient client = HttpClient.newHttpClient();
-                loginResponse = client.send(loginRequest, HttpResponse.BodyHandlers.ofString());
-            } catch (IOException | InterruptedException e) {
+                cookies = PageFetcher.getDefault().postForm(
+                        "/index.php",
+                        ImmutableMap.of("loginuser", username, "loginpass", password));
+            } catch (IOException e) {
                 LOG.error("Failed to login", e);
                 return null;
             }
-            Map<String, String> cookies = loginResponse.headers()
-                    .allValues("set-cookie")
-                    .stream()
-                    .map(HttpCookie::parse)
-                    .flatMap(List::stream)
-                    .collect(toMap(HttpCookie::getName, HttpCookie::getValue));
             try {
                 OBJECT_MAPPER.writeValue(cookiesPath.toFile(), cookies);
             } catch (IOException e) {
@@ -1,156 +1,849 @@
 package com.robwettach.webdiplomacy.poller;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Verify.verify;
 import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.poller.lib.DeltaCursor;
 import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.SnapshotCodec;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * {@link HistoryStore} that manages history on local disk.
  *
- * <p>Writes per-game history to {@code WEBDIP_POLLER_HOME/$gameId-snapshots.json}.
+ * <p>Writes per-game history to {@code WEBDIP_POLLER_HOME/$gameId-snapshots.jsonl}, one record per line.  Every so
+ * often a record holds a full {@link Snapshot}, and the rest hold only what changed since the previous one as JSON (see
+ * {@link DeltaCursor}).  Full snapshots are written with the compact {@link SnapshotCodec}, Base64-encoded to keep
+ * each on its own line, though ones written as JSON by older versions are still read.  Adding a snapshot only appends
+ * its own line, so the cost of a write doesn't grow with the history already stored.  Whether each append is also
+ * synced to disk is up to the {@link FsyncPolicy}.
+ *
+ * <p>Only the latest snapshot of each game is kept in memory, read from the end of its file at startup, so
+ * neither startup time nor heap grows with the length of the history.  Games are loaded in parallel, on a small
+ * pool of threads, and the time taken to load each one is logged.  The history of a game is only read from disk
+ * when asked for, and range and point-in-time queries read it a line at a time, rebuilding only the snapshots they
+ * return.
+ *
+ * <p>Older {@code $gameId-snapshots.json} files, holding a single JSON array of snapshots, are migrated to the new
+ * format the first time they're loaded.  They're read with Jackson's streaming parser, a snapshot at a time, so a
+ * long history is never held in memory all at once.
+ *
+ * <p>Safe to share between pollers running on different threads.  Each game is guarded by one of a fixed set of
+ * locks, picked by its Id, so pollers writing to different games almost never wait for each other, and reading the
+ * latest snapshot of a game takes no lock at all.
  */
 public class LocalHistoryStore implements HistoryStore {
     private static final Logger LOG = LogManager.getLogger(LocalHistoryStore.class);
 
-    private static final String GAME_SNAPSHOTS_FORMAT = "%d-snapshots.json";
+    private static final String GAME_SNAPSHOTS_FORMAT = "%d-snapshots.jsonl";
+    private static final String ARRAY_SNAPSHOTS_FORMAT = "%d-snapshots.json";
     private static final String GAME_ID_KEY = "gameId";
     private static final Pattern GAME_SNAPSHOTS_PATTERN = Pattern.compile(format(
-            "(?<%s>\\d+)-snapshots.json",
+            "(?<%s>\\d+)-snapshots\\.jsonl",
+            GAME_ID_KEY));
+    private static final Pattern ARRAY_SNAPSHOTS_PATTERN = Pattern.compile(format(
+            "(?<%s>\\d+)-snapshots\\.json",
             GAME_ID_KEY));
     private static final String LEGACY_SNAPSHOTS_FILE_NAME = "snapshots.json";
+    private static final byte NEWLINE = '\n';
+    // Never appears in Base64, so tells JSON records apart from encoded snapshots
+    private static final byte JSON_OBJECT_START = '{';
+    private static final SnapshotCodec CODEC = SnapshotCodec.create(SnapshotCodec.Compression.DEFLATE);
+    private static final int TAIL_CHUNK_SIZE = 8192;
+    // Enough that games only rarely share a lock, even with hundreds being polled at once
+    private static final int LOCK_STRIPES = 256;
+    // Loading is mostly waiting on the disk, so more threads than cores still help, but not without limit
+    private static final int MAX_LOAD_THREADS = 8;
+
+    /**
+     * When to force appended snapshots out to the disk itself.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Sync after every snapshot is appended, so that none are lost even if the machine crashes.
+         */
+        ALWAYS,
+        /**
+         * Sync everything appended since the last {@link #flush()} when it is called, so that a
+         * {@link WriteBehindHistoryStore} can sync a whole batch of snapshots at once.
+         */
+        ON_FLUSH,
+        /**
+         * Leave it to the operating system, so that snapshots are only lost if the machine (not just the process)
+         * crashes before it has written them out.
+         */
+        NEVER
+    }
 
     private final Path configDirPath;
     private final Path snapshotsPath;
+    private final FsyncPolicy fsyncPolicy;
+    private final int keyframeInterval;
 
-    private Map<Integer, List<Snapshot>> snapshots = new HashMap<>();
+    private final Striped<Lock> gameLocks = Striped.lock(LOCK_STRIPES);
+    // Wrapped up front, so that looking up the latest snapshot doesn't need to allocate anything.  Only written with
+    // the game's lock held, but read without it.
+    private final Map<Integer, Optional<Snapshot>> latestSnapshots = new ConcurrentHashMap<>();
+    // Only used with the game's lock held
+    private final Map<Integer, DeltaCursor> cursors = new ConcurrentHashMap<>();
+    // The games appended to since the last flush, under FsyncPolicy.ON_FLUSH
+    private final Set<Integer> unsynced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a {@link LocalHistoryStore} instance rooted at {@code configDirPath}, syncing every snapshot to disk.
+     *
+     * @param configDirPath The root {@code WEBDIP_POLLER_HOME} directory
+     * @see #LocalHistoryStore(Path, FsyncPolicy, int)
+     */
+    public LocalHistoryStore(Path configDirPath) {
+        this(configDirPath, FsyncPolicy.ALWAYS);
+    }
+
+    /**
+     * Create a {@link LocalHistoryStore} instance rooted at {@code configDirPath}, writing a keyframe every
+     * {@link DeltaCursor#DEFAULT_KEYFRAME_INTERVAL} snapshots.
+     *
+     * @param configDirPath The root {@code WEBDIP_POLLER_HOME} directory
+     * @param fsyncPolicy The {@link FsyncPolicy} for appended snapshots
+     * @see #LocalHistoryStore(Path, FsyncPolicy, int)
+     */
+    public LocalHistoryStore(Path configDirPath, FsyncPolicy fsyncPolicy) {
+        this(configDirPath, fsyncPolicy, DeltaCursor.DEFAULT_KEYFRAME_INTERVAL);
+    }
 
     /**
      * Create a {@link LocalHistoryStore} instance rooted at {@code configDirPath}.
      *
-     * <p>Synchronously loads all {@code $gameId-snapshots.json} files found at {@code configDirPath}.
+     * <p>Synchronously reads the latest snapshot from each {@code $gameId-snapshots.jsonl} file found at
+     * {@code configDirPath}, after migrating any files in an older format.
      *
      * @param configDirPath The root {@code WEBDIP_POLLER_HOME} directory
+     * @param fsyncPolicy The {@link FsyncPolicy} for appended snapshots
+     * @param keyframeInterval Write a full snapshot once every this many snapshots, and deltas in between.  {@code 1}
+     *                         writes only full snapshots.
      */
-    public LocalHistoryStore(Path configDirPath) {
+    public LocalHistoryStore(Path configDirPath, FsyncPolicy fsyncPolicy, int keyframeInterval) {
         checkNotNull(configDirPath, "configDirPath must not be null");
+        checkNotNull(fsyncPolicy, "fsyncPolicy must not be null");
+        checkArgument(keyframeInterval > 0, "keyframeInterval must be positive");
         this.configDirPath = configDirPath;
         this.snapshotsPath = configDirPath.resolve(LEGACY_SNAPSHOTS_FILE_NAME);
+        this.fsyncPolicy = fsyncPolicy;
+        this.keyframeInterval = keyframeInterval;
         load();
     }
 
     private void load() {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
         loadLegacySnapshots();
-        try {
-            Files.list(configDirPath)
-                    .filter(p -> GAME_SNAPSHOTS_PATTERN.matcher(p.getFileName().toString()).find())
-                    .forEach((path) -> {
-                        Matcher gameIdMatcher = GAME_SNAPSHOTS_PATTERN.matcher(path.getFileName().toString());
-                        verify(
-                                gameIdMatcher.find(),
-                                "Failed to parse filename that was already filtered to match! %s",
-                                path.getFileName());
-                        int gameId = Integer.parseInt(gameIdMatcher.group(GAME_ID_KEY));
-                        List<Snapshot> gameSnapshots = new ArrayList<>();
-                        try {
-                            gameSnapshots = OBJECT_MAPPER.readValue(
-                                    path.toFile(),
-                                    new TypeReference<>() {});
-                        } catch (IOException e) {
-                            LOG.error("Failed to read JSON from: {}", path, e);
-                        }
-                        snapshots.put(gameId, gameSnapshots);
-                        LOG.info(
-                                "Loaded {} snapshots for game {} from: {}",
-                                gameSnapshots.size(),
-                                gameId,
-                                path);
-                    });
+        Set<Integer> gameIds = new TreeSet<>();
+        try (Stream<Path> paths = Files.list(configDirPath)) {
+            paths.forEach(path -> {
+                String fileName = path.getFileName().toString();
+                Matcher gameIdMatcher = GAME_SNAPSHOTS_PATTERN.matcher(fileName);
+                if (!gameIdMatcher.matches()) {
+                    gameIdMatcher = ARRAY_SNAPSHOTS_PATTERN.matcher(fileName);
+                }
+                if (gameIdMatcher.matches()) {
+                    gameIds.add(Integer.parseInt(gameIdMatcher.group(GAME_ID_KEY)));
+                }
+            });
         } catch (IOException e) {
             LOG.error("Failed to list files in: {}", configDirPath, e);
+            return;
+        }
+        if (gameIds.isEmpty()) {
+            return;
         }
+
+        ExecutorService loaders = Executors.newFixedThreadPool(
+                Math.min(gameIds.size(), MAX_LOAD_THREADS),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("history-loader-%d")
+                        .setDaemon(true)
+                        .build());
+        try {
+            List<Future<?>> loads = new ArrayList<>();
+            for (int gameId : gameIds) {
+                loads.add(loaders.submit(() -> loadGame(gameId)));
+            }
+            for (Future<?> load : loads) {
+                try {
+                    load.get();
+                } catch (ExecutionException e) {
+                    LOG.error("Failed to load snapshots from: {}", configDirPath, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted loading snapshots from: " + configDirPath, e);
+        } finally {
+            loaders.shutdownNow();
+        }
+        LOG.info("Loaded {} games from {} in {}", latestSnapshots.size(), configDirPath, stopwatch);
+    }
+
+    /**
+     * Load the latest snapshot of a single game, after migrating its {@code $gameId-snapshots.json} file if it has
+     * one.
+     */
+    private void loadGame(int gameId) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        Path arrayPath = configDirPath.resolve(format(ARRAY_SNAPSHOTS_FORMAT, gameId));
+        if (Files.exists(arrayPath)) {
+            migrateArraySnapshots(gameId, arrayPath);
+        }
+        Path path = gamePath(gameId);
+        if (!Files.exists(path)) {
+            return;
+        }
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        Optional<Snapshot> latest = Optional.empty();
+        try {
+            latest = readLatest(path, cursor);
+        } catch (IOException e) {
+            LOG.error("Failed to read latest snapshot from: {}", path, e);
+            cursor.reset();
+        }
+        latestSnapshots.put(gameId, latest);
+        cursors.put(gameId, cursor);
+        LOG.info("Loaded latest snapshot for game {} from {} in {}", gameId, path, stopwatch);
     }
 
     private void loadLegacySnapshots() {
-        verify(snapshots.isEmpty(), "Cannot load legacy snapshots after initializing");
+        verify(latestSnapshots.isEmpty(), "Cannot load legacy snapshots after initializing");
         if (Files.exists(snapshotsPath)) {
             LOG.info("Found legacy snapshots file: {}", snapshotsPath);
-            try {
-                // Make a known-mutable copy
-                snapshots = new HashMap<>(OBJECT_MAPPER.readValue(
-                        snapshotsPath.toFile(),
-                        new TypeReference<>() {}));
-            } catch (IOException e) {
+            // Save each game out to the new format as it's read, to be loaded along with everything else
+            int gameCount = 0;
+            boolean saved = true;
+            try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(snapshotsPath.toFile())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected an object of games");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    int gameId = Integer.parseInt(parser.getCurrentName());
+                    parser.nextToken();
+                    saved &= rewrite(gameId, readArray(parser));
+                    gameCount++;
+                }
+            } catch (IOException | RuntimeException e) {
                 LOG.error("Failed to read JSON from: {}", snapshotsPath, e);
+                return;
+            }
+            LOG.info("Loaded {} games from: {}", gameCount, snapshotsPath);
+
+            // Delete the legacy file, unless that would lose snapshots
+            if (saved) {
+                deleteMigrated(snapshotsPath);
             }
-            int snapshotCount = snapshots.values().stream().mapToInt(List::size).sum();
-            LOG.info(
-                    "Loaded {} snapshots from {} games from: {}",
-                    snapshotCount,
-                    snapshots.size(),
-                    snapshotsPath);
+        }
+    }
+
+    /**
+     * Migrate a {@code $gameId-snapshots.json} file, holding a single JSON array, to the JSON lines format.
+     */
+    private void migrateArraySnapshots(int gameId, Path arrayPath) {
+        if (Files.exists(gamePath(gameId))) {
+            // We must have stopped after migrating, but before deleting the old file
+            deleteMigrated(arrayPath);
+            return;
+        }
+        LOG.info("Migrating snapshots for game {} from: {}", gameId, arrayPath);
+        boolean saved;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(arrayPath.toFile())) {
+            parser.nextToken();
+            saved = rewrite(gameId, readArray(parser));
+        } catch (IOException e) {
+            LOG.error("Failed to read JSON from: {}", arrayPath, e);
+            return;
+        }
+        if (saved) {
+            deleteMigrated(arrayPath);
+        }
+    }
 
-            // Save the loaded snapshots out to the new format
-            save();
-            // Delete the legacy file
+    @Override
+    public ImmutableList<Snapshot> getSnapshotsForGame(int gameId) {
+        Lock lock = gameLocks.get(gameId);
+        lock.lock();
+        try {
+            if (!latestSnapshots.containsKey(gameId)) {
+                return ImmutableList.of();
+            }
+            Path path = gamePath(gameId);
             try {
-                Files.deleteIfExists(snapshotsPath);
-                LOG.info("Deleted legacy snapshots file: {}", snapshotsPath);
+                return ImmutableList.copyOf(readLines(path, new DeltaCursor(keyframeInterval)));
             } catch (IOException e) {
-                LOG.error("Failed to delete legacy snapshots file: {}", snapshotsPath, e);
+                throw new UncheckedIOException("Failed to read snapshots from: " + path, e);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public ImmutableList<Snapshot> getSnapshotsForGame(int gameId) {
-        return ImmutableList.copyOf(snapshots.getOrDefault(gameId, new ArrayList<>()));
+    public Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        checkArgument(!to.isBefore(from), "to must not be before from");
+        RecordIterator records = openRecords(gameId, from, to, new DeltaCursor(keyframeInterval));
+        if (records == null) {
+            return Stream.empty();
+        }
+        return Streams.stream(records).onClose(records::close);
+    }
+
+    @Override
+    public Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        Optional<Snapshot> latest = getLatestSnapshotForGame(gameId);
+        if (latest.isEmpty() || !latest.get().getTime().isAfter(time)) {
+            return latest;
+        }
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        RecordIterator records = openRecords(gameId, time, time, cursor);
+        if (records == null) {
+            return Optional.empty();
+        }
+        try (records) {
+            // Leaves the cursor at the last snapshot at or before time
+            Iterators.getLast(records, null);
+            return cursor.hasCurrent() ? Optional.of(cursor.current()) : Optional.empty();
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to read snapshot for game " + gameId, e);
+        }
     }
 
     @Override
     public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
-        List<Snapshot> gameSnapshots = getSnapshotsForGame(gameId);
-        return Optional.ofNullable(Iterables.getLast(gameSnapshots, null));
+        return latestSnapshots.getOrDefault(gameId, Optional.empty());
     }
 
     @Override
     public void addSnapshot(int gameId, Snapshot snapshot) {
-        List<Snapshot> gameSnapshots = snapshots.computeIfAbsent(gameId, (x) -> new ArrayList<>());
-        gameSnapshots.add(snapshot);
-        save();
+        Path path = gamePath(gameId);
+        Lock lock = gameLocks.get(gameId);
+        lock.lock();
+        try {
+            DeltaCursor cursor = cursors.computeIfAbsent(gameId, (x) -> new DeltaCursor(keyframeInterval));
+            JsonNode record = cursor.nextRecord(snapshot);
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                ByteBuffer line = ByteBuffer.wrap(toLine(record, snapshot));
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    channel.force(false);
+                } else if (fsyncPolicy == FsyncPolicy.ON_FLUSH) {
+                    unsynced.add(gameId);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append snapshot to: " + path, e);
+            }
+            cursor.advance(record);
+            latestSnapshots.put(gameId, Optional.of(snapshot));
+        } finally {
+            lock.unlock();
+        }
+        LOG.debug("Appended snapshot for game {} to: {}", gameId, path);
+    }
+
+    @Override
+    public ImmutableSet<Integer> getGameIds() {
+        return ImmutableSet.copyOf(latestSnapshots.keySet());
     }
 
-    private void save() {
-        snapshots.forEach((gameId, gameSnapshots) -> {
-            Path path = configDirPath.resolve(format(GAME_SNAPSHOTS_FORMAT, gameId));
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Atomically rewrites the game's whole JSON lines file, blocking other writes to the game until it's done.
+     */
+    @Override
+    public void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        checkArgument(
+                snapshots.stream().noneMatch(s -> s.getTime().isAfter(until)),
+                "snapshots must not be after until");
+        Lock lock = gameLocks.get(gameId);
+        lock.lock();
+        try {
+            List<Snapshot> gameSnapshots = new ArrayList<>(snapshots);
+            getSnapshotsForGame(gameId).stream()
+                    .filter(s -> s.getTime().isAfter(until))
+                    .forEach(gameSnapshots::add);
+            Path path = gamePath(gameId);
+            if (gameSnapshots.isEmpty()) {
+                deleteGame(gameId);
+                return;
+            }
+            DeltaCursor cursor = new DeltaCursor(keyframeInterval);
             try {
-                OBJECT_MAPPER.writeValue(path.toFile(), gameSnapshots);
-                LOG.info(
-                        "Saved {} snapshots for game {} to: {}",
-                        gameSnapshots.size(),
-                        gameId,
-                        path);
+                writeLines(gameId, gameSnapshots.iterator());
+                latestSnapshots.put(gameId, readLatest(path, cursor));
             } catch (IOException e) {
-                LOG.error("Failed to write snapshots to: {}", path, e);
+                throw new UncheckedIOException("Failed to replace snapshots in: " + path, e);
+            }
+            cursors.put(gameId, cursor);
+            unsynced.remove(gameId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteGame(int gameId) {
+        Path path = gamePath(gameId);
+        Lock lock = gameLocks.get(gameId);
+        lock.lock();
+        try {
+            Files.deleteIfExists(path);
+            latestSnapshots.remove(gameId);
+            cursors.remove(gameId);
+            unsynced.remove(gameId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete: " + path, e);
+        } finally {
+            lock.unlock();
+        }
+        LOG.info("Deleted snapshots for game {} from: {}", gameId, path);
+    }
+
+    @Override
+    public void flush() {
+        for (int gameId : unsynced) {
+            Path path = gamePath(gameId);
+            Lock lock = gameLocks.get(gameId);
+            lock.lock();
+            try {
+                // Anything appended after this is left for the next flush
+                if (!unsynced.remove(gameId)) {
+                    continue;
+                }
+                // Syncing through any open channel writes out everything appended through the others
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                } catch (IOException e) {
+                    unsynced.add(gameId);
+                    throw new UncheckedIOException("Failed to sync snapshots to: " + path, e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Open a game's JSON lines file to read the snapshots within a range of times.
+     *
+     * @return A {@link RecordIterator} over the snapshots, or {@code null} if there is no history for {@code gameId}
+     */
+    @Nullable
+    private RecordIterator openRecords(
+            int gameId,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            DeltaCursor cursor) {
+        Lock lock = gameLocks.get(gameId);
+        lock.lock();
+        try {
+            if (!latestSnapshots.containsKey(gameId)) {
+                return null;
             }
-        });
+            Path path = gamePath(gameId);
+            try {
+                // Only read as far as the file reaches now, so a line appended while reading is never seen half-written
+                InputStream file = ByteStreams.limit(Files.newInputStream(path), Files.size(path));
+                return new RecordIterator(
+                        path,
+                        new BufferedReader(new InputStreamReader(file, UTF_8)),
+                        from,
+                        to,
+                        cursor);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read snapshots from: " + path, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path gamePath(int gameId) {
+        return configDirPath.resolve(format(GAME_SNAPSHOTS_FORMAT, gameId));
+    }
+
+    /**
+     * Read every snapshot from a JSON lines file, leaving {@code cursor} at the end of it.
+     *
+     * <p>A last line without a newline can only be left by a crash part-way through appending it, so it is truncated
+     * away rather than letting the next snapshot be appended to the end of it.
+     *
+     * <p>An unreadable line is skipped, along with any deltas that follow it up to the next keyframe, since they
+     * can't be applied without it.
+     */
+    private static List<Snapshot> readLines(Path path, DeltaCursor cursor) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        List<Snapshot> gameSnapshots = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == NEWLINE) {
+                if (i > start) {
+                    try {
+                        Snapshot keyframe = decodeKeyframe(bytes, start, i - start);
+                        if (keyframe != null) {
+                            cursor.advance(OBJECT_MAPPER.valueToTree(keyframe));
+                            gameSnapshots.add(keyframe);
+                        } else {
+                            gameSnapshots.add(cursor.read(OBJECT_MAPPER.readTree(bytes, start, i - start)));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Don't let one bad line lose the whole history
+                        LOG.error("Skipping unreadable snapshot at byte {} of: {}", start, path, e);
+                        cursor.reset();
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        if (start < bytes.length) {
+            LOG.warn("Truncating partially-written snapshot at byte {} of: {}", start, path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+        return gameSnapshots;
+    }
+
+    /**
+     * Read only the last snapshot from a JSON lines file, leaving {@code cursor} at the end of it.
+     *
+     * <p>Works backwards from the end of the file to the last keyframe, then rebuilds the last snapshot from there.
+     * As with {@link #readLines(Path, DeltaCursor)}, a partially-written last line is truncated away first.  If any of
+     * the lines since the last keyframe can't be read, falls back to reading the whole file.
+     */
+    private static Optional<Snapshot> readLatest(Path path, DeltaCursor cursor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long lineEnd = lastNewlineBefore(channel, size);
+            if (lineEnd < size - 1) {
+                LOG.warn("Truncating partially-written snapshot at byte {} of: {}", lineEnd + 1, path);
+                channel.truncate(lineEnd + 1);
+            }
+            if (lineEnd < 0) {
+                return Optional.empty();
+            }
+            Deque<JsonNode> records = new ArrayDeque<>();
+            while (lineEnd >= 0) {
+                long lineStart = lastNewlineBefore(channel, lineEnd) + 1;
+                if (lineEnd > lineStart) {
+                    ByteBuffer line = ByteBuffer.allocate(Math.toIntExact(lineEnd - lineStart));
+                    readFully(channel, line, lineStart);
+                    Snapshot keyframe = decodeKeyframe(line.array(), 0, line.limit());
+                    JsonNode record = keyframe != null
+                            ? OBJECT_MAPPER.valueToTree(keyframe)
+                            : OBJECT_MAPPER.readTree(line.array(), 0, line.limit());
+                    records.addFirst(record);
+                    if (DeltaCursor.isKeyframe(record)) {
+                        for (JsonNode next : records) {
+                            cursor.advance(next);
+                        }
+                        // A decoded keyframe that is also the last record is already the latest snapshot
+                        return Optional.of(keyframe != null && records.size() == 1 ? keyframe : cursor.current());
+                    }
+                }
+                lineEnd = lineStart - 1;
+            }
+            LOG.error("No full snapshot found in: {}", path);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unreadable latest snapshot in: {}", path, e);
+        }
+        cursor.reset();
+        return Optional.ofNullable(Iterables.getLast(readLines(path, cursor), null));
+    }
+
+    /**
+     * Find the position of the last newline before {@code end}, or {@code -1} if there isn't one.
+     */
+    private static long lastNewlineBefore(FileChannel channel, long end) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(TAIL_CHUNK_SIZE);
+        long chunkEnd = end;
+        while (chunkEnd > 0) {
+            long chunkStart = Math.max(0, chunkEnd - TAIL_CHUNK_SIZE);
+            chunk.clear().limit(Math.toIntExact(chunkEnd - chunkStart));
+            readFully(channel, chunk, chunkStart);
+            for (int i = chunk.limit() - 1; i >= 0; i--) {
+                if (chunk.get(i) == NEWLINE) {
+                    return chunkStart + i;
+                }
+            }
+            chunkEnd = chunkStart;
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at byte " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Atomically replace a game's JSON lines file with {@code gameSnapshots}, logging rather than throwing on failure.
+     *
+     * @return {@code true} if the snapshots were written, else {@code false}
+     */
+    private boolean rewrite(int gameId, Iterator<Snapshot> gameSnapshots) {
+        try {
+            writeLines(gameId, gameSnapshots);
+            return true;
+        } catch (IOException e) {
+            LOG.error("Failed to write snapshots to: {}", gamePath(gameId), e);
+            return false;
+        }
+    }
+
+    /**
+     * Atomically replace a game's JSON lines file with {@code gameSnapshots}, writing each one out as it's taken.
+     */
+    private void writeLines(int gameId, Iterator<Snapshot> gameSnapshots) throws IOException {
+        Path path = gamePath(gameId);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(
+                tempPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream lines = new BufferedOutputStream(Channels.newOutputStream(channel));
+            while (gameSnapshots.hasNext()) {
+                Snapshot snapshot = gameSnapshots.next();
+                JsonNode record = cursor.nextRecord(snapshot);
+                lines.write(toLine(record, snapshot));
+                cursor.advance(record);
+                count++;
+            }
+            lines.flush();
+            // Always sync here, since the original is replaced as soon as this returns
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            if (e instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e).getCause();
+            }
+            throw e;
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info(
+                "Saved {} snapshots for game {} to: {}",
+                count,
+                gameId,
+                path);
+    }
+
+    /**
+     * Lazily read the snapshots in the JSON array {@code parser} is at the start of, one at a time.
+     *
+     * <p>Failures to read are thrown from the returned {@link Iterator} as {@link UncheckedIOException}s.
+     */
+    private static Iterator<Snapshot> readArray(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of snapshots");
+        }
+        return new AbstractIterator<>() {
+            @Override
+            protected Snapshot computeNext() {
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        return endOfData();
+                    }
+                    if (token == null) {
+                        throw new EOFException("Unexpected end of snapshots array");
+                    }
+                    return OBJECT_MAPPER.readValue(parser, Snapshot.class);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static void deleteMigrated(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            LOG.info("Deleted migrated snapshots file: {}", path);
+        } catch (IOException e) {
+            LOG.error("Failed to delete migrated snapshots file: {}", path, e);
+        }
+    }
+
+    /**
+     * Write {@code record} (as returned for {@code snapshot} by {@link DeltaCursor#nextRecord(Snapshot)}) as a line.
+     */
+    private static byte[] toLine(JsonNode record, Snapshot snapshot) throws IOException {
+        byte[] content = DeltaCursor.isKeyframe(record)
+                ? Base64.getEncoder().encode(CODEC.encode(snapshot))
+                : OBJECT_MAPPER.writeValueAsBytes(record);
+        byte[] line = new byte[content.length + 1];
+        System.arraycopy(content, 0, line, 0, content.length);
+        line[content.length] = NEWLINE;
+        return line;
+    }
+
+    /**
+     * Decode a keyframe line written by {@link #toLine(JsonNode, Snapshot)} straight to its {@link Snapshot}.
+     *
+     * <p>Callers only turn it into a record to move a {@link DeltaCursor} along, rather than rebuilding the snapshot
+     * from that record again.
+     *
+     * @return The decoded {@link Snapshot}, or {@code null} if the line is a JSON record, to be parsed as one
+     */
+    @Nullable
+    private static Snapshot decodeKeyframe(byte[] bytes, int start, int length) throws IOException {
+        if (bytes[start] == JSON_OBJECT_START) {
+            return null;
+        }
+        byte[] encoded;
+        try {
+            encoded = Base64.getDecoder().decode(Arrays.copyOfRange(bytes, start, start + length));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64", e);
+        }
+        return SnapshotCodec.decodeSnapshot(encoded);
+    }
+
+    /**
+     * Lazily reads the snapshots within a range of times from a JSON lines file, one line at a time.
+     *
+     * <p>Records before the range only move the cursor along, without rebuilding their snapshots, and reading stops at
+     * the first record after the range.  As with {@link #readLines(Path, DeltaCursor)}, an unreadable line is skipped,
+     * along with any deltas that follow it up to the next keyframe.
+     */
+    private static class RecordIterator extends AbstractIterator<Snapshot> implements Closeable {
+        private final Path path;
+        private final BufferedReader reader;
+        private final ZonedDateTime from;
+        private final ZonedDateTime to;
+        private final DeltaCursor cursor;
+
+        RecordIterator(Path path, BufferedReader reader, ZonedDateTime from, ZonedDateTime to, DeltaCursor cursor) {
+            this.path = path;
+            this.reader = reader;
+            this.from = from;
+            this.to = to;
+            this.cursor = cursor;
+        }
+
+        @Override
+        protected Snapshot computeNext() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        byte[] bytes = line.getBytes(UTF_8);
+                        Snapshot keyframe = decodeKeyframe(bytes, 0, bytes.length);
+                        if (keyframe != null) {
+                            if (keyframe.getTime().isAfter(to)) {
+                                break;
+                            }
+                            cursor.advance(OBJECT_MAPPER.valueToTree(keyframe));
+                            if (!keyframe.getTime().isBefore(from)) {
+                                return keyframe;
+                            }
+                            continue;
+                        }
+                        JsonNode record = OBJECT_MAPPER.readTree(bytes);
+                        ZonedDateTime time = cursor.timeOf(record);
+                        if (time.isAfter(to)) {
+                            break;
+                        }
+                        if (!time.isBefore(from)) {
+                            return cursor.read(record);
+                        }
+                        cursor.advance(record);
+                    } catch (IOException | RuntimeException e) {
+                        LOG.error("Skipping unreadable snapshot in: {}", path, e);
+                        cursor.reset();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read snapshots from: " + path, e);
+            }
+            return endOfData();
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close: {}", path, e);
+            }
+        }
     }
 }
@@ -1,24 +1,32 @@
 package com.robwettach.webdiplomacy.poller;
 
-import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.toList;
 
 import com.robwettach.webdiplomacy.notify.CompositeNotifier;
 import com.robwettach.webdiplomacy.notify.Notifier;
 import com.robwettach.webdiplomacy.notify.SlackNotifier;
 import com.robwettach.webdiplomacy.notify.StdOutNotifier;
+import com.robwettach.webdiplomacy.page.RequestGovernor;
+import com.robwettach.webdiplomacy.poller.lib.DeadlineAwarePollPolicy;
+import com.robwettach.webdiplomacy.poller.lib.DeltaCursor;
+import com.robwettach.webdiplomacy.poller.lib.DnsCache;
+import com.robwettach.webdiplomacy.poller.lib.HistoryCompactor;
 import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.ListingPoller;
+import com.robwettach.webdiplomacy.poller.lib.PollTask;
 import com.robwettach.webdiplomacy.poller.lib.Poller;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Locale;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,13 +39,23 @@ public class Main {
 
     public static final String ENV_SLACK_WEBHOOK_URL = "SLACK_WEBHOOK_URL";
     public static final String ENV_WEBDIP_POLLER_HOME = "WEBDIP_POLLER_HOME";
+    public static final String ENV_WEBDIP_POLLER_FSYNC = "WEBDIP_POLLER_FSYNC";
+    public static final String ENV_WEBDIP_POLLER_HISTORY = "WEBDIP_POLLER_HISTORY";
+    public static final String ENV_WEBDIP_POLLER_WRITE_BEHIND = "WEBDIP_POLLER_WRITE_BEHIND";
+    public static final String ENV_WEBDIP_POLLER_ARCHIVE_AFTER_DAYS = "WEBDIP_POLLER_ARCHIVE_AFTER_DAYS";
+
+    private static final Duration INITIAL_POLL_SPREAD = Duration.ofMinutes(2);
+    private static final int MAX_CONCURRENT_POLLS = 16;
+    private static final Duration COMPACTION_INTERVAL = Duration.ofDays(1);
 
     /**
      * Main entry point for the webDiplomacy Poller local CLI application.
      *
-     * @param args Command line arguments.  Expected to have one element: the game ID to poll
+     * @param args Command line arguments.  The game IDs to poll, or none to poll every game in the logged-in user's
+     *             "My games" list
      */
     public static void main(String... args) throws InterruptedException {
+        DnsCache.configure();
         // Set the `webdipPollerRoot` property *immediately* so that it's available to Log4j2 before any logging is done
         // https://stackoverflow.com/a/14877698
         Path configDir = getConfigDir();
@@ -51,30 +69,44 @@ public class Main {
 
         ensureConfigDirectory(getConfigDir());
 
-        checkArgument(args.length == 1, "Must provide a game ID");
-        int gameId = Integer.parseInt(args[0]);
-
-        HistoryStore history = new LocalHistoryStore(configDir);
+        HistoryStore history = getHistoryStore(configDir);
+        ScheduledExecutorService compactor = startCompactor(configDir, history);
 
         Notifier notifier = getNotifier();
-        Poller poller = new Poller(gameId, history, notifier);
-
-        ScheduledExecutorService schedule = Executors.newSingleThreadScheduledExecutor();
-
-        ScheduledFuture<?> result = schedule.scheduleAtFixedRate(
-                poller::poll,
-                0,
-                2,
-                TimeUnit.MINUTES);
-        try {
-            result.get();
-            schedule.shutdown();
-        } catch (ExecutionException e) {
-            // If the scheduled task fails, log the exception and exit
-            LOG.fatal("The poller failed!", e);
-            schedule.shutdown();
-            System.exit(1);
+        List<PollTask> tasks;
+        if (args.length == 0) {
+            // One request to the game listings covers every game, so there's only a single task to schedule
+            LOG.info("No game IDs given, polling all games in \"My games\"");
+            tasks = List.of(new ListingPoller(new LocalCookieProvider(configDir), history, notifier));
+        } else {
+            List<Integer> gameIds = Arrays.stream(args).map(Integer::parseInt).distinct().collect(toList());
+            tasks = gameIds.stream()
+                    .map(gameId -> new Poller(gameId, history, notifier))
+                    .collect(toList());
         }
+
+        PollScheduler scheduler = new PollScheduler(
+                tasks,
+                history,
+                new DeadlineAwarePollPolicy(),
+                INITIAL_POLL_SPREAD,
+                MAX_CONCURRENT_POLLS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            compactor.shutdownNow();
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Don't lose any snapshots still waiting to be written
+            history.flush();
+        }));
+        scheduler.start();
+        scheduler.awaitTermination();
+        compactor.shutdownNow();
+        history.flush();
+        LOG.info("Finished polling, request queueing: {}", RequestGovernor.getDefault().getStats());
     }
 
     private static Notifier getNotifier() {
@@ -88,6 +120,73 @@ public class Main {
         return CompositeNotifier.create(notifiers);
     }
 
+    private static HistoryStore getHistoryStore(Path configDir) {
+        boolean writeBehind = !"false".equalsIgnoreCase(System.getenv(ENV_WEBDIP_POLLER_WRITE_BEHIND));
+        LocalHistoryStore.FsyncPolicy fsyncPolicy = getFsyncPolicy();
+        if (writeBehind && fsyncPolicy == LocalHistoryStore.FsyncPolicy.ALWAYS) {
+            // The writer syncs each batch once it's written, which still syncs every snapshot
+            fsyncPolicy = LocalHistoryStore.FsyncPolicy.ON_FLUSH;
+        }
+
+        HistoryStore history;
+        String format = System.getenv(ENV_WEBDIP_POLLER_HISTORY);
+        if (format == null || format.equalsIgnoreCase("lines")) {
+            history = new LocalHistoryStore(configDir, fsyncPolicy);
+        } else if (format.equalsIgnoreCase("segments")) {
+            history = new SegmentedHistoryStore(
+                    configDir,
+                    fsyncPolicy,
+                    DeltaCursor.DEFAULT_KEYFRAME_INTERVAL,
+                    SegmentedHistoryStore.DEFAULT_SEGMENT_SIZE);
+        } else {
+            throw new IllegalArgumentException("Unknown history format: " + format);
+        }
+        return writeBehind ? new WriteBehindHistoryStore(history, WriteBehindHistoryStore.DEFAULT_CAPACITY) : history;
+    }
+
+    /**
+     * Compact the history once a day, starting straight away, archiving finished games to
+     * {@code WEBDIP_POLLER_HOME/archive}.
+     */
+    private static ScheduledExecutorService startCompactor(Path configDir, HistoryStore history) {
+        Path archiveDir = configDir.resolve("archive");
+        ensureConfigDirectory(archiveDir);
+        HistoryCompactor compactor = new HistoryCompactor(
+                history,
+                new LocalHistoryStore(archiveDir, LocalHistoryStore.FsyncPolicy.ON_FLUSH),
+                HistoryCompactor.DEFAULT_FULL_RESOLUTION_PHASES,
+                getFinishedRetention());
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "history-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(
+                compactor::compactAll,
+                0,
+                COMPACTION_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    private static Duration getFinishedRetention() {
+        String days = System.getenv(ENV_WEBDIP_POLLER_ARCHIVE_AFTER_DAYS);
+        if (days == null) {
+            return HistoryCompactor.DEFAULT_FINISHED_RETENTION;
+        } else {
+            return Duration.ofDays(Integer.parseInt(days));
+        }
+    }
+
+    private static LocalHistoryStore.FsyncPolicy getFsyncPolicy() {
+        String fsyncPolicy = System.getenv(ENV_WEBDIP_POLLER_FSYNC);
+        if (fsyncPolicy == null) {
+            return LocalHistoryStore.FsyncPolicy.ALWAYS;
+        } else {
+            return LocalHistoryStore.FsyncPolicy.valueOf(fsyncPolicy.toUpperCase(Locale.ROOT));
+        }
+    }
+
     private static void ensureConfigDirectory(Path configDirPath) {
         // Handles if the directory exists first, too.
         try {
@@ -0,0 +1,198 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.PollPolicy;
+import com.robwettach.webdiplomacy.poller.lib.PollTask;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Schedules many {@link PollTask}s at once on a bounded pool of I/O workers.
+ *
+ * <p>Each task's first poll is given its own slot within {@code initialSpread}, so requests are spread evenly instead
+ * of all firing together.  After that, the {@link PollPolicy} picks each task's next poll time from the latest
+ * {@link com.robwettach.webdiplomacy.diff.Snapshot Snapshot} of each of its games, polling as soon as the most urgent
+ * of them needs it.  A task's next poll is only scheduled once its current poll has finished, and a poll that overran
+ * its successor's slot is followed by a single immediate poll instead of a backlog of them, so one slow task only ever
+ * delays itself.  A task stops being polled once none of its games need polling, unless it has an
+ * {@link PollTask#getIdleDelay() idle delay} to fall back to.  Once every task has stopped, the scheduler shuts itself
+ * down.
+ *
+ * <p>Workers run on virtual threads when the JDK supports them, and on daemon platform threads otherwise.
+ */
+public class PollScheduler {
+    private static final Logger LOG = LogManager.getLogger(PollScheduler.class);
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(2);
+
+    private final List<PollTask> tasks;
+    private final HistoryStore history;
+    private final PollPolicy policy;
+    private final long initialSpreadNanos;
+    private final AtomicInteger activeTasks;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+
+    /**
+     * Create a {@link PollScheduler} for the given {@code tasks}.
+     *
+     * @param tasks The {@link PollTask}s to schedule
+     * @param history The {@link HistoryStore} the {@code tasks} write to, used to find each game's latest snapshot
+     * @param policy The {@link PollPolicy} deciding when each game is next polled
+     * @param initialSpread The window across which to spread the first poll of each task
+     * @param maxConcurrentPolls The maximum number of polls that may be in flight at once
+     */
+    public PollScheduler(
+            List<? extends PollTask> tasks,
+            HistoryStore history,
+            PollPolicy policy,
+            Duration initialSpread,
+            int maxConcurrentPolls) {
+        checkNotNull(tasks, "tasks must not be null");
+        checkNotNull(history, "history must not be null");
+        checkNotNull(policy, "policy must not be null");
+        checkArgument(!tasks.isEmpty(), "Must provide at least one task");
+        checkArgument(!initialSpread.isNegative(), "initialSpread must not be negative");
+        checkArgument(maxConcurrentPolls > 0, "maxConcurrentPolls must be positive");
+        this.tasks = ImmutableList.copyOf(tasks);
+        this.history = history;
+        this.policy = policy;
+        this.initialSpreadNanos = initialSpread.toNanos();
+        this.activeTasks = new AtomicInteger(tasks.size());
+        // The timer only ever hands work off to the workers, so a single thread is plenty
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("poll-timer")
+                .setDaemon(true)
+                .build());
+        this.workers = Executors.newFixedThreadPool(maxConcurrentPolls, workerThreadFactory());
+    }
+
+    /**
+     * Start polling, staggering each task's first poll evenly across {@code initialSpread}.
+     */
+    public void start() {
+        long spacingNanos = initialSpreadNanos / tasks.size();
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks.size(); i++) {
+            schedule(tasks.get(i), start + i * spacingNanos);
+        }
+        LOG.info("Scheduled {} tasks, one every {} ms", tasks.size(), TimeUnit.NANOSECONDS.toMillis(spacingNanos));
+    }
+
+    /**
+     * Stop scheduling new polls, letting any in-flight polls finish.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * Block until {@link #shutdown()} has been called and all in-flight polls have finished.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!workers.awaitTermination(1, TimeUnit.DAYS)) {
+            LOG.debug("Still waiting for pollers to terminate");
+        }
+    }
+
+    private void schedule(PollTask task, long slotNanos) {
+        try {
+            timer.schedule(
+                    () -> workers.execute(() -> poll(task, slotNanos)),
+                    slotNanos - System.nanoTime(),
+                    TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Not rescheduling {} after shutdown", task.getName());
+        }
+    }
+
+    private void poll(PollTask task, long slotNanos) {
+        // Measure the next delay from the start of this slot, so slow polls don't push every later poll back
+        ZonedDateTime slotTime = ZonedDateTime.now(ZoneOffset.UTC)
+                .minusNanos(Math.max(0, System.nanoTime() - slotNanos));
+        try {
+            task.poll();
+        } catch (RuntimeException e) {
+            // Keep polling the other tasks (and this one) rather than taking the whole process down
+            LOG.error("Failed to poll {}", task.getName(), e);
+        }
+
+        Optional<Duration> delay;
+        try {
+            delay = nextPollDelay(task, slotTime);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to pick the next poll time for {}", task.getName(), e);
+            delay = Optional.of(RETRY_DELAY);
+        }
+        if (delay.isEmpty()) {
+            LOG.info("{} needs no more polling", task.getName());
+            if (activeTasks.decrementAndGet() == 0) {
+                LOG.info("Nothing left to poll, shutting down");
+                shutdown();
+            }
+            return;
+        }
+
+        long next = slotNanos + delay.get().toNanos();
+        long now = System.nanoTime();
+        if (next < now) {
+            LOG.warn("Poll of {} overran its next slot, polling again immediately", task.getName());
+            next = now;
+        }
+        LOG.debug("Next poll of {} in {}", task.getName(), Duration.ofNanos(next - now));
+        schedule(task, next);
+    }
+
+    private Optional<Duration> nextPollDelay(PollTask task, ZonedDateTime slotTime) {
+        List<Integer> gameIds = task.getGameIds();
+        if (gameIds.isEmpty()) {
+            // Nothing seen yet (e.g. an empty game listing), so let the policy pick a delay for a game with no history
+            return policy.nextPollDelay(Optional.empty(), slotTime);
+        }
+        // Poll as soon as the most urgent game needs it, and only stop once none of them do
+        return gameIds.stream()
+                .map(gameId -> policy.nextPollDelay(history.getLatestSnapshotForGame(gameId), slotTime))
+                .flatMap(Optional::stream)
+                .min(Comparator.naturalOrder())
+                .or(task::getIdleDelay);
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        try {
+            // Thread.ofVirtual().name("poller-", 0).factory(), looked up reflectively so we still run on JDKs
+            // without virtual threads
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            Method factory = builderClass.getMethod("factory");
+            Object builder = name.invoke(Thread.class.getMethod("ofVirtual").invoke(null), "poller-", 0L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Virtual threads are unavailable, falling back to platform threads");
+            return new ThreadFactoryBuilder()
+                    .setNameFormat("poller-%d")
+                    .setDaemon(true)
+                    .build();
+        }
+    }
+}
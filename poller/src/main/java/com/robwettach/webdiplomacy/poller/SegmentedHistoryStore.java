@@ -0,0 +1,689 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Verify.verify;
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.poller.LocalHistoryStore.FsyncPolicy;
+import com.robwettach.webdiplomacy.poller.lib.DeltaCursor;
+import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.SnapshotCodec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link HistoryStore} that manages history on local disk in append-only segment files, read through memory maps.
+ *
+ * <p>Each game's history lives in {@code WEBDIP_POLLER_HOME/segments/$gameId/}, as a sequence of segment files that
+ * roll over once they reach a size limit.  A segment is a run of frames, each a small fixed-size header (the payload
+ * length, the record type, the snapshot's time and a CRC32 of the payload) followed by a {@link DeltaCursor} record:
+ * either a full {@link Snapshot} encoded with the {@link SnapshotCodec}, or a JSON delta from the previous one.  Every
+ * segment starts with a full snapshot, so each can be read on its own.
+ *
+ * <p>Opening a game only walks the frame headers to build a sparse index of the time and position of every full
+ * snapshot, without decoding any of them.  Point-in-time and range lookups binary search that index for the nearest
+ * full snapshot, and only decode from there.  Snapshots must be added to each game in time order.
+ *
+ * <p>Safe to share between pollers running on different threads.
+ */
+public class SegmentedHistoryStore implements HistoryStore {
+    private static final Logger LOG = LogManager.getLogger(SegmentedHistoryStore.class);
+
+    /**
+     * Roll over to a new segment once the current one reaches 8 MiB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final String SEGMENTS_DIR_NAME = "segments";
+    private static final String SEGMENT_FORMAT = "%010d.segment";
+    private static final String SEQUENCE_KEY = "sequence";
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile(format(
+            "(?<%s>\\d{10})\\.segment",
+            SEQUENCE_KEY));
+    private static final Pattern GAME_DIR_PATTERN = Pattern.compile("\\d+");
+    // A game's replacement segments are written alongside its existing ones, then swapped in
+    private static final String NEW_SUFFIX = ".new";
+    private static final String OLD_SUFFIX = ".old";
+
+    // int payload length, byte type, long epoch second, int nano, int CRC32 of the payload
+    private static final int HEADER_LENGTH = 4 + 1 + 8 + 4 + 4;
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+    private static final SnapshotCodec CODEC = SnapshotCodec.create(SnapshotCodec.Compression.DEFLATE);
+
+    private final Path segmentsPath;
+    private final FsyncPolicy fsyncPolicy;
+    private final int keyframeInterval;
+    private final int segmentSize;
+    private final Map<Integer, GameLog> games = new HashMap<>();
+    // Appended to since the last flush, under FsyncPolicy.ON_FLUSH
+    private final Set<Segment> unsynced = new HashSet<>();
+
+    /**
+     * Create a {@link SegmentedHistoryStore} instance rooted at {@code configDirPath}, syncing every snapshot to disk.
+     *
+     * @param configDirPath The root {@code WEBDIP_POLLER_HOME} directory
+     * @see #SegmentedHistoryStore(Path, FsyncPolicy, int, int)
+     */
+    public SegmentedHistoryStore(Path configDirPath) {
+        this(configDirPath, FsyncPolicy.ALWAYS, DeltaCursor.DEFAULT_KEYFRAME_INTERVAL, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a {@link SegmentedHistoryStore} instance rooted at {@code configDirPath}.
+     *
+     * <p>Each game's segments are opened the first time the game is used, rather than up front.
+     *
+     * @param configDirPath The root {@code WEBDIP_POLLER_HOME} directory
+     * @param fsyncPolicy The {@link FsyncPolicy} for appended snapshots
+     * @param keyframeInterval Write a full snapshot once every this many snapshots, and deltas in between
+     * @param segmentSize The size in bytes at which to roll over to a new segment
+     */
+    public SegmentedHistoryStore(Path configDirPath, FsyncPolicy fsyncPolicy, int keyframeInterval, int segmentSize) {
+        checkNotNull(configDirPath, "configDirPath must not be null");
+        checkNotNull(fsyncPolicy, "fsyncPolicy must not be null");
+        checkArgument(keyframeInterval > 0, "keyframeInterval must be positive");
+        checkArgument(segmentSize > HEADER_LENGTH, "segmentSize must be larger than a frame header");
+        this.segmentsPath = configDirPath.resolve(SEGMENTS_DIR_NAME);
+        this.fsyncPolicy = fsyncPolicy;
+        this.keyframeInterval = keyframeInterval;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public synchronized ImmutableList<Snapshot> getSnapshotsForGame(int gameId) {
+        return ImmutableList.copyOf(new FrameIterator(
+                game(gameId), Instant.MIN, Instant.MAX, new DeltaCursor(keyframeInterval)));
+    }
+
+    @Override
+    public synchronized ImmutableList<Snapshot> getSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        checkArgument(!to.isBefore(from), "to must not be before from");
+        return ImmutableList.copyOf(new FrameIterator(
+                game(gameId), from.toInstant(), to.toInstant(), new DeltaCursor(keyframeInterval)));
+    }
+
+    @Override
+    public synchronized Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        checkArgument(!to.isBefore(from), "to must not be before from");
+        return Streams.stream(new FrameIterator(
+                game(gameId), from.toInstant(), to.toInstant(), new DeltaCursor(keyframeInterval)));
+    }
+
+    @Override
+    public synchronized Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        DeltaCursor cursor = new DeltaCursor(keyframeInterval);
+        // Leaves the cursor at the last snapshot at or before time
+        Iterators.getLast(new FrameIterator(game(gameId), time.toInstant(), time.toInstant(), cursor), null);
+        return current(cursor);
+    }
+
+    @Override
+    public synchronized Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
+        return game(gameId).latest;
+    }
+
+    @Override
+    public synchronized void addSnapshot(int gameId, Snapshot snapshot) {
+        GameLog game = game(gameId);
+        try {
+            append(game, snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append snapshot for game " + gameId, e);
+        }
+    }
+
+    @Override
+    public synchronized ImmutableSet<Integer> getGameIds() {
+        ImmutableSet.Builder<Integer> gameIds = ImmutableSet.builder();
+        games.forEach((gameId, game) -> {
+            if (game.latest.isPresent()) {
+                gameIds.add(gameId);
+            }
+        });
+        if (Files.isDirectory(segmentsPath)) {
+            try (Stream<Path> paths = Files.list(segmentsPath)) {
+                paths.map(p -> p.getFileName().toString())
+                        .filter(name -> GAME_DIR_PATTERN.matcher(name).matches())
+                        .map(Integer::parseInt)
+                        .filter(gameId -> !games.containsKey(gameId))
+                        .forEach(gameIds::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list games in: " + segmentsPath, e);
+            }
+        }
+        return gameIds.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes the game's new history to a fresh set of segments alongside the old ones, then swaps them in,
+     * blocking every other use of this store until it's done.  If that's cut short, opening the game again finishes
+     * or abandons the swap.
+     */
+    @Override
+    public synchronized void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        checkArgument(
+                snapshots.stream().noneMatch(s -> s.getTime().isAfter(until)),
+                "snapshots must not be after until");
+        GameLog game = game(gameId);
+        List<Snapshot> gameSnapshots = new ArrayList<>(snapshots);
+        new FrameIterator(game, until.toInstant(), Instant.MAX, new DeltaCursor(keyframeInterval))
+                .forEachRemaining(s -> {
+                    if (s.getTime().isAfter(until)) {
+                        gameSnapshots.add(s);
+                    }
+                });
+        if (gameSnapshots.isEmpty()) {
+            deleteGame(gameId);
+            return;
+        }
+        Path newPath = game.path.resolveSibling(game.path.getFileName() + NEW_SUFFIX);
+        Path oldPath = game.path.resolveSibling(game.path.getFileName() + OLD_SUFFIX);
+        try {
+            deleteRecursively(newPath);
+            GameLog replacement = new GameLog(newPath);
+            for (Snapshot snapshot : gameSnapshots) {
+                append(replacement, snapshot);
+            }
+            // Always sync here, since the old segments are deleted as soon as they're swapped out
+            for (Segment segment : replacement.segments) {
+                segment.force();
+            }
+            unsynced.removeIf(s -> s.path.startsWith(game.path) || s.path.startsWith(newPath));
+            games.remove(gameId);
+            if (Files.isDirectory(game.path)) {
+                Files.move(game.path, oldPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(newPath, game.path, StandardCopyOption.ATOMIC_MOVE);
+            deleteRecursively(oldPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replace snapshots for game " + gameId, e);
+        }
+        LOG.info("Replaced history of game {} with {} snapshots", gameId, gameSnapshots.size());
+    }
+
+    @Override
+    public synchronized void deleteGame(int gameId) {
+        Path path = segmentsPath.resolve(String.valueOf(gameId));
+        unsynced.removeIf(s -> s.path.startsWith(path));
+        games.remove(gameId);
+        try {
+            deleteRecursively(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete segments for game " + gameId, e);
+        }
+        LOG.info("Deleted segments for game {} from: {}", gameId, path);
+    }
+
+    @Override
+    public synchronized void flush() {
+        for (Segment segment : unsynced) {
+            try {
+                segment.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync segment: " + segment.path, e);
+            }
+        }
+        unsynced.clear();
+    }
+
+    private GameLog game(int gameId) {
+        GameLog game = games.get(gameId);
+        if (game == null) {
+            try {
+                game = open(gameId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open segments for game " + gameId, e);
+            }
+            games.put(gameId, game);
+        }
+        return game;
+    }
+
+    /**
+     * Append a snapshot to a game's last segment, rolling over to a new one if it's full.
+     */
+    private void append(GameLog game, Snapshot snapshot) throws IOException {
+        Instant time = snapshot.getTime().toInstant();
+        checkArgument(
+                game.latestTime == null || !time.isBefore(game.latestTime),
+                "Snapshots must be added in time order");
+        JsonNode record = game.writer.nextRecord(snapshot);
+        byte[] payload = payload(record, snapshot);
+        Segment active = game.segments.isEmpty() ? null : game.segments.get(game.segments.size() - 1);
+        if (active == null || (active.size > 0 && active.size + HEADER_LENGTH + payload.length > segmentSize)) {
+            active = game.roll();
+            // Every segment starts with a keyframe, so that it can be read on its own
+            game.writer.reset();
+            record = game.writer.nextRecord(snapshot);
+            payload = payload(record, snapshot);
+        }
+        int offset = active.append(frame(DeltaCursor.isKeyframe(record) ? KEYFRAME : DELTA, time, payload));
+        if (DeltaCursor.isKeyframe(record)) {
+            game.index.add(new IndexEntry(time, game.segments.size() - 1, offset));
+        }
+        game.writer.advance(record);
+        game.latest = Optional.of(snapshot);
+        game.latestTime = time;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(toList());
+        }
+        for (Path p : paths) {
+            Files.delete(p);
+        }
+    }
+
+    /**
+     * Walk the frame headers of every segment for a game to build its index, then replay from its last keyframe to
+     * find its latest snapshot.
+     */
+    private GameLog open(int gameId) throws IOException {
+        GameLog game = new GameLog(segmentsPath.resolve(String.valueOf(gameId)));
+        recoverReplacement(game.path);
+        if (!Files.isDirectory(game.path)) {
+            return game;
+        }
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(game.path)) {
+            paths = files.filter(p -> SEGMENT_PATTERN.matcher(p.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(toList());
+        }
+        for (Path path : paths) {
+            Matcher sequenceMatcher = SEGMENT_PATTERN.matcher(path.getFileName().toString());
+            verify(sequenceMatcher.matches(), "Not a segment file: %s", path);
+            game.segments.add(new Segment(path, Integer.parseInt(sequenceMatcher.group(SEQUENCE_KEY))));
+            indexSegment(game, game.segments.size() - 1, game.segments.size() == paths.size());
+        }
+
+        // Nothing is at or after Instant.MAX, so this only moves the cursor from the last keyframe to the end
+        Iterators.getLast(new FrameIterator(game, Instant.MAX, Instant.MAX, game.writer), null);
+        game.latest = current(game.writer);
+        game.latestTime = game.latest.map(s -> s.getTime().toInstant()).orElse(null);
+        LOG.info(
+                "Opened {} segments with {} full snapshots for game {} from: {}",
+                game.segments.size(),
+                game.index.size(),
+                gameId,
+                game.path);
+        return game;
+    }
+
+    /**
+     * Finish or abandon a {@link #replaceSnapshotsUntil(int, ZonedDateTime, List)} that was cut short.
+     *
+     * <p>The new segments are complete before the old ones are moved aside, so if the old ones are gone the new ones
+     * can be moved into place.  Otherwise whichever of the two is left over alongside the game's segments is deleted.
+     */
+    private static void recoverReplacement(Path path) throws IOException {
+        Path newPath = path.resolveSibling(path.getFileName() + NEW_SUFFIX);
+        Path oldPath = path.resolveSibling(path.getFileName() + OLD_SUFFIX);
+        if (!Files.exists(path) && Files.isDirectory(newPath) && Files.isDirectory(oldPath)) {
+            LOG.warn("Finishing interrupted replacement of: {}", path);
+            Files.move(newPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } else if (Files.exists(newPath)) {
+            LOG.warn("Abandoning interrupted replacement of: {}", path);
+        }
+        deleteRecursively(newPath);
+        deleteRecursively(oldPath);
+    }
+
+    /**
+     * Add every keyframe in a segment to the game's index.
+     *
+     * <p>The last segment is the only one that can have been cut short by a crash part-way through an append, so a
+     * partially-written last frame there is truncated away rather than letting the next frame be appended after it.
+     * Anything unreadable in an earlier segment is left in place, but never read.
+     */
+    private static void indexSegment(GameLog game, int segmentIndex, boolean last) throws IOException {
+        Segment segment = game.segments.get(segmentIndex);
+        ByteBuffer buffer = segment.view();
+        int position = 0;
+        int lastFrame = -1;
+        while (position + HEADER_LENGTH <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length < 0 || length > buffer.limit() - position - HEADER_LENGTH) {
+                break;
+            }
+            Instant time;
+            try {
+                time = headerTime(buffer, position);
+            } catch (DateTimeException e) {
+                break;
+            }
+            if (buffer.get(position + 4) == KEYFRAME) {
+                game.index.add(new IndexEntry(time, segmentIndex, position));
+            }
+            lastFrame = position;
+            position += HEADER_LENGTH + length;
+        }
+        if (last && lastFrame >= 0 && !checksumMatches(buffer, lastFrame)) {
+            LOG.warn("Last frame at byte {} fails its checksum in: {}", lastFrame, segment.path);
+            if (buffer.get(lastFrame + 4) == KEYFRAME) {
+                game.index.remove(game.index.size() - 1);
+            }
+            position = lastFrame;
+        }
+        if (position < buffer.limit()) {
+            if (last) {
+                LOG.warn("Truncating partially-written frame at byte {} of: {}", position, segment.path);
+                segment.truncate(position);
+            } else {
+                LOG.error("Ignoring unreadable frames from byte {} of: {}", position, segment.path);
+                segment.size = position;
+            }
+        }
+    }
+
+    /**
+     * Binary search for the last keyframe strictly before {@code time}, so that replaying from it sees every frame at
+     * or after {@code time}.
+     *
+     * @return The index of the keyframe, or {@code -1} if there isn't one
+     */
+    private static int lastKeyframeBefore(List<IndexEntry> index, Instant time) {
+        int low = 0;
+        int high = index.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (index.get(middle).time.isBefore(time)) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private static Optional<Snapshot> current(DeltaCursor cursor) {
+        if (!cursor.hasCurrent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(cursor.current());
+        } catch (IOException e) {
+            LOG.error("Failed to rebuild snapshot", e);
+            return Optional.empty();
+        }
+    }
+
+    private static Instant headerTime(ByteBuffer buffer, int position) {
+        return Instant.ofEpochSecond(buffer.getLong(position + 5), buffer.getInt(position + 13));
+    }
+
+    private static boolean checksumMatches(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice().position(position + HEADER_LENGTH).limit(position + HEADER_LENGTH + length));
+        return (int) crc.getValue() == buffer.getInt(position + 17);
+    }
+
+    private static byte[] payload(JsonNode record, Snapshot snapshot) throws IOException {
+        return DeltaCursor.isKeyframe(record) ? CODEC.encode(snapshot) : OBJECT_MAPPER.writeValueAsBytes(record);
+    }
+
+    private static ByteBuffer frame(byte type, Instant time, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_LENGTH + payload.length)
+                .putInt(payload.length)
+                .put(type)
+                .putLong(time.getEpochSecond())
+                .putInt(time.getNano())
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+    }
+
+    /**
+     * Lazily replays a game's frames onto a cursor, starting from the last keyframe before {@code from} and stopping
+     * at the first frame after {@code to}, returning the snapshots from {@code from} onwards.
+     *
+     * <p>Frames before {@code from} only move the cursor along, and frames are only read as they're asked for, each
+     * under the store's lock.  Keyframes are decoded straight from the {@link SnapshotCodec}, and only deltas need
+     * rebuilding through the cursor.  Unreadable frames are skipped, along with any deltas that follow them up to the
+     * next keyframe.  Frame headers have all been checked by {@link #indexSegment(GameLog, int, boolean)} or written
+     * by this store, so are trusted here.
+     */
+    private class FrameIterator extends AbstractIterator<Snapshot> {
+        private final GameLog game;
+        private final Instant from;
+        private final Instant to;
+        private final DeltaCursor cursor;
+        private int segmentIndex;
+        private int position;
+
+        FrameIterator(GameLog game, Instant from, Instant to, DeltaCursor cursor) {
+            this.game = game;
+            this.from = from;
+            this.to = to;
+            this.cursor = cursor;
+            int start = lastKeyframeBefore(game.index, from);
+            this.segmentIndex = start < 0 ? 0 : game.index.get(start).segment;
+            this.position = start < 0 ? 0 : game.index.get(start).offset;
+        }
+
+        @Override
+        protected Snapshot computeNext() {
+            synchronized (SegmentedHistoryStore.this) {
+                for (; segmentIndex < game.segments.size(); segmentIndex++, position = 0) {
+                    Segment segment = game.segments.get(segmentIndex);
+                    ByteBuffer buffer;
+                    try {
+                        // Viewed again each time, in case the segment has been appended to since
+                        buffer = segment.view();
+                    } catch (IOException e) {
+                        LOG.error("Skipping unreadable segment: {}", segment.path, e);
+                        cursor.reset();
+                        continue;
+                    }
+                    while (position + HEADER_LENGTH <= buffer.limit()) {
+                        int frame = position;
+                        int length = buffer.getInt(frame);
+                        Instant time = headerTime(buffer, frame);
+                        if (time.isAfter(to)) {
+                            return endOfData();
+                        }
+                        position += HEADER_LENGTH + length;
+                        try {
+                            Snapshot snapshot = readFrame(buffer, frame, !time.isBefore(from));
+                            if (snapshot != null) {
+                                return snapshot;
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            LOG.error("Skipping unreadable frame at byte {} of: {}", frame, segment.path, e);
+                            cursor.reset();
+                        }
+                    }
+                }
+                return endOfData();
+            }
+        }
+
+        /**
+         * Move the cursor past a frame.
+         *
+         * @return The frame's {@link Snapshot} if {@code wanted}, else {@code null}
+         */
+        @Nullable
+        private Snapshot readFrame(ByteBuffer buffer, int frame, boolean wanted) throws IOException {
+            if (!checksumMatches(buffer, frame)) {
+                throw new IOException("Checksum mismatch");
+            }
+            int length = buffer.getInt(frame);
+            byte[] bytes = new byte[length];
+            buffer.slice().position(frame + HEADER_LENGTH).limit(frame + HEADER_LENGTH + length).get(bytes);
+            if (buffer.get(frame + 4) == KEYFRAME) {
+                Snapshot snapshot = SnapshotCodec.decodeSnapshot(bytes);
+                cursor.advance(OBJECT_MAPPER.valueToTree(snapshot));
+                return wanted ? snapshot : null;
+            }
+            JsonNode record = OBJECT_MAPPER.readTree(bytes);
+            if (wanted) {
+                return cursor.read(record);
+            }
+            cursor.advance(record);
+            return null;
+        }
+    }
+
+    /**
+     * Everything known about one game's history.
+     */
+    private class GameLog {
+        final Path path;
+        final List<Segment> segments = new ArrayList<>();
+        // The time and position of every keyframe, in time order
+        final List<IndexEntry> index = new ArrayList<>();
+        // Positioned after the last frame, to write the next one
+        final DeltaCursor writer = new DeltaCursor(keyframeInterval);
+        Optional<Snapshot> latest = Optional.empty();
+        @Nullable
+        Instant latestTime;
+
+        GameLog(Path path) {
+            this.path = path;
+        }
+
+        Segment roll() throws IOException {
+            Files.createDirectories(path);
+            int sequence = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence + 1;
+            Segment segment = new Segment(path.resolve(format(SEGMENT_FORMAT, sequence)), sequence);
+            segments.add(segment);
+            LOG.info("Started segment: {}", segment.path);
+            return segment;
+        }
+    }
+
+    /**
+     * A single segment file, mapped into memory for reading.
+     */
+    private class Segment {
+        final Path path;
+        final int sequence;
+        int size;
+        @Nullable
+        private MappedByteBuffer map;
+
+        Segment(Path path, int sequence) throws IOException {
+            this.path = path;
+            this.sequence = sequence;
+            this.size = Files.exists(path) ? Math.toIntExact(Files.size(path)) : 0;
+        }
+
+        /**
+         * Get a read-only view of the whole segment, mapping it again if it has grown since it was last mapped.
+         */
+        ByteBuffer view() throws IOException {
+            if (map == null || map.capacity() != size) {
+                if (size == 0) {
+                    return ByteBuffer.allocate(0);
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            }
+            return map.duplicate();
+        }
+
+        /**
+         * Append a frame.
+         *
+         * @return The offset at which the frame was written
+         */
+        int append(ByteBuffer frame) throws IOException {
+            int offset = size;
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    channel.force(false);
+                } else if (fsyncPolicy == FsyncPolicy.ON_FLUSH) {
+                    unsynced.add(this);
+                }
+            }
+            size += frame.limit();
+            return offset;
+        }
+
+        void force() throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+
+        void truncate(int length) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            size = length;
+            map = null;
+        }
+    }
+
+    /**
+     * The time and position of a keyframe.
+     */
+    private static class IndexEntry {
+        final Instant time;
+        final int segment;
+        final int offset;
+
+        IndexEntry(Instant time, int segment, int offset) {
+            this.time = time;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
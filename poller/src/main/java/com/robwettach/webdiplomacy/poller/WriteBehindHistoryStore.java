@@ -0,0 +1,341 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.poller.lib.HistoryStore;
+import java.io.Closeable;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link HistoryStore} that queues added snapshots to be written to another {@link HistoryStore} by a dedicated writer
+ * thread, so that pollers don't wait on the disk.
+ *
+ * <p>The writer takes everything queued at once, from however many games, writes it all to the underlying store, and
+ * then {@link HistoryStore#flush() flushes} it once for the whole batch.  Backed by a store using
+ * {@link LocalHistoryStore.FsyncPolicy#ON_FLUSH}, that makes one disk sync cover every snapshot in the batch.
+ *
+ * <p>The queue is bounded, and adding a snapshot blocks while it is full, so a slow disk slows the pollers down rather
+ * than letting the queue grow without limit.  {@link #getLatestSnapshotForGame(int)} returns the latest snapshot
+ * added, even if it is still queued, and every other read first waits for the snapshots queued before it to be
+ * written.  Snapshots still queued when the process exits are lost, unless {@link #flush()} or {@link #close()} is
+ * called first, e.g. from a shutdown hook.
+ *
+ * <p>A snapshot the underlying store fails to write is kept, still returned as the latest, and retried along with the
+ * next batch, or after {@link #RETRY_INTERVAL_MILLIS} if nothing else is queued.  Snapshots of the same game queued
+ * after it wait to be retried behind it, so they are still written in order.  The first failure for each game is
+ * thrown, once, from the next call to {@link #addSnapshot(int, Snapshot)} for that game, or from {@link #flush()}, so
+ * that callers know the snapshots they added may not have been stored.  Reads don't throw them, since they already
+ * see every snapshot added, written or not.
+ *
+ * <p>Safe to share between pollers running on different threads.
+ */
+public class WriteBehindHistoryStore implements HistoryStore, Closeable {
+    private static final Logger LOG = LogManager.getLogger(WriteBehindHistoryStore.class);
+
+    /**
+     * Queue up to 1024 snapshots before blocking pollers, far more than even many games polled at once should need.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * Retry snapshots that failed to be written every 5 seconds while nothing else is queued.
+     */
+    public static final long RETRY_INTERVAL_MILLIS = 5000;
+
+    private final HistoryStore delegate;
+    private final BlockingQueue<QueuedSnapshot> queue;
+    // The latest snapshot of each game that hasn't been written yet
+    private final Map<Integer, Snapshot> unwritten = new ConcurrentHashMap<>();
+    private final Thread writer;
+    // Held while writing to the delegate, so that a game isn't deleted in the middle of a batch
+    private final Object writeLock = new Object();
+    // Snapshots that failed to be written, oldest first, guarded by writeLock
+    private final List<QueuedSnapshot> retrying = new ArrayList<>();
+    // Guarded by this
+    private long queuedCount;
+    private long writtenCount;
+    private int retryingCount;
+    private final Map<Integer, RuntimeException> writeFailures = new HashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Create a {@link WriteBehindHistoryStore} writing to {@code delegate}, and start its writer thread.
+     *
+     * @param delegate The {@link HistoryStore} to write snapshots to
+     * @param capacity The number of snapshots that can be queued before adding more blocks
+     */
+    public WriteBehindHistoryStore(HistoryStore delegate, int capacity) {
+        checkNotNull(delegate, "delegate must not be null");
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeQueued, "history-writer");
+        // Don't keep the process alive just for this; flush() from a shutdown hook instead
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public List<Snapshot> getSnapshotsForGame(int gameId) {
+        awaitWritten();
+        return delegate.getSnapshotsForGame(gameId);
+    }
+
+    @Override
+    public List<Snapshot> getSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        awaitWritten();
+        return delegate.getSnapshotsBetween(gameId, from, to);
+    }
+
+    @Override
+    public Stream<Snapshot> streamSnapshotsBetween(int gameId, ZonedDateTime from, ZonedDateTime to) {
+        awaitWritten();
+        return delegate.streamSnapshotsBetween(gameId, from, to);
+    }
+
+    @Override
+    public Optional<Snapshot> getSnapshotAt(int gameId, ZonedDateTime time) {
+        awaitWritten();
+        return delegate.getSnapshotAt(gameId, time);
+    }
+
+    @Override
+    public Optional<Snapshot> getLatestSnapshotForGame(int gameId) {
+        // Only removed once written, so if it's not here the delegate has it
+        Snapshot latest = unwritten.get(gameId);
+        return latest != null ? Optional.of(latest) : delegate.getLatestSnapshotForGame(gameId);
+    }
+
+    /**
+     * Queue a {@link Snapshot} to be written, blocking while the queue is full.
+     *
+     * @param gameId The Id of the game for which to add a snapshot
+     * @param snapshot The {@link Snapshot} to add
+     * @throws IllegalStateException if this store has been closed, an earlier snapshot of the game failed to be
+     *                               written, or the thread is interrupted while waiting; in each case {@code snapshot}
+     *                               isn't queued
+     */
+    @Override
+    public void addSnapshot(int gameId, Snapshot snapshot) {
+        checkNotNull(snapshot, "snapshot must not be null");
+        checkState(!closed, "Cannot add snapshots after closing");
+        checkWriteFailure(gameId);
+        unwritten.put(gameId, snapshot);
+        try {
+            queue.put(new QueuedSnapshot(gameId, snapshot));
+        } catch (InterruptedException e) {
+            unwritten.remove(gameId, snapshot);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting to queue snapshot for game " + gameId, e);
+        }
+        synchronized (this) {
+            queuedCount++;
+        }
+    }
+
+    @Override
+    public Set<Integer> getGameIds() {
+        awaitWritten();
+        return delegate.getGameIds();
+    }
+
+    @Override
+    public void replaceSnapshotsUntil(int gameId, ZonedDateTime until, List<Snapshot> snapshots) {
+        awaitWritten();
+        delegate.replaceSnapshotsUntil(gameId, until, snapshots);
+    }
+
+    @Override
+    public void deleteGame(int gameId) {
+        awaitWritten();
+        synchronized (writeLock) {
+            // Otherwise they'd be written again once the writer next retries
+            retrying.removeIf(queued -> queued.gameId == gameId);
+            unwritten.remove(gameId);
+            delegate.deleteGame(gameId);
+            synchronized (this) {
+                retryingCount = retrying.size();
+                writeFailures.remove(gameId);
+            }
+        }
+    }
+
+    /**
+     * Wait for every {@link Snapshot} added so far to be written and flushed to the underlying store.
+     *
+     * @throws IllegalStateException if snapshots of any game failed to be written since the failure was last thrown, or
+     *                               are still waiting to be retried
+     */
+    @Override
+    public void flush() {
+        awaitWritten();
+        Map<Integer, RuntimeException> failures;
+        int stillRetrying;
+        synchronized (this) {
+            failures = new HashMap<>(writeFailures);
+            writeFailures.clear();
+            stillRetrying = retryingCount;
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Failed to write snapshots for games " + failures.keySet(),
+                    failures.values().iterator().next());
+        }
+        checkState(stillRetrying == 0, "%s snapshots are still waiting to be retried", stillRetrying);
+    }
+
+    /**
+     * Write out everything still queued, and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        awaitWritten();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything added while closing, after the writer had stopped, and one last try at anything that failed
+        List<QueuedSnapshot> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        synchronized (writeLock) {
+            if (!remaining.isEmpty() || !retrying.isEmpty()) {
+                write(remaining);
+            }
+            if (!retrying.isEmpty()) {
+                LOG.error("Lost {} snapshots that could not be written", retrying.size());
+            }
+        }
+    }
+
+    private synchronized void awaitWritten() {
+        long target = queuedCount;
+        while (writtenCount < target && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted waiting for queued snapshots to be written");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void checkWriteFailure(int gameId) {
+        RuntimeException failure;
+        synchronized (this) {
+            failure = writeFailures.remove(gameId);
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Failed to write snapshots for game " + gameId, failure);
+        }
+    }
+
+    private void writeQueued() {
+        List<QueuedSnapshot> batch = new ArrayList<>();
+        while (true) {
+            try {
+                boolean anyRetrying;
+                synchronized (writeLock) {
+                    anyRetrying = !retrying.isEmpty();
+                }
+                // Only wake up without anything new to write if there's something to retry
+                QueuedSnapshot next = anyRetrying
+                        ? queue.poll(RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+                        : queue.take();
+                if (next != null) {
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (closed) {
+                    LOG.info("Stopped writing snapshots");
+                    synchronized (this) {
+                        // Wake anything waiting on a writer that's no longer there
+                        notifyAll();
+                    }
+                    return;
+                }
+                continue;
+            }
+            queue.drainTo(batch);
+            synchronized (writeLock) {
+                write(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    // Only called holding writeLock
+    private void write(List<QueuedSnapshot> batch) {
+        List<QueuedSnapshot> toWrite = new ArrayList<>(retrying);
+        toWrite.addAll(batch);
+        retrying.clear();
+        Set<Integer> failedGames = new HashSet<>();
+        List<QueuedSnapshot> written = new ArrayList<>();
+        for (QueuedSnapshot queued : toWrite) {
+            // Nothing after a failed snapshot of a game can be written before it
+            if (!failedGames.contains(queued.gameId)) {
+                try {
+                    delegate.addSnapshot(queued.gameId, queued.snapshot);
+                    written.add(queued);
+                    continue;
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to write snapshot for game {}, will retry", queued.gameId, e);
+                    failedGames.add(queued.gameId);
+                    recordFailure(queued.gameId, e);
+                }
+            }
+            retrying.add(queued);
+        }
+        try {
+            delegate.flush();
+        } catch (RuntimeException e) {
+            // Already handed to the delegate, so writing them again would duplicate them
+            LOG.error("Failed to flush {} snapshots", written.size(), e);
+            written.forEach(queued -> recordFailure(queued.gameId, e));
+        }
+        for (QueuedSnapshot queued : written) {
+            unwritten.remove(queued.gameId, queued.snapshot);
+        }
+        LOG.debug("Wrote {} snapshots, {} waiting to be retried", written.size(), retrying.size());
+        synchronized (this) {
+            writtenCount += batch.size();
+            retryingCount = retrying.size();
+            notifyAll();
+        }
+    }
+
+    private synchronized void recordFailure(int gameId, RuntimeException failure) {
+        writeFailures.putIfAbsent(gameId, failure);
+    }
+
+    private static class QueuedSnapshot {
+        final int gameId;
+        final Snapshot snapshot;
+
+        QueuedSnapshot(int gameId, Snapshot snapshot) {
+            this.gameId = gameId;
+            this.snapshot = snapshot;
+        }
+    }
+}
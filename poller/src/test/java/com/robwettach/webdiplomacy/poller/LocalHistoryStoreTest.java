@@ -0,0 +1,410 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.robwettach.webdiplomacy.json.Json.OBJECT_MAPPER;
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import com.robwettach.webdiplomacy.poller.lib.DeltaCursor;
+import com.robwettach.webdiplomacy.poller.lib.SnapshotCodec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalHistoryStoreTest {
+    private static final int GAME_ID = 1234;
+
+    @TempDir
+    Path configDir;
+
+    @Test
+    void shouldReloadAppendedSnapshots() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        store.addSnapshot(GAME_ID, makeSnapshot(2));
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir);
+        assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(GAME_ID),
+                contains(makeSnapshot(1), makeSnapshot(2)));
+    }
+
+    @Test
+    void shouldAppendOneLinePerSnapshot() throws IOException {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 1);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        store.addSnapshot(GAME_ID, makeSnapshot(2));
+
+        List<String> lines = Files.readAllLines(configDir.resolve(GAME_ID + "-snapshots.jsonl"));
+        assertThat("Unexpected lines", lines, hasSize(2));
+        assertThat("Unexpected line", SnapshotCodec.decodeSnapshot(Base64.getDecoder().decode(lines.get(1))),
+                is(makeSnapshot(2)));
+    }
+
+    @Test
+    void shouldWriteDeltasBetweenKeyframes() throws IOException {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        List<Snapshot> expected = IntStream.range(0, 10)
+                .mapToObj(LocalHistoryStoreTest::makeSnapshot)
+                .collect(toList());
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        List<String> lines = Files.readAllLines(configDir.resolve(GAME_ID + "-snapshots.jsonl"));
+        // Keyframes are Base64 rather than JSON
+        List<Boolean> keyframes = lines.stream().map(l -> !l.startsWith("{")).collect(toList());
+        assertThat("Unexpected keyframes", keyframes,
+                contains(true, false, false, false, true, false, false, false, true, false));
+        int jsonLength = OBJECT_MAPPER.writeValueAsString(expected.get(1)).length();
+        assertThat("Keyframe not smaller than JSON", lines.get(0).length(), lessThan(jsonLength / 2));
+        assertThat("Delta not smaller than JSON", lines.get(1).length(), lessThan(jsonLength / 2));
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir);
+        assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(expected.get(9))));
+    }
+
+    @Test
+    void shouldContinueDeltasAfterReload() throws IOException {
+        new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4)
+                .addSnapshot(GAME_ID, makeSnapshot(1));
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        reloaded.addSnapshot(GAME_ID, makeSnapshot(2));
+
+        List<String> lines = Files.readAllLines(configDir.resolve(GAME_ID + "-snapshots.jsonl"));
+        assertThat("Expected a delta", DeltaCursor.isKeyframe(OBJECT_MAPPER.readTree(lines.get(1))), is(false));
+        assertThat("Unexpected snapshots", new LocalHistoryStore(configDir).getSnapshotsForGame(GAME_ID),
+                contains(makeSnapshot(1), makeSnapshot(2)));
+    }
+
+    @Test
+    void shouldMigrateArrayFile() throws IOException {
+        Path arrayPath = configDir.resolve(GAME_ID + "-snapshots.json");
+        OBJECT_MAPPER.writeValue(arrayPath.toFile(), List.of(makeSnapshot(1), makeSnapshot(2)));
+
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(3));
+
+        assertThat("Array file not deleted", Files.exists(arrayPath), is(false));
+        assertThat("Unexpected snapshots", new LocalHistoryStore(configDir).getSnapshotsForGame(GAME_ID),
+                contains(makeSnapshot(1), makeSnapshot(2), makeSnapshot(3)));
+    }
+
+    @Test
+    void shouldKeepTruncatedArrayFile() throws IOException {
+        Path arrayPath = configDir.resolve(GAME_ID + "-snapshots.json");
+        byte[] json = OBJECT_MAPPER.writeValueAsBytes(List.of(makeSnapshot(1), makeSnapshot(2)));
+        Files.write(arrayPath, Arrays.copyOf(json, json.length - 10));
+
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+
+        assertThat("Truncated array file deleted", Files.exists(arrayPath), is(true));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+    }
+
+    @Test
+    void shouldLoadManyGamesAndFormats() throws IOException {
+        List<Integer> gameIds = IntStream.range(0, 50).mapToObj(i -> GAME_ID + i).collect(toList());
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        for (int gameId : gameIds) {
+            if (gameId % 2 == 0) {
+                OBJECT_MAPPER.writeValue(
+                        configDir.resolve(gameId + "-snapshots.json").toFile(),
+                        List.of(makeSnapshot(gameId, 1), makeSnapshot(gameId, 2)));
+            } else {
+                store.addSnapshot(gameId, makeSnapshot(gameId, 1));
+                store.addSnapshot(gameId, makeSnapshot(gameId, 2));
+            }
+        }
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        assertThat("Unexpected games", reloaded.getGameIds(), containsInAnyOrder(gameIds.toArray()));
+        for (int gameId : gameIds) {
+            assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(gameId),
+                    optionalWithValue(is(makeSnapshot(gameId, 2))));
+        }
+    }
+
+    @Test
+    void shouldMigrateLegacyFile() throws IOException {
+        Path legacyPath = configDir.resolve("snapshots.json");
+        OBJECT_MAPPER.writeValue(legacyPath.toFile(), Map.of(GAME_ID, List.of(makeSnapshot(1))));
+
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+
+        assertThat("Legacy file not deleted", Files.exists(legacyPath), is(false));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), contains(makeSnapshot(1)));
+    }
+
+    @Test
+    void shouldTruncatePartiallyWrittenSnapshot() throws IOException {
+        new LocalHistoryStore(configDir).addSnapshot(GAME_ID, makeSnapshot(1));
+        Path path = configDir.resolve(GAME_ID + "-snapshots.jsonl");
+        Files.write(path, "{\"time\":\"2020-".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(2));
+
+        assertThat("Unexpected snapshots", new LocalHistoryStore(configDir).getSnapshotsForGame(GAME_ID),
+                contains(makeSnapshot(1), makeSnapshot(2)));
+    }
+
+    @Test
+    void shouldLoadLatestSnapshotFromLastLine() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        for (int minute = 0; minute < 60; minute++) {
+            store.addSnapshot(GAME_ID, makeSnapshot(minute));
+        }
+
+        assertThat("Unexpected latest snapshot", new LocalHistoryStore(configDir).getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(makeSnapshot(59))));
+    }
+
+    @Test
+    void shouldLoadLatestSnapshotBeforePartiallyWrittenSnapshot() throws IOException {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        store.addSnapshot(GAME_ID, makeSnapshot(2));
+        Path path = configDir.resolve(GAME_ID + "-snapshots.jsonl");
+        Files.write(path, "{\"time\":\"2020-".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir);
+
+        assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(makeSnapshot(2))));
+        assertThat("Partially-written snapshot not truncated", Files.readAllLines(path), hasSize(2));
+    }
+
+    @Test
+    void shouldFallBackWhenLastLineIsUnreadable() throws IOException {
+        new LocalHistoryStore(configDir).addSnapshot(GAME_ID, makeSnapshot(1));
+        Path path = configDir.resolve(GAME_ID + "-snapshots.jsonl");
+        Files.write(path, "not json\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        assertThat("Unexpected latest snapshot", new LocalHistoryStore(configDir).getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(makeSnapshot(1))));
+    }
+
+    @Test
+    void shouldSkipDeltasAfterUnreadableDelta() throws IOException {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        List<Snapshot> snapshots = IntStream.range(0, 10)
+                .mapToObj(LocalHistoryStoreTest::makeSnapshot)
+                .collect(toList());
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+        Path path = configDir.resolve(GAME_ID + "-snapshots.jsonl");
+        List<String> lines = new ArrayList<>(Files.readAllLines(path));
+        lines.set(2, "not json");
+        Files.write(path, lines);
+
+        // The delta after the unreadable one can't be applied without it, so it's skipped up to the next keyframe
+        List<Snapshot> expected = new ArrayList<>(snapshots);
+        expected.subList(2, 4).clear();
+        assertThat("Unexpected snapshots", new LocalHistoryStore(configDir).getSnapshotsForGame(GAME_ID),
+                is(expected));
+    }
+
+    @Test
+    void shouldReadFullHistoryFromDisk() throws IOException {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        Path path = configDir.resolve(GAME_ID + "-snapshots.jsonl");
+        Files.write(path, OBJECT_MAPPER.writeValueAsBytes(makeSnapshot(2)), StandardOpenOption.APPEND);
+        Files.write(path, "\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID),
+                contains(makeSnapshot(1), makeSnapshot(2)));
+    }
+
+    @Test
+    void shouldGetSnapshotsBetweenTimes() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        List<Snapshot> expected = IntStream.range(0, 10)
+                .mapToObj(LocalHistoryStoreTest::makeSnapshot)
+                .collect(toList());
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        ZonedDateTime start = expected.get(0).getTime();
+        assertThat("Unexpected snapshots",
+                reloaded.getSnapshotsBetween(GAME_ID, start.plusMinutes(5), start.plusMinutes(7)),
+                contains(expected.get(5), expected.get(6), expected.get(7)));
+        try (Stream<Snapshot> snapshots = reloaded.streamSnapshotsBetween(GAME_ID, start, start.plusDays(1))) {
+            assertThat("Unexpected streamed snapshots", snapshots.skip(2).limit(2).collect(toList()),
+                    contains(expected.get(2), expected.get(3)));
+        }
+        assertThat("Unexpected snapshots",
+                reloaded.getSnapshotsBetween(GAME_ID, start.plusDays(1), start.plusDays(2)),
+                is(empty()));
+    }
+
+    @Test
+    void shouldGetSnapshotAtTime() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        List<Snapshot> expected = IntStream.range(0, 10)
+                .mapToObj(LocalHistoryStoreTest::makeSnapshot)
+                .collect(toList());
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        ZonedDateTime start = expected.get(0).getTime();
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, start.plusMinutes(6).plusSeconds(30)),
+                optionalWithValue(is(expected.get(6))));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, start.plusDays(1)),
+                optionalWithValue(is(expected.get(9))));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, start.minusSeconds(1)), is(emptyOptional()));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID + 1, start), is(emptyOptional()));
+    }
+
+    @Test
+    void shouldReplaceSnapshotsUntilTime() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        List<Snapshot> snapshots = IntStream.range(0, 10)
+                .mapToObj(LocalHistoryStoreTest::makeSnapshot)
+                .collect(toList());
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        store.replaceSnapshotsUntil(GAME_ID, snapshots.get(5).getTime(), List.of(snapshots.get(0), snapshots.get(5)));
+        store.addSnapshot(GAME_ID, makeSnapshot(10));
+
+        List<Snapshot> expected = List.of(
+                snapshots.get(0), snapshots.get(5), snapshots.get(6), snapshots.get(7), snapshots.get(8),
+                snapshots.get(9), makeSnapshot(10));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Unexpected reloaded snapshots",
+                new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4).getSnapshotsForGame(GAME_ID),
+                is(expected));
+    }
+
+    @Test
+    void shouldRejectReplacementsAfterUntil() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+
+        assertThrows(IllegalArgumentException.class, () -> store.replaceSnapshotsUntil(
+                GAME_ID, makeSnapshot(0).getTime(), List.of(makeSnapshot(1))));
+    }
+
+    @Test
+    void shouldDeleteGame() {
+        LocalHistoryStore store = new LocalHistoryStore(configDir);
+        store.addSnapshot(GAME_ID, makeSnapshot(1));
+        store.addSnapshot(GAME_ID + 1, makeSnapshot(1));
+        assertThat("Unexpected games", store.getGameIds(), containsInAnyOrder(GAME_ID, GAME_ID + 1));
+
+        store.deleteGame(GAME_ID);
+
+        assertThat("Unexpected games", store.getGameIds(), contains(GAME_ID + 1));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID), is(emptyOptional()));
+        assertThat("Unexpected reloaded games", new LocalHistoryStore(configDir).getGameIds(), contains(GAME_ID + 1));
+    }
+
+    @Test
+    void shouldHaveNoLatestSnapshotForUnknownGame() {
+        assertThat("Unexpected latest snapshot", new LocalHistoryStore(configDir).getLatestSnapshotForGame(GAME_ID),
+                is(emptyOptional()));
+    }
+
+    @Test
+    void shouldHaveNoSnapshotsForUnknownGame() {
+        assertThat("Unexpected snapshots", new LocalHistoryStore(configDir).getSnapshotsForGame(GAME_ID), is(empty()));
+    }
+
+    @Test
+    void shouldHandleManyGamesFromManyThreads() throws Exception {
+        LocalHistoryStore store = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.ON_FLUSH, 4);
+        List<Integer> gameIds = IntStream.range(0, 300).mapToObj(i -> GAME_ID + i).collect(toList());
+        List<Callable<Void>> pollers = new ArrayList<>();
+        for (int gameId : gameIds) {
+            pollers.add(() -> {
+                for (int minute = 0; minute < 20; minute++) {
+                    Snapshot snapshot = makeSnapshot(gameId, minute);
+                    store.addSnapshot(gameId, snapshot);
+                    assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(gameId),
+                            optionalWithValue(is(snapshot)));
+                    if (minute % 5 == 4) {
+                        assertThat("Unexpected snapshot", store.getSnapshotAt(gameId, snapshot.getTime()),
+                                optionalWithValue(is(snapshot)));
+                        store.flush();
+                    }
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (Future<Void> poller : executor.invokeAll(pollers)) {
+                poller.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        store.flush();
+
+        LocalHistoryStore reloaded = new LocalHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 4);
+        assertThat("Unexpected games", reloaded.getGameIds(), containsInAnyOrder(gameIds.toArray()));
+        for (int gameId : gameIds) {
+            List<Snapshot> expected = IntStream.range(0, 20)
+                    .mapToObj(minute -> makeSnapshot(gameId, minute))
+                    .collect(toList());
+            assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(gameId), is(expected));
+        }
+    }
+
+    private static Snapshot makeSnapshot(int gameId, int minute) {
+        Snapshot snapshot = makeSnapshot(minute);
+        return Snapshot.create(snapshot.getTime(), snapshot.getState().toBuilder().id(gameId).build());
+    }
+
+    private static Snapshot makeSnapshot(int minute) {
+        GameState.Builder state = GameState.builder()
+                .name("test")
+                .id(GAME_ID)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Diplomacy);
+        // Have one country's orders change each minute, the way they usually do between polls
+        List<String> countries = List.of("England", "France", "Germany", "Russia");
+        for (int i = 0; i < countries.size(); i++) {
+            state.country(CountryState.builder()
+                    .countryName(countries.get(i))
+                    .user(UserInfo.create("user" + i, i))
+                    .status(i < minute % (countries.size() + 1) ? CountryStatus.Completed : CountryStatus.NotReceived)
+                    .supplyCenterCount(3)
+                    .unitCount(3)
+                    .build());
+        }
+        return Snapshot.create(ZonedDateTime.of(2020, 9, 13, 12, minute, 0, 0, ZoneOffset.UTC), state.build());
+    }
+}
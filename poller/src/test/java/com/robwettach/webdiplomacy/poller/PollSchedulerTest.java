@@ -0,0 +1,104 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.poller.lib.DeadlineAwarePollPolicy;
+import com.robwettach.webdiplomacy.poller.lib.InMemoryHistoryStore;
+import com.robwettach.webdiplomacy.poller.lib.PollTask;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PollSchedulerTest {
+    private static final int GAME_ID = 1234;
+
+    private final InMemoryHistoryStore history = new InMemoryHistoryStore();
+
+    @BeforeEach
+    void finishGame() {
+        history.addSnapshot(GAME_ID, Snapshot.create(ZonedDateTime.now(), GameState.builder()
+                .name("test")
+                .id(GAME_ID)
+                .date(GameDate.create(Season.Spring, 1901))
+                .phase(GamePhase.Finished)
+                .finished(true)
+                .build()));
+    }
+
+    @Test
+    void shouldStopPollingFinishedGames() throws InterruptedException {
+        CountingTask task = new CountingTask(null, 1);
+        PollScheduler scheduler = schedule(task);
+
+        // Shuts itself down once the only task is finished
+        scheduler.awaitTermination();
+        assertThat("Unexpected polls", task.polls.get(), is(1));
+    }
+
+    @Test
+    void shouldKeepPollingIdleTasks() throws InterruptedException {
+        CountingTask task = new CountingTask(Duration.ofMillis(10), 3);
+        PollScheduler scheduler = schedule(task);
+        try {
+            assertThat("Idle task stopped being polled", task.polled.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private PollScheduler schedule(PollTask task) {
+        PollScheduler scheduler = new PollScheduler(List.of(task), history, new DeadlineAwarePollPolicy(),
+                Duration.ZERO, 1);
+        scheduler.start();
+        return scheduler;
+    }
+
+    /**
+     * {@link PollTask} of a single game that only counts its polls.
+     */
+    private static class CountingTask implements PollTask {
+        private final AtomicInteger polls = new AtomicInteger();
+        private final CountDownLatch polled;
+        @Nullable
+        private final Duration idleDelay;
+
+        CountingTask(@Nullable Duration idleDelay, int expectedPolls) {
+            this.idleDelay = idleDelay;
+            this.polled = new CountDownLatch(expectedPolls);
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public List<Integer> getGameIds() {
+            return List.of(GAME_ID);
+        }
+
+        @Override
+        public Optional<Duration> getIdleDelay() {
+            return Optional.ofNullable(idleDelay);
+        }
+
+        @Override
+        public void poll() {
+            polls.incrementAndGet();
+            polled.countDown();
+        }
+    }
+}
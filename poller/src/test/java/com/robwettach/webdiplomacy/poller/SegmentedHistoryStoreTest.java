@@ -0,0 +1,210 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.CountryState;
+import com.robwettach.webdiplomacy.model.CountryStatus;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.model.UserInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedHistoryStoreTest {
+    private static final int GAME_ID = 1234;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @TempDir
+    Path configDir;
+
+    @Test
+    void shouldReloadSnapshotsAcrossSegments() throws IOException {
+        List<Snapshot> expected = makeSnapshots(100);
+        SegmentedHistoryStore store = makeStore();
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        assertThat("Expected several segments", segmentCount(), greaterThan(2L));
+        SegmentedHistoryStore reloaded = makeStore();
+        assertThat("Unexpected snapshots", reloaded.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Unexpected latest snapshot", reloaded.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(expected.get(99))));
+    }
+
+    @Test
+    void shouldGetSnapshotsBetweenTimes() {
+        List<Snapshot> expected = makeSnapshots(100);
+        SegmentedHistoryStore store = makeStore();
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        assertThat("Unexpected snapshots",
+                store.getSnapshotsBetween(GAME_ID, START.plusMinutes(41), START.plusMinutes(43)),
+                contains(expected.get(41), expected.get(42), expected.get(43)));
+        assertThat("Unexpected snapshots", store.getSnapshotsBetween(GAME_ID, START.minusDays(1), START),
+                contains(expected.get(0)));
+        assertThat("Unexpected snapshots", store.getSnapshotsBetween(GAME_ID, START.plusDays(1), START.plusDays(2)),
+                is(empty()));
+    }
+
+    @Test
+    void shouldStreamSnapshotsWhileAdding() {
+        List<Snapshot> expected = makeSnapshots(100);
+        SegmentedHistoryStore store = makeStore();
+        expected.subList(0, 50).forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        try (Stream<Snapshot> snapshots = store.streamSnapshotsBetween(GAME_ID, START, START.plusDays(1))) {
+            Iterator<Snapshot> iterator = snapshots.iterator();
+            assertThat("Unexpected first snapshot", iterator.next(), is(expected.get(0)));
+            // Snapshots added after the stream was opened, but before it reached them, are still seen
+            expected.subList(50, 100).forEach(s -> store.addSnapshot(GAME_ID, s));
+            List<Snapshot> rest = new ArrayList<>();
+            iterator.forEachRemaining(rest::add);
+            assertThat("Unexpected remaining snapshots", rest, is(expected.subList(1, 100)));
+        }
+    }
+
+    @Test
+    void shouldGetSnapshotAtTime() {
+        List<Snapshot> expected = makeSnapshots(100);
+        SegmentedHistoryStore store = makeStore();
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        SegmentedHistoryStore reloaded = makeStore();
+        assertThat("Unexpected snapshot", reloaded.getSnapshotAt(GAME_ID, START.plusMinutes(57).plusSeconds(30)),
+                optionalWithValue(is(expected.get(57))));
+        assertThat("Unexpected snapshot", reloaded.getSnapshotAt(GAME_ID, START.plusMinutes(64)),
+                optionalWithValue(is(expected.get(64))));
+        assertThat("Unexpected snapshot", reloaded.getSnapshotAt(GAME_ID, START.minusSeconds(1)),
+                is(emptyOptional()));
+    }
+
+    @Test
+    void shouldTruncatePartiallyWrittenFrame() throws IOException {
+        List<Snapshot> expected = makeSnapshots(3);
+        SegmentedHistoryStore store = makeStore();
+        store.addSnapshot(GAME_ID, expected.get(0));
+        store.addSnapshot(GAME_ID, expected.get(1));
+        Path segment = configDir.resolve("segments").resolve(String.valueOf(GAME_ID)).resolve("0000000000.segment");
+        Files.write(segment, new byte[] {0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        SegmentedHistoryStore reloaded = makeStore();
+        reloaded.addSnapshot(GAME_ID, expected.get(2));
+
+        assertThat("Unexpected snapshots", makeStore().getSnapshotsForGame(GAME_ID), is(expected));
+    }
+
+    @Test
+    void shouldRejectSnapshotsOutOfOrder() {
+        List<Snapshot> snapshots = makeSnapshots(2);
+        SegmentedHistoryStore store = makeStore();
+        store.addSnapshot(GAME_ID, snapshots.get(1));
+
+        assertThrows(IllegalArgumentException.class, () -> store.addSnapshot(GAME_ID, snapshots.get(0)));
+    }
+
+    @Test
+    void shouldReplaceSnapshotsUntilTime() {
+        List<Snapshot> snapshots = makeSnapshots(100);
+        SegmentedHistoryStore store = makeStore();
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+
+        List<Snapshot> replacements = List.of(snapshots.get(0), snapshots.get(30), snapshots.get(59));
+        store.replaceSnapshotsUntil(GAME_ID, snapshots.get(59).getTime(), replacements);
+
+        List<Snapshot> expected = new ArrayList<>(replacements);
+        expected.addAll(snapshots.subList(60, 100));
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Unexpected snapshot", store.getSnapshotAt(GAME_ID, START.plusMinutes(45)),
+                optionalWithValue(is(snapshots.get(30))));
+        assertThat("Unexpected reloaded snapshots", makeStore().getSnapshotsForGame(GAME_ID), is(expected));
+    }
+
+    @Test
+    void shouldFinishInterruptedReplacement() throws IOException {
+        List<Snapshot> snapshots = makeSnapshots(20);
+        SegmentedHistoryStore store = makeStore();
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+        store.replaceSnapshotsUntil(GAME_ID, snapshots.get(9).getTime(), List.of(snapshots.get(9)));
+        // As if the process stopped after moving the old segments aside, but before moving the new ones into place
+        Path segments = configDir.resolve("segments");
+        Files.move(segments.resolve(String.valueOf(GAME_ID)), segments.resolve(GAME_ID + ".new"));
+        Files.createDirectory(segments.resolve(GAME_ID + ".old"));
+
+        assertThat("Unexpected snapshots", makeStore().getSnapshotsForGame(GAME_ID), hasSize(11));
+        assertThat("Unexpected leftover directories", Files.exists(segments.resolve(GAME_ID + ".old")), is(false));
+    }
+
+    @Test
+    void shouldDeleteGame() {
+        List<Snapshot> snapshots = makeSnapshots(20);
+        SegmentedHistoryStore store = makeStore();
+        snapshots.forEach(s -> store.addSnapshot(GAME_ID, s));
+        store.addSnapshot(GAME_ID + 1, snapshots.get(0));
+        assertThat("Unexpected games", makeStore().getGameIds(), containsInAnyOrder(GAME_ID, GAME_ID + 1));
+
+        store.deleteGame(GAME_ID);
+
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+        assertThat("Unexpected games", store.getGameIds(), contains(GAME_ID + 1));
+        assertThat("Unexpected reloaded games", makeStore().getGameIds(), contains(GAME_ID + 1));
+    }
+
+    @Test
+    void shouldHaveNoSnapshotsForUnknownGame() {
+        SegmentedHistoryStore store = makeStore();
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(empty()));
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID), is(emptyOptional()));
+    }
+
+    private SegmentedHistoryStore makeStore() {
+        // Small segments and keyframe intervals, to exercise rolling over and seeking between keyframes
+        return new SegmentedHistoryStore(configDir, LocalHistoryStore.FsyncPolicy.NEVER, 8, 1024);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> segments = Files.list(configDir.resolve("segments").resolve(String.valueOf(GAME_ID)))) {
+            return segments.count();
+        }
+    }
+
+    private static List<Snapshot> makeSnapshots(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Snapshot.create(START.plusMinutes(i), GameState.builder()
+                        .name("test")
+                        .id(GAME_ID)
+                        .date(GameDate.create(Season.Spring, 1901 + i / 10))
+                        .phase(GamePhase.Diplomacy)
+                        .country(CountryState.builder()
+                                .countryName("England")
+                                .user(UserInfo.create("alice", 1))
+                                .status(i % 2 == 0 ? CountryStatus.NotReceived : CountryStatus.Completed)
+                                .supplyCenterCount(3)
+                                .unitCount(3)
+                                .build())
+                        .build()))
+                .collect(toList());
+    }
+}
@@ -0,0 +1,215 @@
+package com.robwettach.webdiplomacy.poller;
+
+import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
+import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.robwettach.webdiplomacy.diff.Snapshot;
+import com.robwettach.webdiplomacy.model.GameDate;
+import com.robwettach.webdiplomacy.model.GamePhase;
+import com.robwettach.webdiplomacy.model.GameState;
+import com.robwettach.webdiplomacy.model.Season;
+import com.robwettach.webdiplomacy.poller.lib.InMemoryHistoryStore;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class WriteBehindHistoryStoreTest {
+    private static final int GAME_ID = 1234;
+    private static final int OTHER_GAME_ID = 5678;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 9, 13, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final BlockingHistoryStore delegate = new BlockingHistoryStore();
+    private WriteBehindHistoryStore store;
+
+    @AfterEach
+    void closeStore() {
+        delegate.release();
+        store.close();
+    }
+
+    @Test
+    void shouldReadLatestSnapshotBeforeItIsWritten() {
+        store = new WriteBehindHistoryStore(delegate, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        Snapshot snapshot = makeSnapshots(1).get(0);
+        store.addSnapshot(GAME_ID, snapshot);
+
+        assertThat("Unexpected latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(snapshot)));
+        assertThat("Snapshot written too soon", delegate.getLatestSnapshotForGame(GAME_ID), is(emptyOptional()));
+
+        delegate.release();
+        store.flush();
+        assertThat("Snapshot not written", delegate.getLatestSnapshotForGame(GAME_ID), optionalWithValue(is(snapshot)));
+    }
+
+    @Test
+    void shouldWriteQueuedSnapshotsInBatches() {
+        store = new WriteBehindHistoryStore(delegate, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        List<Snapshot> expected = makeSnapshots(100);
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+        delegate.release();
+
+        // Waits for the queued snapshots first
+        assertThat("Unexpected snapshots", store.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThat("Expected snapshots to be flushed in batches", delegate.flushes.get(), lessThan(100));
+    }
+
+    @Test
+    void shouldBlockWhenQueueIsFull() throws Exception {
+        store = new WriteBehindHistoryStore(delegate, 1);
+        List<Snapshot> snapshots = makeSnapshots(3);
+        // The first is taken by the blocked writer, and the second fills the queue
+        store.addSnapshot(GAME_ID, snapshots.get(0));
+        delegate.awaitBlocked();
+        store.addSnapshot(GAME_ID, snapshots.get(1));
+
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> store.addSnapshot(GAME_ID, snapshots.get(2)));
+        assertThrows(TimeoutException.class, () -> third.get(100, TimeUnit.MILLISECONDS));
+
+        delegate.release();
+        third.get(10, TimeUnit.SECONDS);
+        store.flush();
+        assertThat("Unexpected snapshots", delegate.getSnapshotsForGame(GAME_ID), is(snapshots));
+    }
+
+    @Test
+    void shouldWriteQueuedSnapshotsOnClose() {
+        store = new WriteBehindHistoryStore(delegate, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        List<Snapshot> expected = makeSnapshots(10);
+        expected.forEach(s -> store.addSnapshot(GAME_ID, s));
+        delegate.release();
+        store.close();
+
+        assertThat("Unexpected snapshots", delegate.getSnapshotsForGame(GAME_ID), is(expected));
+        assertThrows(IllegalStateException.class, () -> store.addSnapshot(GAME_ID, expected.get(0)));
+    }
+
+    @Test
+    void shouldReportAndRetryFailedWrites() {
+        FailingHistoryStore failing = new FailingHistoryStore();
+        store = new WriteBehindHistoryStore(failing, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        List<Snapshot> snapshots = makeSnapshots(2);
+        failing.failingGames.add(GAME_ID);
+        store.addSnapshot(GAME_ID, snapshots.get(0));
+
+        assertThat("Failed snapshot should not be read back", store.getSnapshotsForGame(GAME_ID), is(List.of()));
+        assertThrows(IllegalStateException.class, () -> store.addSnapshot(GAME_ID, snapshots.get(1)));
+        assertThrows(IllegalStateException.class, store::flush);
+        assertThat("Failed snapshot should still be latest", store.getLatestSnapshotForGame(GAME_ID),
+                optionalWithValue(is(snapshots.get(0))));
+
+        failing.failingGames.clear();
+        store.addSnapshot(GAME_ID, snapshots.get(1));
+        store.flush();
+        assertThat("Unexpected snapshots", failing.getSnapshotsForGame(GAME_ID), is(snapshots));
+    }
+
+    @Test
+    void shouldOnlyReportFailuresForTheFailedGame() {
+        FailingHistoryStore failing = new FailingHistoryStore();
+        store = new WriteBehindHistoryStore(failing, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        List<Snapshot> snapshots = makeSnapshots(2);
+        failing.failingGames.add(GAME_ID);
+        store.addSnapshot(GAME_ID, snapshots.get(0));
+        store.addSnapshot(OTHER_GAME_ID, snapshots.get(0));
+
+        assertThat("Unexpected snapshots for other game", store.getSnapshotsForGame(OTHER_GAME_ID),
+                is(List.of(snapshots.get(0))));
+        store.addSnapshot(OTHER_GAME_ID, snapshots.get(1));
+        assertThrows(IllegalStateException.class, () -> store.addSnapshot(GAME_ID, snapshots.get(1)));
+    }
+
+    @Test
+    void shouldStopRetryingDeletedGames() {
+        FailingHistoryStore failing = new FailingHistoryStore();
+        store = new WriteBehindHistoryStore(failing, WriteBehindHistoryStore.DEFAULT_CAPACITY);
+        List<Snapshot> snapshots = makeSnapshots(2);
+        failing.failingGames.add(GAME_ID);
+        store.addSnapshot(GAME_ID, snapshots.get(0));
+        store.deleteGame(GAME_ID);
+
+        // Neither the failure nor the failed snapshot outlive the game
+        store.flush();
+        assertThat("Deleted game should have no latest snapshot", store.getLatestSnapshotForGame(GAME_ID),
+                is(emptyOptional()));
+
+        failing.failingGames.clear();
+        store.addSnapshot(GAME_ID, snapshots.get(1));
+        store.flush();
+        assertThat("Unexpected snapshots", failing.getSnapshotsForGame(GAME_ID), is(List.of(snapshots.get(1))));
+    }
+
+    private static List<Snapshot> makeSnapshots(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Snapshot.create(START.plusMinutes(i), GameState.builder()
+                        .name("test")
+                        .id(GAME_ID)
+                        .date(GameDate.create(Season.Spring, 1901 + i))
+                        .phase(GamePhase.Diplomacy)
+                        .build()))
+                .collect(toList());
+    }
+
+    /**
+     * {@link InMemoryHistoryStore} whose writes block until released, standing in for a slow disk.
+     */
+    private static class BlockingHistoryStore extends InMemoryHistoryStore {
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void addSnapshot(int gameId, Snapshot snapshot) {
+            blocked.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.addSnapshot(gameId, snapshot);
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            blocked.await();
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    /**
+     * {@link InMemoryHistoryStore} that can be made to fail writes for some games, standing in for a full disk.
+     */
+    private static class FailingHistoryStore extends InMemoryHistoryStore {
+        private final Set<Integer> failingGames = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void addSnapshot(int gameId, Snapshot snapshot) {
+            if (failingGames.contains(gameId)) {
+                throw new IllegalStateException("Failed to write snapshot");
+            }
+            super.addSnapshot(gameId, snapshot);
+        }
+    }
+}